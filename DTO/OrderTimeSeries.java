@@ -152,6 +152,13 @@ public class OrderTimeSeries {
         return values.length;
     }
 
+    /**
+     * 单个点的收益（不复制数组）
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
     /**
      * 获取部分数据（用于比例测试）
      */
@@ -14,13 +14,12 @@ import com.demo.extract.services.SimilarityService;
 import com.demo.extract.timberSource.fourHoursXAUUSD;
 import com.demo.extract.timberSource.updateGBPJPY;
 import com.demo.extract.util.CsvWriter;
-import com.demo.extract.zzq.ZZQDataLoader;
-import com.demo.extract.zzq.dto.zzqdto;
+import com.demo.extract.zzq.ZZQEntryOptimizer;
+import com.demo.extract.zzq.ZZQSignalStore;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -93,6 +92,8 @@ public class Main {
 
         // 2. 初始化服务
         SimilarityService service = new SimilarityService(4);
+        // 距离缓存：重复运行或对比不同距离算法时复用已计算的订单对距离
+        service.enableDistanceCache(Paths.get("D:/data/高胜率/distance-cache.bin"));
 
         dtMap = enhancedDict;
 
@@ -101,6 +102,7 @@ public class Main {
         //List<DecisionResult> results = service.batchTestAllOrdersMHT(enhancedDict,enhancedDictLength, testRatio, 3000);//10030
         //List<DecisionResult> results = service.batchTestAllOrdersDTW(enhancedDict,enhancedDictLength, testRatio, 3000);7798
         List<DecisionResult> results = service.batchTestAllOrdersPC(enhancedDict,enhancedDictLength, testRatio, 3000);//9077
+        //对称全量模式（每对订单只算一次）：service.batchTestAllOrdersAllPairs(enhancedDict,enhancedDictLength, testRatio, 3000, DistanceCache.Metric.PEARSON);
         //  皮尔逊 黄金（0.63）8164   切比雪夫距离 磅日 0.51 445   曼哈顿距离  欧美 0.55 1399
         //updateDecisions(results,results1);
 
@@ -313,126 +315,16 @@ public class Main {
         long startTime = System.currentTimeMillis();
 
 
-        List<zzqdto> zzqData = getZZQData();
+        ZZQSignalStore.Snapshot signals = ZZQSignalStore.shared("D:/data/章铮奇/xauusd_15min.csv").snapshot();
 
-        // 预处理zzq数据，转换为Map以提高查询效率
-        Map<String, zzqdto> zzqMap = new HashMap<>();
-        for (zzqdto dto : zzqData) {
-            zzqMap.put(dto.getDate(), dto);
-        }
-
-        // 预处理：创建从LocalDateTime到索引的映射，提高findIntervalIndex的查找效率
-        Map<LocalDateTime, Integer> timeToIndexMap = preprocessTimeIndexMap(zzqData);
-
-        Map<String, OrderTimeSeries> orderMap = new HashMap<>();
-
-        for (OrderTimeSeries orderTimeSeries : allSeries) {
-            if (orderTimeSeries.getValues().length >= 70) {
-                String action = detectOrderDirection(orderTimeSeries);
-                orderTimeSeries.setAction(action);
-                String[] valueTime = orderTimeSeries.getValueTime();
-
-                // 遍历时间序列，找到匹配的开仓点
-                for (int i = 0; i < valueTime.length; i = i+2) {
-                    // 使用优化后的方法判断
-                    int index = findIntervalIndex(valueTime[i], timeToIndexMap);
-
-                    // 确保索引有效
-                    if (index >= 0 && index < zzqData.size()) {
-                        String nextAction = getZZQOptimized(zzqData.get(index).getDate(), action, zzqMap);
-                        if (nextAction.equals("1")) {
-                            if(i != 0){
-                                orderTimeSeries.setStep(i);
-                                break;
-                            }
-                            break;
-                        }
-                    }
-                }
-
-                orderMap.put(orderTimeSeries.getOrderId(), orderTimeSeries);
-            }
-        }
+        // 按订单并行查找最佳开仓点
+        Map<String, OrderTimeSeries> orderMap = ZZQEntryOptimizer.bucket(signals, 15, 2)
+                .optimize(allSeries, 70, Main::detectOrderDirection);
 
         return orderMap;
     }
 
 
-    public static List<zzqdto> getZZQData() throws IOException {
-        ZZQDataLoader loaderNew = new ZZQDataLoader();
-        return loaderNew.loadFromCsv("D:/data/章铮奇/xauusd_15min.csv");
-    }
-
-    /**
-     * 预处理zzqData列表，创建从LocalDateTime到索引的映射
-     */
-    private static Map<LocalDateTime, Integer> preprocessTimeIndexMap(List<zzqdto> zzqData) {
-        Map<LocalDateTime, Integer> timeToIndexMap = new HashMap<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
-
-        for (int i = 0; i < zzqData.size(); i++) {
-            zzqdto dto = zzqData.get(i);
-            LocalDateTime dateTime = LocalDateTime.parse(dto.getDate(), formatter);
-            timeToIndexMap.put(dateTime, i);
-        }
-
-        return timeToIndexMap;
-    }
-
-
-    /**
-     * 优化版的findIntervalIndex方法，使用预处理的Map进行O(1)时间复杂度的查找
-     */
-    public static int findIntervalIndex(String inputTime, Map<LocalDateTime, Integer> timeToIndexMap) {
-        // 1. 解析输入时间
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
-        LocalDateTime inputDateTime = LocalDateTime.parse(inputTime, formatter);
-
-        // 2. 计算所属的15分钟区间
-        LocalDateTime intervalStartTime = calculate15MinInterval(inputDateTime);
-
-        // 3. 使用预处理的Map直接查找，时间复杂度O(1)
-        return timeToIndexMap.getOrDefault(intervalStartTime, -1);
-    }
-
-    /**
-     * 计算输入时间所属的15分钟区间的起始时间
-     */
-    private static LocalDateTime calculate15MinInterval(LocalDateTime dateTime) {
-        int minute = dateTime.getMinute();
-        int intervalMinute = (minute / 15) * 15; // 取最近的15分钟整点
-        return dateTime.withMinute(intervalMinute).withSecond(0).withNano(0);
-    }
-
-    /**
-     * 优化版的ZZQ判断方法，使用HashMap提高查找效率
-     */
-    public static String getZZQOptimized(String date, String action, Map<String, zzqdto> zzqMap) {
-        // 使用HashMap快速查找date对应的zzqdto
-        zzqdto currentDto = zzqMap.get(date);
-        if (currentDto == null) {
-            return "0";
-        }
-
-        if(action.equals("多")){
-            if(currentDto.getFluctuation().equals("涨")){
-                return "1";
-            }else {
-                return "2";
-            }
-        }
-
-        if(action.equals("空")){
-            if(currentDto.getFluctuation().equals("跌")){
-                return "1";
-            }else {
-                return "2";
-            }
-        }
-
-        return "0";
-    }
-
     public static Boolean hasOrder(List<updateOrderDTO> list,Integer orderId,Double openPrice){
         for (updateOrderDTO dto:list){
             if(dto.getOrderId().toString().equals(orderId.toString())){
@@ -2,14 +2,13 @@ package com.demo.extract;
 
 import com.demo.extract.DTO.TradeRecord;
 import com.demo.extract.DTO.updateOrderDTO;
-import com.demo.extract.services.updateProfitForOrder;
-import com.demo.extract.util.CsvWriter;
+import com.demo.extract.services.TradeJournalStore;
 
 import javax.print.DocFlavor;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,16 +18,15 @@ public class WriteOrder {
         String filePath = "D:/pyfile/results/辅助前订单黄金.xlsx"; // Excel文件路径
 
         try {
-            // 1. 从Excel文件读取交易记录
-            List<TradeRecord> records = CsvWriter.readRecordsFromExcel(filePath);
+            // 1. 加载交割单（有缓存时不解析Excel）
+            TradeJournalStore journal = TradeJournalStore.load(filePath);
 
             // 2. 修改订单号为2的获利金额为50.00
-            updateProfitForOrder.updateProfitForOrder(records, 2, 50.00);
+            Map<Integer,Double> newProfits = new LinkedHashMap<>();
+            newProfits.put(2, 50.00);
 
             // 3. 将修改后的记录写回Excel文件
-            CsvWriter.writeRecordsToExcel(records, filePath);
-
-            System.out.println("交易记录已成功更新并保存到Excel文件: " + filePath);
+            saveUpdates(journal, newProfits);
 
         } catch (  IOException e) {
             System.err.println("处理Excel文件时出错: " + e.getMessage());
@@ -41,20 +39,18 @@ public class WriteOrder {
         String filePath = "D:/data/高胜率/镑日最大胜率版 - 副本.xlsx"; // Excel文件路径
 
         try {
-            // 1. 从Excel文件读取交易记录
-            List<TradeRecord> records = CsvWriter.readRecordsFromExcel(filePath);
+            // 1. 加载交割单（有缓存时不解析Excel）
+            TradeJournalStore journal = TradeJournalStore.load(filePath);
 
-            // 2. 修改订单号为2的获利金额为50.00
+            // 2. 汇总全部修改后一次性更新
+            Map<Integer,Double> newProfits = new LinkedHashMap<>();
             for (String key :updateData.keySet()){
-
-                updateProfitForOrder.updateProfitForOrder(records, Integer.valueOf(key), updateData.get(key));
-
-                // 3. 将修改后的记录写回Excel文件
-                CsvWriter.writeRecordsToExcel(records, filePath);
-
-                System.out.println("交易记录已成功更新并保存到Excel文件: " + filePath);
+                newProfits.put(Integer.valueOf(key), updateData.get(key));
             }
 
+            // 3. 将修改后的记录一次性写回Excel文件
+            saveUpdates(journal, newProfits);
+
 
         } catch (  IOException e) {
             System.err.println("处理Excel文件时出错: " + e.getMessage());
@@ -67,32 +63,29 @@ public class WriteOrder {
         String filePath = "D:/data/高胜率/黄金最大胜率版 - 副本.xlsx"; // Excel文件路径
 
         try {
-            // 1. 从Excel文件读取交易记录
-            List<TradeRecord> records = CsvWriter.readRecordsFromExcel(filePath);
-            Map<Integer,TradeRecord> map = new HashMap<>();
-            for (TradeRecord tradeRecord: records){
-                map.put(tradeRecord.getOrderId(),tradeRecord);
-            }
+            // 1. 加载交割单（有缓存时不解析Excel），按订单号查找最后一条记录
+            TradeJournalStore journal = TradeJournalStore.load(filePath);
 
+            Map<Integer,Double> newProfits = new LinkedHashMap<>();
             for (updateOrderDTO updateOrderDTO:mergedList){
-                if(map.get(updateOrderDTO.getOrderId()) != null){
-                    double lots = map.get(updateOrderDTO.getOrderId()).getLots();
+                TradeRecord record = journal.findLast(updateOrderDTO.getOrderId());
+                if(record != null){
+                    double lots = record.getLots();
 
 
                     Double xauusdProfit = getXAUUSDProfit(updateOrderDTO.getStartPrice(), updateOrderDTO.getEndPrice(), updateOrderDTO.getAction(), lots);
 
 
 
-                    updateProfitForOrder.updateProfitForOrder(records, updateOrderDTO.getOrderId(), xauusdProfit);
-                    // 3. 将修改后的记录写回Excel文件
-                    CsvWriter.writeRecordsToExcel(records, filePath);
-
-                    System.out.println("交易记录已成功更新并保存到Excel文件: " + filePath);
+                    newProfits.put(updateOrderDTO.getOrderId(), xauusdProfit);
                 }
 
 
             }
 
+            // 3. 将修改后的记录一次性写回Excel文件
+            saveUpdates(journal, newProfits);
+
 
         } catch (  IOException e) {
             System.err.println("处理Excel文件时出错: " + e.getMessage());
@@ -106,35 +99,28 @@ public class WriteOrder {
         String filePath = "D:/data/高胜率/欧美69胜率 - 副本.xlsx"; // Excel文件路径
 
         try {
-            // 1. 从Excel文件读取交易记录
-            List<TradeRecord> records = CsvWriter.readRecordsFromExcel(filePath);
-            Map<Integer,TradeRecord> map = new HashMap<>();
-            for (TradeRecord tradeRecord: records){
-                if(tradeRecord.getType().equals("close")){
-                    map.put(tradeRecord.getOrderId(),tradeRecord);
-                }
-
-            }
+            // 1. 加载交割单（有缓存时不解析Excel），按订单号查找最后一条平仓记录
+            TradeJournalStore journal = TradeJournalStore.load(filePath);
 
+            Map<Integer,Double> newProfits = new LinkedHashMap<>();
             for (updateOrderDTO updateOrderDTO:mergedList){
-                if(map.get(updateOrderDTO.getOrderId()) != null){
-                    TradeRecord tradeRecord = map.get(updateOrderDTO.getOrderId());
+                TradeRecord tradeRecord = journal.findLastClose(updateOrderDTO.getOrderId());
+                if(tradeRecord != null){
                     double lots = tradeRecord.getLots();
                     updateOrderDTO.setEndPrice(tradeRecord.getPrice());
                     Double eurusdProfit = getEURUSDProfit(updateOrderDTO.getStartPrice(), updateOrderDTO.getEndPrice(), updateOrderDTO.getAction(), lots);
 
 
 
-                    updateProfitForOrder.updateProfitForOrder(records, updateOrderDTO.getOrderId(), eurusdProfit);
-                    // 3. 将修改后的记录写回Excel文件
-                    CsvWriter.writeRecordsToExcel(records, filePath);
-
-                    System.out.println("交易记录已成功更新并保存到Excel文件: " + filePath);
+                    newProfits.put(updateOrderDTO.getOrderId(), eurusdProfit);
                 }
 
 
             }
 
+            // 3. 将修改后的记录一次性写回Excel文件
+            saveUpdates(journal, newProfits);
+
 
         } catch (  IOException e) {
             System.err.println("处理Excel文件时出错: " + e.getMessage());
@@ -148,19 +134,13 @@ public class WriteOrder {
         String filePath = "D:/data/高胜率/镑日最大胜率版 - 副本.xlsx"; // Excel文件路径
 
         try {
-            // 1. 从Excel文件读取交易记录
-            List<TradeRecord> records = CsvWriter.readRecordsFromExcel(filePath);
-            Map<Integer,TradeRecord> map = new HashMap<>();
-            for (TradeRecord tradeRecord: records){
-                if(tradeRecord.getType().equals("close")){
-                    map.put(tradeRecord.getOrderId(),tradeRecord);
-                }
-
-            }
+            // 1. 加载交割单（有缓存时不解析Excel），按订单号查找最后一条平仓记录
+            TradeJournalStore journal = TradeJournalStore.load(filePath);
 
+            Map<Integer,Double> newProfits = new LinkedHashMap<>();
             for (updateOrderDTO updateOrderDTO:mergedList){
-                if(map.get(updateOrderDTO.getOrderId()) != null){
-                    TradeRecord tradeRecord = map.get(updateOrderDTO.getOrderId());
+                TradeRecord tradeRecord = journal.findLastClose(updateOrderDTO.getOrderId());
+                if(tradeRecord != null){
                     double lots = tradeRecord.getLots();
                     if(updateOrderDTO.getEndPrice() == null || updateOrderDTO.getEndPrice() == 0.0){
                         updateOrderDTO.setEndPrice(tradeRecord.getPrice());
@@ -170,16 +150,15 @@ public class WriteOrder {
 
 
 
-                    updateProfitForOrder.updateProfitForOrder(records, updateOrderDTO.getOrderId(), eurusdProfit);
-                    // 3. 将修改后的记录写回Excel文件
-                    CsvWriter.writeRecordsToExcel(records, filePath);
-
-                    System.out.println("交易记录已成功更新并保存到Excel文件: " + filePath);
+                    newProfits.put(updateOrderDTO.getOrderId(), eurusdProfit);
                 }
 
 
             }
 
+            // 3. 将修改后的记录一次性写回Excel文件
+            saveUpdates(journal, newProfits);
+
 
         } catch (  IOException e) {
             System.err.println("处理Excel文件时出错: " + e.getMessage());
@@ -187,6 +166,18 @@ public class WriteOrder {
 
     }
 
+    /**
+     * 批量应用获利修改，有修改时写回Excel一次
+     */
+    private static void saveUpdates(TradeJournalStore journal, Map<Integer,Double> newProfits) throws IOException {
+        int updated = journal.updateProfits(newProfits);
+        if (updated == 0) {
+            return;
+        }
+        journal.save();
+        System.out.println("交易记录已成功更新" + updated + "条并保存到Excel文件");
+    }
+
     public Double getXAUUSDProfit( Double startPrice,Double endPrice,  String action,Double lots){
         Double result=0.00;
         if(action.equals("多")){
@@ -0,0 +1,27 @@
+package com.demo.extract.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行距离与相似度内核的JMH基准测试，输出吞吐量（ops/s）与GC分配速率（gc.alloc.rate.norm，字节/次）
+ * 需要jmh-core与jmh-generator-annprocess（注解处理器）在编译类路径上。
+ * 参数：可选的正则表达式，只运行匹配的基准，如 "DistanceKernel.*manhattan"；结果同时写入jmh-result.json。
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "com\\.demo\\.extract\\.benchmark\\..*";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
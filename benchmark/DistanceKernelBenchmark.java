@@ -0,0 +1,87 @@
+package com.demo.extract.benchmark;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.services.CanberraDistanceCalculator;
+import com.demo.extract.services.ChebyshevDistanceCalculator;
+import com.demo.extract.services.ConstrainedDtwCalculator;
+import com.demo.extract.services.DtwCalculator;
+import com.demo.extract.services.EuclideanDistanceCalculator;
+import com.demo.extract.services.ManhattanDistanceCalculator;
+import com.demo.extract.services.PearsonCorrelationCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两两距离计算的基准测试
+ * 与回测中的用法一致：按testRatio截取前段、收盘价因子（type=2），约束DTW窗口为15。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceKernelBenchmark {
+    private static final double TEST_RATIO = 0.9;
+    private static final int TYPE = 2;
+    private static final int WINDOW = 15;
+
+    @Param({"70", "200", "500"})
+    public int length;
+
+    private OrderTimeSeries target;
+    private OrderTimeSeries candidate;
+
+    @Setup
+    public void setUp() {
+        SyntheticOrderGenerator generator = new SyntheticOrderGenerator(1L).withLength(length, length);
+        target = generator.order(0);
+        candidate = generator.order(1);
+    }
+
+    @Benchmark
+    public double dtw() {
+        return DtwCalculator.computePartial(target, candidate, TEST_RATIO, TYPE);
+    }
+
+    @Benchmark
+    public double constrainedDtw() {
+        return ConstrainedDtwCalculator.computePartial(target, candidate, TEST_RATIO, WINDOW, TYPE);
+    }
+
+    @Benchmark
+    public double manhattan() {
+        return ManhattanDistanceCalculator.computePartial(target, candidate, TEST_RATIO, TYPE);
+    }
+
+    @Benchmark
+    public double euclidean() {
+        return EuclideanDistanceCalculator.computePartial(target, candidate, TEST_RATIO, TYPE);
+    }
+
+    @Benchmark
+    public double pearson() {
+        return PearsonCorrelationCalculator.computePartial(target, candidate, TEST_RATIO, TYPE);
+    }
+
+    @Benchmark
+    public double canberra() {
+        return CanberraDistanceCalculator.computePartial(target, candidate, TEST_RATIO, TYPE);
+    }
+
+    @Benchmark
+    public double chebyshev() {
+        return ChebyshevDistanceCalculator.computePartial(target, candidate, TEST_RATIO, TYPE);
+    }
+}
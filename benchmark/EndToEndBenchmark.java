@@ -0,0 +1,280 @@
+package com.demo.extract.benchmark;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.model.DecisionResult;
+import com.demo.extract.model.KlineData;
+import com.demo.extract.services.DecisionEngine;
+import com.demo.extract.services.DistanceCache;
+import com.demo.extract.services.OrderHistory;
+import com.demo.extract.services.SimilarityService;
+import com.demo.extract.services.StageTimings;
+import com.demo.extract.shortTimeMar.DynamicExitStrategy;
+import com.demo.extract.shortTimeMar.StrategyBacktester;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 端到端批处理吞吐量基准：用SyntheticOrderGenerator生成的历史订单跑完整流程，记录耗时、吞吐量、峰值堆内存与GC次数
+ * 覆盖三条路径：batchTestAllOrders*（批量回测）、常驻决策引擎的单目标查询（ScheduledTask的路径）、
+ * StrategyBacktester.runBacktest（基于K线的平仓策略回测）。运行期间的控制台明细输出被屏蔽，只打印报告。
+ * 参数：历史订单数量（可多个，默认 1000 10000）。系统属性：
+ * bench.metrics 批量回测的度量（MHT,PC,DTW，默认MHT,PC），bench.limit 批量回测的目标数（默认200），
+ * bench.targets 单目标查询次数（默认200），bench.klines 回测K线数（默认20000），bench.threads 线程数（默认4），
+ * bench.ann 开启近邻预筛时每个因子的候选数（默认0不开启；开启时额外运行一遍批量回测，报告相似订单相对精确结果的召回率与决策一致率）。
+ */
+public class EndToEndBenchmark {
+    private static final double TEST_RATIO = 0.9;
+    private static final long SEED = 42L;
+    private static final PrintStream REPORT = System.out;
+
+    public static void main(String[] args) {
+        int[] scales = args.length > 0 ? new int[args.length] : new int[]{1000, 10000};
+        for (int i = 0; i < args.length; i++) {
+            scales[i] = Integer.parseInt(args[i]);
+        }
+        String[] metrics = System.getProperty("bench.metrics", "MHT,PC").split(",");
+        int limit = Integer.getInteger("bench.limit", 200);
+        int targets = Integer.getInteger("bench.targets", 200);
+        int klines = Integer.getInteger("bench.klines", 20000);
+        int threads = Integer.getInteger("bench.threads", 4);
+        int annCandidates = Integer.getInteger("bench.ann", 0);
+
+        REPORT.printf("%-28s %8s %10s %10s %12s %10s %6s %8s%n",
+                "场景", "订单数", "单位数", "耗时ms", "单位/秒", "峰值堆MB", "GC次数", "GC耗时ms");
+        for (int scale : scales) {
+            SyntheticOrderGenerator generator = new SyntheticOrderGenerator(SEED);
+
+            Measurement generate = Measurement.start();
+            OrderHistory history = new OrderHistory(TEST_RATIO);
+            history.append(generator.orders(scale));
+            generate.stop("生成+截取历史", scale, scale);
+
+            OrderHistory.Snapshot snapshot = history.snapshot();
+            for (String metric : metrics) {
+                List<DecisionResult> exact = runBatch(metric.trim(), snapshot.full(), snapshot.truncated(),
+                        scale, limit, threads, 0);
+                if (annCandidates > 0) {
+                    List<DecisionResult> approximate = runBatch(metric.trim(), snapshot.full(), snapshot.truncated(),
+                            scale, limit, threads, annCandidates);
+                    reportRecall(exact, approximate);
+                }
+            }
+            runEngine(generator, history, scale, targets, threads);
+        }
+        runBacktest(new SyntheticOrderGenerator(SEED), klines);
+    }
+
+    /**
+     * 批量回测：前limit个订单依次作为目标，在全部历史中找相似订单
+     * @param annCandidates 近邻预筛每个因子的候选数，0为精确计算
+     */
+    private static List<DecisionResult> runBatch(String metric, Map<String, OrderTimeSeries> full,
+                                                 Map<String, OrderTimeSeries> truncated, int scale, int limit,
+                                                 int threads, int annCandidates) {
+        SimilarityService service = new SimilarityService(threads);
+        if (annCandidates > 0) {
+            service.enableAnnPrefilter(annCandidates, 0.95);
+        }
+        try {
+            Measurement measurement = Measurement.start();
+            List<DecisionResult> results = quietly(() -> {
+                switch (metric) {
+                    case "MHT":
+                        return service.batchTestAllOrdersMHT(full, truncated, TEST_RATIO, limit);
+                    case "PC":
+                        return service.batchTestAllOrdersPC(full, truncated, TEST_RATIO, limit);
+                    case "DTW":
+                        return service.batchTestAllOrdersDTW(full, truncated, TEST_RATIO, limit);
+                    default:
+                        throw new IllegalArgumentException("不支持的度量: " + metric);
+                }
+            });
+            measurement.stop("batchTestAllOrders" + metric + (annCandidates > 0 ? "+ANN" : ""), scale, results.size());
+            if (annCandidates > 0) {
+                REPORT.printf("    近邻索引校准召回率 %.3f%n", service.getAnnRecall());
+            }
+            return results;
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * 预筛结果与精确结果对比：相似订单的召回率、决策一致率
+     */
+    private static void reportRecall(List<DecisionResult> exact, List<DecisionResult> approximate) {
+        Map<String, DecisionResult> byId = new HashMap<>();
+        for (DecisionResult result : approximate) {
+            byId.put(result.getOrderId(), result);
+        }
+        int expected = 0;
+        int found = 0;
+        int compared = 0;
+        int agreed = 0;
+        for (DecisionResult result : exact) {
+            DecisionResult other = byId.get(result.getOrderId());
+            if (other == null) {
+                continue;
+            }
+            compared++;
+            if (result.getDecision().equals(other.getDecision())) {
+                agreed++;
+            }
+            Set<String> similar = new HashSet<>(other.getSimilarOrders());
+            for (String orderId : result.getSimilarOrders()) {
+                expected++;
+                if (similar.contains(orderId)) {
+                    found++;
+                }
+            }
+        }
+        REPORT.printf("    相似订单召回率 %.3f, 决策一致率 %.3f（%d个目标）%n",
+                expected == 0 ? 1.0 : found / (double) expected,
+                compared == 0 ? 1.0 : agreed / (double) compared, compared);
+    }
+
+    /**
+     * 常驻引擎：初始化（索引全部历史）后，逐个查询新到达的目标订单，额外输出单次查询的p50/p99
+     */
+    private static void runEngine(SyntheticOrderGenerator generator, OrderHistory history,
+                                  int scale, int targets, int threads) {
+        Measurement init = Measurement.start();
+        DecisionEngine engine = quietly(() -> new DecisionEngine(new SimilarityService(threads), history,
+                TEST_RATIO, DistanceCache.Metric.MANHATTAN));
+        init.stop("DecisionEngine初始化", scale, scale);
+        try {
+            Measurement measurement = Measurement.start();
+            int evaluated = quietly(() -> {
+                int count = 0;
+                for (int i = 0; i < targets; i++) {
+                    // 目标订单取历史之外的序号，只读查询，不加入历史
+                    if (engine.evaluate(generator.order(scale + i), new StageTimings()) != null) {
+                        count++;
+                    }
+                }
+                return count;
+            });
+            measurement.stop("DecisionEngine单目标查询", scale, evaluated);
+            REPORT.printf("    单目标查询延迟 p50=%.2fms p99=%.2fms%n",
+                    engine.latencyPercentileMillis(0.50), engine.latencyPercentileMillis(0.99));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * K线回测：每隔固定根数交替开多/开空，由默认动态平仓策略决定平仓
+     */
+    private static void runBacktest(SyntheticOrderGenerator generator, int count) {
+        List<KlineData> klines = generator.klines("EURUSD", count);
+        DynamicExitStrategy.OriginalStrategy strategy = new DynamicExitStrategy.OriginalStrategy() {
+            @Override
+            public boolean shouldOpenPosition(List<KlineData> klineDataList, int currentIndex) {
+                return currentIndex > 0 && currentIndex % 50 == 0;
+            }
+
+            @Override
+            public String getPositionDirection(List<KlineData> klineDataList, int currentIndex) {
+                return (currentIndex / 50) % 2 == 0 ? "多头" : "空头";
+            }
+        };
+        Measurement measurement = Measurement.start();
+        StrategyBacktester.BacktestResult result = quietly(() -> new StrategyBacktester().runBacktest(klines, strategy,
+                klines.get(0).getTimestamp(), klines.get(klines.size() - 1).getTimestamp()));
+        measurement.stop("StrategyBacktester.runBacktest", count,
+                result == null ? 0 : result.getTotalTrades());
+    }
+
+    /**
+     * 运行期间屏蔽System.out（各路径逐单打印明细，打印本身会主导耗时）
+     */
+    private static <T> T quietly(Task<T> task) {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(new NullOutputStream()));
+        try {
+            return task.run();
+        } finally {
+            System.setOut(original);
+        }
+    }
+
+    private interface Task<T> {
+        T run();
+    }
+
+    /**
+     * 丢弃全部输出（OutputStream.nullOutputStream需要Java 11）
+     */
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    /**
+     * 一次测量：墙钟时间、GC次数与耗时的增量、堆内存各区峰值之和
+     */
+    private static class Measurement {
+        private final long startNanos;
+        private final long startGcCount;
+        private final long startGcMillis;
+
+        private Measurement() {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            this.startGcCount = gcCount();
+            this.startGcMillis = gcMillis();
+            this.startNanos = System.nanoTime();
+        }
+
+        static Measurement start() {
+            return new Measurement();
+        }
+
+        void stop(String name, int scale, int units) {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+            double elapsedMillis = elapsedNanos / 1e6;
+            REPORT.printf("%-28s %8d %10d %10.1f %12.1f %10.1f %6d %8d%n",
+                    name, scale, units, elapsedMillis, units / (elapsedNanos / 1e9),
+                    peakHeap / (1024.0 * 1024.0), gcCount() - startGcCount, gcMillis() - startGcMillis);
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long gcMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.demo.extract.benchmark;
+
+import com.demo.extract.DTO.OrderFeatures;
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.services.CosineSimilarity;
+import com.demo.extract.services.FeatureService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 特征提取与余弦相似度的基准测试
+ * 特征矩阵由orders个合成订单提取，单目标查询对应computeVectorToMatrix，全量回测对应compute。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimilarityKernelBenchmark {
+    private static final int TYPE = 2;
+
+    @Param({"70", "200", "500"})
+    public int length;
+
+    @Param({"1000"})
+    public int orders;
+
+    private final FeatureService featureService = new FeatureService();
+    private final CosineSimilarity cosineSimilarity = new CosineSimilarity();
+
+    private OrderTimeSeries series;
+    private List<String> orderIds;
+    private Map<String, OrderTimeSeries> seriesMap;
+    private double[][] featureMatrix;
+
+    @Setup
+    public void setUp() {
+        SyntheticOrderGenerator generator = new SyntheticOrderGenerator(1L).withLength(length, length);
+        series = generator.order(orders);
+        seriesMap = generator.history(0, orders);
+        orderIds = new ArrayList<>(seriesMap.keySet());
+        featureMatrix = featureService.extractFeatureMatrix(orderIds, seriesMap, TYPE);
+    }
+
+    @Benchmark
+    public OrderFeatures extractFeatures() {
+        return featureService.extractFeatures(series, TYPE);
+    }
+
+    @Benchmark
+    public double[][] extractFeatureMatrix() {
+        return featureService.extractFeatureMatrix(orderIds, seriesMap, TYPE);
+    }
+
+    @Benchmark
+    public double[] cosineVectorToMatrix() {
+        return cosineSimilarity.computeVectorToMatrix(featureMatrix[0], featureMatrix);
+    }
+
+    @Benchmark
+    public double[][] cosineFullMatrix() {
+        return cosineSimilarity.compute(featureMatrix);
+    }
+}
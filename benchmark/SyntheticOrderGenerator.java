@@ -0,0 +1,221 @@
+package com.demo.extract.benchmark;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.model.KlineData;
+import com.demo.extract.util.ResultSink;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 确定性的合成订单数据生成器（替代私有的 D:/data/*.csv 做性能复现）
+ * 价格为带趋势与波动率聚集（GARCH(1,1)）的对数随机游走：开盘价为上一根收盘价，最高/最低价在实体外随机延伸，
+ * ATR为14周期Wilder平滑的真实波幅，唐奇安通道为20周期最高/最低价，收益为按开仓方向计算的点数。
+ * 第index个订单只由(seed, index)决定，与生成数量和生成顺序无关，1千到10万个订单都可复现。
+ */
+public class SyntheticOrderGenerator {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int ATR_PERIOD = 14;
+    private static final int DONCHIAN_PERIOD = 20;
+
+    private final long seed;
+    private int minLength = 70;
+    private int maxLength = 500;
+    private int barMinutes = 5;
+    private double basePrice = 1.1000;
+    private double pipSize = 0.0001;
+    private double volatility = 0.0006; // 每根K线对数收益的长期标准差
+
+    public SyntheticOrderGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * 订单序列长度范围（含两端）
+     */
+    public SyntheticOrderGenerator withLength(int minLength, int maxLength) {
+        if (minLength < 2 || maxLength < minLength) {
+            throw new IllegalArgumentException("序列长度范围无效: " + minLength + "~" + maxLength);
+        }
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        return this;
+    }
+
+    /**
+     * 品种参数：基准价格、点值、每根K线波动率
+     */
+    public SyntheticOrderGenerator withMarket(double basePrice, double pipSize, double volatility) {
+        this.basePrice = basePrice;
+        this.pipSize = pipSize;
+        this.volatility = volatility;
+        return this;
+    }
+
+    public SyntheticOrderGenerator withBarMinutes(int barMinutes) {
+        this.barMinutes = barMinutes;
+        return this;
+    }
+
+    /**
+     * 订单ID（与MT4订单号一样为数字）
+     */
+    public static String orderId(int index) {
+        return String.valueOf(10000000 + index);
+    }
+
+    /**
+     * 第index个订单
+     */
+    public OrderTimeSeries order(int index) {
+        SplittableRandom random = new SplittableRandom(mix(seed, index));
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        boolean isLong = random.nextBoolean();
+
+        double[] timestamps = new double[length];
+        double[] values = new double[length];
+        double[] close = new double[length];
+        double[] open = new double[length];
+        double[] atr = new double[length];
+        double[] th = new double[length];
+        double[] tl = new double[length];
+        double[] inPrice = new double[length];
+        String[] valueTime = new String[length];
+        double[] high = new double[length];
+        double[] low = new double[length];
+
+        double entry = basePrice * Math.exp(gaussian(random) * 0.05);
+        double drift = gaussian(random) * volatility * 0.15; // 订单期间的趋势
+        double variance = volatility * volatility;
+        double lastReturn = 0;
+        double price = entry;
+        LocalDateTime openTime = START.plusMinutes((long) index * 37);
+
+        for (int i = 0; i < length; i++) {
+            // GARCH(1,1)：大波动之后更可能继续大波动
+            variance = volatility * volatility * 0.05 + 0.10 * lastReturn * lastReturn + 0.85 * variance;
+            double sigma = Math.sqrt(variance);
+            lastReturn = drift + sigma * gaussian(random);
+
+            open[i] = price;
+            price *= Math.exp(lastReturn);
+            close[i] = price;
+            high[i] = Math.max(open[i], close[i]) * (1 + Math.abs(gaussian(random)) * sigma * 0.5);
+            low[i] = Math.min(open[i], close[i]) * (1 - Math.abs(gaussian(random)) * sigma * 0.5);
+
+            double previousClose = i == 0 ? open[i] : close[i - 1];
+            double trueRange = Math.max(high[i] - low[i],
+                    Math.max(Math.abs(high[i] - previousClose), Math.abs(low[i] - previousClose)));
+            atr[i] = i == 0 ? trueRange : (atr[i - 1] * (ATR_PERIOD - 1) + trueRange) / ATR_PERIOD;
+
+            double channelHigh = high[i];
+            double channelLow = low[i];
+            for (int k = Math.max(0, i - DONCHIAN_PERIOD + 1); k < i; k++) {
+                channelHigh = Math.max(channelHigh, high[k]);
+                channelLow = Math.min(channelLow, low[k]);
+            }
+            th[i] = channelHigh;
+            tl[i] = channelLow;
+
+            timestamps[i] = (i + 1) * barMinutes;
+            values[i] = (isLong ? close[i] - entry : entry - close[i]) / pipSize;
+            inPrice[i] = entry;
+            valueTime[i] = openTime.plusMinutes((long) i * barMinutes).format(TIME_FORMATTER);
+        }
+        return new OrderTimeSeries(orderId(index), timestamps, values, close, open, atr, th, tl, valueTime, inPrice);
+    }
+
+    /**
+     * 前count个订单
+     */
+    public List<OrderTimeSeries> orders(int count) {
+        List<OrderTimeSeries> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(order(i));
+        }
+        return orders;
+    }
+
+    /**
+     * 第from个起的count个订单，按订单ID索引（保持生成顺序）
+     */
+    public Map<String, OrderTimeSeries> history(int from, int count) {
+        Map<String, OrderTimeSeries> history = new LinkedHashMap<>(count * 2);
+        for (int i = from; i < from + count; i++) {
+            OrderTimeSeries order = order(i);
+            history.put(order.getOrderId(), order);
+        }
+        return history;
+    }
+
+    /**
+     * 连续的K线（与订单相同的价格过程，用于StrategyBacktester等基于K线的回测）
+     */
+    public List<KlineData> klines(String symbol, int count) {
+        SplittableRandom random = new SplittableRandom(mix(seed, -1));
+        List<KlineData> klines = new ArrayList<>(count);
+        double variance = volatility * volatility;
+        double lastReturn = 0;
+        double price = basePrice;
+        for (int i = 0; i < count; i++) {
+            variance = volatility * volatility * 0.05 + 0.10 * lastReturn * lastReturn + 0.85 * variance;
+            double sigma = Math.sqrt(variance);
+            lastReturn = sigma * gaussian(random);
+            double open = price;
+            price *= Math.exp(lastReturn);
+            double high = Math.max(open, price) * (1 + Math.abs(gaussian(random)) * sigma * 0.5);
+            double low = Math.min(open, price) * (1 - Math.abs(gaussian(random)) * sigma * 0.5);
+            klines.add(new KlineData(symbol, START.plusMinutes((long) i * barMinutes), open, high, low, price,
+                    100 + random.nextInt(900)));
+        }
+        return klines;
+    }
+
+    /**
+     * 写出与MT4导出格式一致的CSV（DataLoaderNew可直接读取）
+     */
+    public void writeCsv(String filePath, int count) throws IOException {
+        try (ResultSink sink = ResultSink.open(filePath)) {
+            sink.row("profit,订单号,holdtime,日期,close,进场价格,atr,open,DonchianHigh,DonchianLow");
+            for (int index = 0; index < count; index++) {
+                OrderTimeSeries order = order(index);
+                double[] timestamps = order.getTimestamps();
+                double[] values = order.getValues();
+                for (int i = 0; i < values.length; i++) {
+                    sink.field(values[i])
+                            .field(order.getOrderId())
+                            .field(timestamps[i])
+                            .field(order.getValueTime()[i])
+                            .field(order.getClose()[i])
+                            .field(order.getInPrice()[i])
+                            .field(order.getAtr()[i])
+                            .field(order.getOpen()[i])
+                            .field(order.getTH()[i])
+                            .field(order.getTL()[i])
+                            .endRow();
+                }
+            }
+        }
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller（SplittableRandom没有nextGaussian）
+        double u = 1.0 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    private static long mix(long seed, long index) {
+        long z = seed * 0x9E3779B97F4A7C15L + index;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
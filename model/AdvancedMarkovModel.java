@@ -18,6 +18,8 @@ import java.util.stream.Collectors;
 public class AdvancedMarkovModel {
     private List<FinancialDataPoint> dataPoints;
     private List<Segment> segments;
+    private double[] values;
+    private RollingStats stats; // 区间统计内核，分段分析时复用
     private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
     private static final DateTimeFormatter OUTPUT_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
@@ -48,34 +50,30 @@ public class AdvancedMarkovModel {
             LocalDateTime timestamp = LocalDateTime.parse(valueTime[i], INPUT_FORMATTER);
             dataPoints.add(new FinancialDataPoint(value, timestamp.format(ISO_FORMATTER), orderId));
         }
+        this.values = dataPoints.stream()
+                .mapToDouble(FinancialDataPoint::getValue)
+                .toArray();
+        this.stats = new RollingStats(this.values);
     }
 
     /**
-     * 安全的斜率计算
+     * 安全的斜率计算，区间为 [start, end)
      */
-    private double safeSlopeCalc(double[] values) {
-        if (values.length < 2) {
-            return 0.0;
-        }
-
-        SimpleRegression regression = new SimpleRegression();
-        for (int i = 0; i < values.length; i++) {
-            regression.addData(i, values[i]);
-        }
-        return regression.getSlope();
+    private double safeSlopeCalc(int start, int end) {
+        return stats.slope(start, end);
     }
 
     /**
-     * 趋势类型判断
+     * 趋势类型判断，区间为 [start, end)
      */
-    private TrendResult determineTrendType(double[] segmentValues) {
-        if (segmentValues.length < 3) {
+    private TrendResult determineTrendType(int start, int end) {
+        if (end - start < 3) {
             return new TrendResult("数据不足", 0.5);
         }
 
-        double slope = safeSlopeCalc(segmentValues);
-        double volatility = calculateVolatility(segmentValues);
-        double hurst = hurstExponent(segmentValues);
+        double slope = safeSlopeCalc(start, end);
+        double volatility = calculateVolatility(start, end);
+        double hurst = hurstExponent(start, end);
 
         // 基于波动率的动态阈值
         double trendThreshold = Math.max(0.10, Math.min(0.20, volatility / 300.0));
@@ -88,36 +86,34 @@ public class AdvancedMarkovModel {
     }
 
     /**
-     * 计算波动率
+     * 计算波动率，区间为 [start, end)
      */
-    private double calculateVolatility(double[] values) {
-        double mean = Arrays.stream(values).average().orElse(0.0);
-        double variance = Arrays.stream(values)
-                .map(v -> Math.pow(v - mean, 2))
-                .average().orElse(0.0);
-        return Math.sqrt(variance);
+    private double calculateVolatility(int start, int end) {
+        return stats.std(start, end);
     }
 
     /**
-     * 计算Hurst指数
+     * 计算Hurst指数，区间为 [start, end)
      */
-    private double hurstExponent(double[] ts) {
-        if (ts.length < 5) {
+    private double hurstExponent(int start, int end) {
+        int length = end - start;
+        if (length < 5) {
             return 0.5;
         }
 
         try {
-            int maxLag = Math.min(20, ts.length / 2);
+            int maxLag = Math.min(20, length / 2);
             List<Integer> lags = new ArrayList<>();
             List<Double> tau = new ArrayList<>();
 
             for (int lag = 2; lag < maxLag; lag++) {
                 lags.add(lag);
-                double[] diffs = new double[ts.length - lag];
-                for (int i = 0; i < ts.length - lag; i++) {
-                    diffs[i] = ts[i + lag] - ts[i];
+                double sumSq = 0.0;
+                for (int i = start; i < end - lag; i++) {
+                    double diff = values[i + lag] - values[i];
+                    sumSq += diff * diff;
                 }
-                tau.add(Math.sqrt(Arrays.stream(diffs).map(d -> d * d).average().orElse(0.0)));
+                tau.add(Math.sqrt(sumSq / (length - lag)));
             }
 
             if (lags.size() < 2) {
@@ -143,13 +139,9 @@ public class AdvancedMarkovModel {
             return;
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
         // 识别峰值和谷值
-        List<Integer> peaks = findPeaks(values, PEAK_PROMINENCE);
-        List<Integer> valleys = findPeaks(invertArray(values), PEAK_PROMINENCE);
+        List<Integer> peaks = findPeaks(PEAK_PROMINENCE, false);
+        List<Integer> valleys = findPeaks(PEAK_PROMINENCE, true);
 
         // 合并并排序所有转折点
         Set<Integer> turningPoints = new TreeSet<>();
@@ -245,35 +237,28 @@ public class AdvancedMarkovModel {
     }
 
     /**
-     * 寻找峰值
+     * 寻找峰值（valley为true时寻找谷值，等价于在反转序列上寻找峰值）
      */
-    private List<Integer> findPeaks(double[] values, double prominence) {
+    private List<Integer> findPeaks(double prominence, boolean valley) {
         List<Integer> peaks = new ArrayList<>();
-        for (int i = 1; i < values.length - 1; i++) {
-            if (values[i] > values[i - 1] && values[i] > values[i + 1]) {
-                // 计算突出度（简化实现）
-                double leftMin = Arrays.stream(Arrays.copyOfRange(values, 0, i)).min().orElse(0.0);
-                double rightMin = Arrays.stream(Arrays.copyOfRange(values, i + 1, values.length)).min().orElse(0.0);
-                double peakProminence = values[i] - Math.max(leftMin, rightMin);
-                if (peakProminence >= prominence) {
-                    peaks.add(i);
-                }
+        int n = values.length;
+        for (int i = 1; i < n - 1; i++) {
+            double peakProminence;
+            if (!valley && values[i] > values[i - 1] && values[i] > values[i + 1]) {
+                // 计算突出度（简化实现），两侧最小值由区间统计内核O(1)给出
+                peakProminence = values[i] - Math.max(stats.min(0, i), stats.min(i + 1, n));
+            } else if (valley && values[i] < values[i - 1] && values[i] < values[i + 1]) {
+                peakProminence = Math.min(stats.max(0, i), stats.max(i + 1, n)) - values[i];
+            } else {
+                continue;
+            }
+            if (peakProminence >= prominence) {
+                peaks.add(i);
             }
         }
         return peaks;
     }
 
-    /**
-     * 反转数组（用于寻找谷值）
-     */
-    private double[] invertArray(double[] array) {
-        double[] result = new double[array.length];
-        for (int i = 0; i < array.length; i++) {
-            result[i] = -array[i];
-        }
-        return result;
-    }
-
     /**
      * 分析分段
      */
@@ -283,14 +268,9 @@ public class AdvancedMarkovModel {
             return reports;
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
         for (Segment segment : segments) {
             int start = segment.getStart();
             int end = segment.getEnd();
-            double[] segmentValues = Arrays.copyOfRange(values, start, end + 1);
 
             LocalDateTime startTimestamp = LocalDateTime.parse(
                     dataPoints.get(start).getTimestamp(), ISO_FORMATTER);
@@ -299,10 +279,10 @@ public class AdvancedMarkovModel {
             long duration = java.time.Duration.between(startTimestamp, endTimestamp).toMinutes();
 
             // 计算各种指标
-            double meanReturn = Arrays.stream(segmentValues).average().orElse(0.0);
-            double maxDrawdown = calculateMaxDrawdown(segmentValues);
-            double volatility = calculateVolatility(segmentValues);
-            TrendResult trendResult = determineTrendType(segmentValues);
+            double meanReturn = stats.mean(start, end + 1);
+            double maxDrawdown = calculateMaxDrawdown(start, end + 1);
+            double volatility = calculateVolatility(start, end + 1);
+            TrendResult trendResult = determineTrendType(start, end + 1);
             double hurst = trendResult.getHurst();
 
             String trendStrength = Math.abs(meanReturn) > 30 ? "强" : (Math.abs(meanReturn) > 15 ? "中" : "弱");
@@ -323,25 +303,10 @@ public class AdvancedMarkovModel {
     }
 
     /**
-     * 计算最大回撤
+     * 计算最大回撤，区间为 [start, end)
      */
-    private double calculateMaxDrawdown(double[] values) {
-        if (values.length == 0) return 0.0;
-
-        double peak = values[0];
-        double maxDrawdown = 0.0;
-
-        for (double value : values) {
-            if (value > peak) {
-                peak = value;
-            } else {
-                double drawdown = (peak - value) / peak;
-                if (drawdown > maxDrawdown) {
-                    maxDrawdown = drawdown;
-                }
-            }
-        }
-        return maxDrawdown * 100; // 转换为百分比
+    private double calculateMaxDrawdown(int start, int end) {
+        return stats.maxDrawdown(start, end) * 100; // 转换为百分比
     }
 
     /**
@@ -352,14 +317,11 @@ public class AdvancedMarkovModel {
             return new OverallEvaluation("数据不足", 0.0, 0.5, 0.0, "未知");
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
-        double slope = safeSlopeCalc(values);
-        double hurst = hurstExponent(values);
-        double volatility = calculateVolatility(values);
-        double averageReturn = Arrays.stream(values).sum() / values.length;
+        int n = values.length;
+        double slope = safeSlopeCalc(0, n);
+        double hurst = hurstExponent(0, n);
+        double volatility = calculateVolatility(0, n);
+        double averageReturn = stats.mean(0, n);
 
         // 基于波动率的动态阈值判断整体趋势
         double trendThreshold = Math.max(0.10, Math.min(0.20, volatility / 300.0));
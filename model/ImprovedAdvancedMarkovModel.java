@@ -17,6 +17,10 @@ import java.util.stream.Collectors;
 public class ImprovedAdvancedMarkovModel {
     private List<FinancialDataPoint> dataPoints;
     private List<Segment> segments;
+    private double[] values;
+    private double[] logReturns;
+    private RollingStats stats;        // 价格序列的区间统计内核
+    private RollingStats returnStats;  // 对数收益率序列的区间统计内核
     private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm");
     private static final DateTimeFormatter OUTPUT_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
@@ -62,21 +66,19 @@ public class ImprovedAdvancedMarkovModel {
                 System.err.println("时间格式解析错误: " + valueTime[i]);
             }
         }
+        this.values = dataPoints.stream()
+                .mapToDouble(FinancialDataPoint::getValue)
+                .toArray();
+        this.logReturns = calculateLogReturns(this.values);
+        this.stats = new RollingStats(this.values);
+        this.returnStats = new RollingStats(this.logReturns);
     }
 
     /**
-     * 安全的斜率计算
+     * 安全的斜率计算，价格区间为 [start, end)
      */
-    private double safeSlopeCalc(double[] values) {
-        if (values.length < 2) {
-            return 0.0;
-        }
-
-        SimpleRegression regression = new SimpleRegression();
-        for (int i = 0; i < values.length; i++) {
-            regression.addData(i, values[i]);
-        }
-        return regression.getSlope();
+    private double safeSlopeCalc(int start, int end) {
+        return stats.slope(start, end);
     }
 
     /**
@@ -94,26 +96,23 @@ public class ImprovedAdvancedMarkovModel {
     }
 
     /**
-     * 趋势类型判断 - 优化版，支持轻微趋势类型
+     * 趋势类型判断 - 优化版，支持轻微趋势类型，价格区间为 [start, end)
      */
-    private TrendResult determineTrendType(double[] segmentPrices) {
-        if (segmentPrices.length < 3) {
+    private TrendResult determineTrendType(int start, int end) {
+        if (end - start < 3) {
             return new TrendResult("数据不足", 0.5);
         }
 
-        // 计算对数收益率进行趋势分析
-        double[] logReturns = calculateLogReturns(segmentPrices);
-        double slope = safeSlopeCalc(segmentPrices); // 使用价格计算斜率
-        double volatility = calculateVolatility(logReturns); // 使用对数收益率计算波动率
-        double hurst = hurstExponent(logReturns); // 使用对数收益率计算Hurst指数
+        // 价格区间 [start, end) 对应的对数收益率区间为 [start, end - 1)
+        double slope = safeSlopeCalc(start, end); // 使用价格计算斜率
+        double volatility = calculateVolatility(start, end - 1); // 使用对数收益率计算波动率
+        double hurst = hurstExponent(logReturns, start, end - 1); // 使用对数收益率计算Hurst指数
 
         // 计算价格变化百分比
-        double priceChangePercent = (segmentPrices[segmentPrices.length - 1] - segmentPrices[0]) / 
-                                   segmentPrices[0] * 100;
+        double priceChangePercent = (values[end - 1] - values[start]) / values[start] * 100;
         
         // 基于价格变化幅度的动态阈值
-        double priceRange = Arrays.stream(segmentPrices).max().orElse(0.0) - 
-                           Arrays.stream(segmentPrices).min().orElse(0.0);
+        double priceRange = stats.max(start, end) - stats.min(start, end);
         double trendThreshold = Math.max(0.01, Math.min(0.05, priceRange / 200.0));
         double minorTrendThreshold = trendThreshold / 2; // 轻微趋势的阈值
         
@@ -136,48 +135,37 @@ public class ImprovedAdvancedMarkovModel {
     }
 
     /**
-     * 计算波动率 - 优化版
+     * 计算波动率 - 优化版，对数收益率区间为 [start, end)
      */
-    private double calculateVolatility(double[] values) {
-        if (values.length < 2) {
+    private double calculateVolatility(int start, int end) {
+        if (end - start < 2) {
             return 0.0;
         }
-        double mean = Arrays.stream(values).average().orElse(0.0);
-        double variance = Arrays.stream(values)
-                .map(v -> Math.pow(v - mean, 2))
-                .average().orElse(0.0);
-        return Math.sqrt(variance) * 100; // 放大波动率以便观察
+        return returnStats.std(start, end) * 100; // 放大波动率以便观察
     }
 
     /**
-     * 计算Hurst指数 - 改进版，提高计算准确性
+     * 计算Hurst指数 - 改进版，提高计算准确性，序列区间为 [from, to)
      */
-    private double hurstExponent(double[] ts) {
-        if (ts.length < 20) { // 增加最小数据量要求以提高准确性
+    private double hurstExponent(double[] ts, int from, int to) {
+        int length = to - from;
+        if (length < 20) { // 增加最小数据量要求以提高准确性
             return 0.5;
         }
 
         try {
             // 优化滞后阶数的选择
-            int maxLag = Math.min(20, ts.length / 4); // 更合理的滞后阶数上限
+            int maxLag = Math.min(20, length / 4); // 更合理的滞后阶数上限
             List<Integer> lags = new ArrayList<>();
             List<Double> logRSDivLogN = new ArrayList<>();
 
-            // 计算累积离差
-            double[] cumulativeDeviations = new double[ts.length];
-            double mean = Arrays.stream(ts).average().orElse(0.0);
-            cumulativeDeviations[0] = ts[0] - mean;
-            for (int i = 1; i < ts.length; i++) {
-                cumulativeDeviations[i] = cumulativeDeviations[i - 1] + ts[i] - mean;
-            }
-
             // 对不同的滞后阶数计算R/S值
             for (int lag = 2; lag <= maxLag; lag++) {
-                int numBlocks = ts.length / lag;
+                int numBlocks = length / lag;
                 double[] rsValues = new double[numBlocks];
 
                 for (int block = 0; block < numBlocks; block++) {
-                    int startIndex = block * lag;
+                    int startIndex = from + block * lag;
                     int endIndex = startIndex + lag;
                     
                     // 计算块内均值
@@ -187,17 +175,12 @@ public class ImprovedAdvancedMarkovModel {
                     }
                     blockMean /= lag;
                     
-                    // 计算块内累积离差
-                    double[] blockCumulativeDeviations = new double[lag];
-                    blockCumulativeDeviations[0] = ts[startIndex] - blockMean;
-                    for (int i = 1; i < lag; i++) {
-                        blockCumulativeDeviations[i] = blockCumulativeDeviations[i - 1] + ts[startIndex + i] - blockMean;
-                    }
-                    
-                    // 计算极差
+                    // 计算块内累积离差的极差
                     double max = Double.MIN_VALUE;
                     double min = Double.MAX_VALUE;
-                    for (double dev : blockCumulativeDeviations) {
+                    double dev = 0;
+                    for (int i = startIndex; i < endIndex; i++) {
+                        dev = i == startIndex ? ts[i] - blockMean : dev + ts[i] - blockMean;
                         if (dev > max) max = dev;
                         if (dev < min) min = dev;
                     }
@@ -259,10 +242,6 @@ public class ImprovedAdvancedMarkovModel {
             return;
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
         // 识别峰值和谷值 - 使用改进的算法
         List<Integer> peaks = findPeaks(values, PEAK_PROMINENCE / 2); // 降低突出度门槛以识别更多转折点
         List<Integer> valleys = findPeaks(invertArray(values), PEAK_PROMINENCE / 2);
@@ -279,8 +258,7 @@ public class ImprovedAdvancedMarkovModel {
         significantPoints.add(0);
         
         // 计算数据整体波动率，用于自适应阈值
-        double[] logReturns = calculateLogReturns(values);
-        double overallVolatility = calculateVolatility(logReturns);
+        double overallVolatility = calculateVolatility(0, logReturns.length);
         
         // 根据波动率调整价格变化阈值
         double baseThreshold = 0.1; // 基础阈值
@@ -417,6 +395,8 @@ public class ImprovedAdvancedMarkovModel {
      */
     private List<Integer> findPeaks(double[] values, double prominence) {
         List<Integer> peaks = new ArrayList<>();
+        // 序列均值与峰值位置无关，循环外只计算一次
+        double avgPrice = Arrays.stream(values).average().orElse(0.0);
         for (int i = 1; i < values.length - 1; i++) {
             if (values[i] > values[i - 1] && values[i] > values[i + 1]) {
                 // 计算突出度（更精确的实现）
@@ -435,7 +415,6 @@ public class ImprovedAdvancedMarkovModel {
                 double peakProminence = values[i] - Math.max(leftMin, rightMin);
                 
                 // 使用相对突出度
-                double avgPrice = Arrays.stream(values).average().orElse(0.0);
                 double relativeProminence = peakProminence / avgPrice * 100;
                 
                 if (relativeProminence >= prominence / 5) { // 调整相对突出度阈值
@@ -466,10 +445,6 @@ public class ImprovedAdvancedMarkovModel {
             return reports;
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
         for (Segment segment : segments) {
             int start = segment.getStart();
             int end = segment.getEnd();
@@ -480,7 +455,6 @@ public class ImprovedAdvancedMarkovModel {
                 continue; // 跳过无效分段
             }
             
-            double[] segmentValues = Arrays.copyOfRange(values, start, end + 1);
 
             LocalDateTime startTimestamp = LocalDateTime.parse(
                     dataPoints.get(start).getTimestamp(), ISO_FORMATTER);
@@ -493,19 +467,18 @@ public class ImprovedAdvancedMarkovModel {
                 duration = 5; // 默认5分钟（一个K线周期）
             }
 
-            // 计算各种指标
-            double[] logReturns = calculateLogReturns(segmentValues);
-            double meanReturn = logReturns.length > 0 ? Arrays.stream(logReturns).average().orElse(0.0) * 100 : 0.0;
-            double maxDrawdown = calculateMaxDrawdown(segmentValues);
-            double volatility = calculateVolatility(logReturns);
+            // 计算各种指标，分段 [start, end] 对应的对数收益率区间为 [start, end)
+            double meanReturn = end > start ? returnStats.mean(start, end) * 100 : 0.0;
+            double maxDrawdown = calculateMaxDrawdown(start, end + 1);
+            double volatility = calculateVolatility(start, end);
             
             // 确保至少有3个数据点进行趋势判断
             TrendResult trendResult;
             if (segmentLength >= 3) {
-                trendResult = determineTrendType(segmentValues);
+                trendResult = determineTrendType(start, end + 1);
             } else {
                 // 对于小段数据，根据价格变化直接判断趋势
-                double priceChange = segmentValues[segmentLength - 1] - segmentValues[0];
+                double priceChange = values[end] - values[start];
                 String trendType = priceChange > 0 ? "轻微上涨" : (priceChange < 0 ? "轻微下跌" : "横盘");
                 trendResult = new TrendResult(trendType, 0.5); // 默认为随机游走
             }
@@ -517,8 +490,7 @@ public class ImprovedAdvancedMarkovModel {
             if ("趋势上涨".equals(trendResult.getType()) || "趋势下跌".equals(trendResult.getType()) ||
                 "轻微上涨".equals(trendResult.getType()) || "轻微下跌".equals(trendResult.getType())) {
                 // 结合平均收益率、价格变化百分比和分段持续时间综合评估
-                double priceChangePercent = (segmentValues[segmentValues.length - 1] - segmentValues[0]) / 
-                                           segmentValues[0] * 100;
+                double priceChangePercent = (values[end] - values[start]) / values[start] * 100;
                 
                 // 降低阈值，使趋势强度判断更合理
                 if (Math.abs(meanReturn) > 0.3 || Math.abs(priceChangePercent) > 0.4 || 
@@ -559,25 +531,10 @@ public class ImprovedAdvancedMarkovModel {
     }
 
     /**
-     * 计算最大回撤 - 优化版
+     * 计算最大回撤 - 优化版，价格区间为 [start, end)
      */
-    private double calculateMaxDrawdown(double[] values) {
-        if (values.length == 0) return 0.0;
-
-        double peak = values[0];
-        double maxDrawdown = 0.0;
-
-        for (double value : values) {
-            if (value > peak) {
-                peak = value;
-            } else {
-                double drawdown = (peak - value) / peak;
-                if (drawdown > maxDrawdown) {
-                    maxDrawdown = drawdown;
-                }
-            }
-        }
-        return maxDrawdown * 100; // 转换为百分比
+    private double calculateMaxDrawdown(int start, int end) {
+        return stats.maxDrawdown(start, end) * 100; // 转换为百分比
     }
 
     /**
@@ -588,15 +545,10 @@ public class ImprovedAdvancedMarkovModel {
             return new OverallEvaluation("数据不足", 0.0, 0.5, 0.0, "未知");
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
-        double[] logReturns = calculateLogReturns(values);
-        double slope = safeSlopeCalc(values);
-        double hurst = hurstExponent(logReturns);
-        double volatility = calculateVolatility(logReturns);
-        double averageReturn = logReturns.length > 0 ? Arrays.stream(logReturns).average().orElse(0.0) * 100 : 0.0;
+        double slope = safeSlopeCalc(0, values.length);
+        double hurst = hurstExponent(logReturns, 0, logReturns.length);
+        double volatility = calculateVolatility(0, logReturns.length);
+        double averageReturn = logReturns.length > 0 ? returnStats.mean(0, logReturns.length) * 100 : 0.0;
 
         // 改进的整体趋势判断
         double priceChange = values[values.length - 1] - values[0];
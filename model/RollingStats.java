@@ -0,0 +1,168 @@
+package com.demo.extract.model;
+
+/**
+ * 区间统计内核
+ * 基于前缀和与稀疏表，对任意 [start, end) 区间在 O(1) 内给出均值、方差、OLS斜率、最小值和最大值，
+ * 最大回撤按区间单次扫描计算（无数组拷贝）。供马尔可夫模型在分段时反复查询重叠区间使用。
+ */
+public class RollingStats {
+    private final double[] values;
+    private final double shift;        // 平移量（全局均值），降低前缀平方和的抵消误差
+    private final double[] prefixSum;  // Σ(y - shift)
+    private final double[] prefixSq;   // Σ(y - shift)²
+    private final double[] prefixIdx;  // Σ i·(y - shift)
+    private final double[][] minTable; // 稀疏表：区间最小值
+    private final double[][] maxTable; // 稀疏表：区间最大值
+    private final int[] log2;
+
+    /**
+     * 构造函数
+     * @param values 原始序列（不拷贝，调用方不应在之后修改）
+     */
+    public RollingStats(double[] values) {
+        this.values = values;
+        int n = values.length;
+
+        double total = 0.0;
+        for (double v : values) {
+            total += v;
+        }
+        this.shift = n > 0 ? total / n : 0.0;
+
+        prefixSum = new double[n + 1];
+        prefixSq = new double[n + 1];
+        prefixIdx = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            double y = values[i] - shift;
+            prefixSum[i + 1] = prefixSum[i] + y;
+            prefixSq[i + 1] = prefixSq[i] + y * y;
+            prefixIdx[i + 1] = prefixIdx[i] + i * y;
+        }
+
+        log2 = new int[n + 1];
+        for (int i = 2; i <= n; i++) {
+            log2[i] = log2[i / 2] + 1;
+        }
+        int levels = n > 0 ? log2[n] + 1 : 1;
+        minTable = new double[levels][];
+        maxTable = new double[levels][];
+        minTable[0] = values.clone();
+        maxTable[0] = values.clone();
+        for (int k = 1; k < levels; k++) {
+            int half = 1 << (k - 1);
+            int size = n - (1 << k) + 1;
+            minTable[k] = new double[size];
+            maxTable[k] = new double[size];
+            for (int i = 0; i < size; i++) {
+                minTable[k][i] = Math.min(minTable[k - 1][i], minTable[k - 1][i + half]);
+                maxTable[k][i] = Math.max(maxTable[k - 1][i], maxTable[k - 1][i + half]);
+            }
+        }
+    }
+
+    /**
+     * 序列长度
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * 区间和
+     */
+    public double sum(int start, int end) {
+        return prefixSum[end] - prefixSum[start] + (end - start) * shift;
+    }
+
+    /**
+     * 区间均值，空区间返回0
+     */
+    public double mean(int start, int end) {
+        int n = end - start;
+        if (n <= 0) {
+            return 0.0;
+        }
+        return (prefixSum[end] - prefixSum[start]) / n + shift;
+    }
+
+    /**
+     * 区间总体方差（除以n），空区间返回0
+     */
+    public double variance(int start, int end) {
+        int n = end - start;
+        if (n <= 0) {
+            return 0.0;
+        }
+        double s = prefixSum[end] - prefixSum[start];
+        double sq = prefixSq[end] - prefixSq[start];
+        double variance = (sq - s * s / n) / n;
+        return variance > 0 ? variance : 0.0;
+    }
+
+    /**
+     * 区间总体标准差
+     */
+    public double std(int start, int end) {
+        return Math.sqrt(variance(start, end));
+    }
+
+    /**
+     * 区间OLS斜率，自变量为区间内相对下标 0..n-1，与SimpleRegression结果一致；少于2个点返回0
+     */
+    public double slope(int start, int end) {
+        int n = end - start;
+        if (n < 2) {
+            return 0.0;
+        }
+        double sy = prefixSum[end] - prefixSum[start];
+        double sxy = (prefixIdx[end] - prefixIdx[start]) - start * sy;
+        double sx = n * (n - 1) / 2.0;
+        double sxx = (n - 1) * (double) n * (2.0 * n - 1) / 6.0;
+        return (n * sxy - sx * sy) / (n * sxx - sx * sx);
+    }
+
+    /**
+     * 区间最小值，空区间返回0
+     */
+    public double min(int start, int end) {
+        if (end <= start) {
+            return 0.0;
+        }
+        int k = log2[end - start];
+        return Math.min(minTable[k][start], minTable[k][end - (1 << k)]);
+    }
+
+    /**
+     * 区间最大值，空区间返回0
+     */
+    public double max(int start, int end) {
+        if (end <= start) {
+            return 0.0;
+        }
+        int k = log2[end - start];
+        return Math.max(maxTable[k][start], maxTable[k][end - (1 << k)]);
+    }
+
+    /**
+     * 区间最大回撤（相对峰值的比例，未乘100），与模型原有的逐点峰值算法一致
+     */
+    public double maxDrawdown(int start, int end) {
+        if (end <= start) {
+            return 0.0;
+        }
+        double peak = values[start];
+        double maxDrawdown = 0.0;
+        for (int i = start; i < end; i++) {
+            double value = values[i];
+            if (value > peak) {
+                peak = value;
+            } else {
+                double drawdown = (peak - value) / peak;
+                if (drawdown > maxDrawdown) {
+                    maxDrawdown = drawdown;
+                }
+            }
+        }
+        return maxDrawdown;
+    }
+}
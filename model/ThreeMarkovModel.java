@@ -11,6 +11,8 @@ import java.util.List;
 public class ThreeMarkovModel {
     private List<FinancialDataPoint> dataPoints;
     private List<Segment> segments;
+    private double[] values;
+    private RollingStats stats; // 区间统计内核，分段分析时复用
     private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
     private static final DateTimeFormatter OUTPUT_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
@@ -34,29 +36,25 @@ public class ThreeMarkovModel {
             LocalDateTime timestamp = LocalDateTime.parse(valueTime[i], INPUT_FORMATTER);
             dataPoints.add(new FinancialDataPoint(value, timestamp.format(ISO_FORMATTER),orderId));
         }
+        this.values = dataPoints.stream()
+                .mapToDouble(FinancialDataPoint::getValue)
+                .toArray();
+        this.stats = new RollingStats(this.values);
     }
 
-    // 安全的斜率计算
-    private double safeSlopeCalc(double[] values) {
-        if (values.length < 2) {
-            return 0.0;
-        }
-
-        SimpleRegression regression = new SimpleRegression();
-        for (int i = 0; i < values.length; i++) {
-            regression.addData(i, values[i]);
-        }
-        return regression.getSlope();
+    // 安全的斜率计算，区间为 [start, end)
+    private double safeSlopeCalc(int start, int end) {
+        return stats.slope(start, end);
     }
 
-    // 趋势类型判断
-    private TrendResult determineTrendType(double[] segmentValues) {
-        if (segmentValues.length < 3) {
+    // 趋势类型判断，区间为 [start, end)
+    private TrendResult determineTrendType(int start, int end) {
+        if (end - start < 3) {
             return new TrendResult("数据不足", 0.5);
         }
 
-        double slope = safeSlopeCalc(segmentValues);
-        double volatility = calculateVolatility(segmentValues);
+        double slope = safeSlopeCalc(start, end);
+        double volatility = calculateVolatility(start, end);
 
         if (Math.abs(slope) > 0.25) { // 调整斜率阈值，基于profit数据分析0.25
             return new TrendResult(slope > 0 ? "趋势上涨" : "趋势下跌", 0.65);
@@ -65,33 +63,31 @@ public class ThreeMarkovModel {
         }
     }
 
-    // 计算波动率
-    private double calculateVolatility(double[] values) {
-        double mean = Arrays.stream(values).average().orElse(0.0);
-        double variance = Arrays.stream(values)
-                .map(v -> Math.pow(v - mean, 2))
-                .average().orElse(0.0);
-        return Math.sqrt(variance);
+    // 计算波动率，区间为 [start, end)
+    private double calculateVolatility(int start, int end) {
+        return stats.std(start, end);
     }
 
-    // 计算Hurst指数
-    private double hurstExponent(double[] ts) {
-        if (ts.length < 5) {
+    // 计算Hurst指数，区间为 [start, end)
+    private double hurstExponent(int start, int end) {
+        int length = end - start;
+        if (length < 5) {
             return 0.5;
         }
 
         try {
-            int maxLag = Math.min(20, ts.length / 2);
+            int maxLag = Math.min(20, length / 2);
             List<Integer> lags = new ArrayList<>();
             List<Double> tau = new ArrayList<>();
 
             for (int lag = 2; lag < maxLag; lag++) {
                 lags.add(lag);
-                double[] diffs = new double[ts.length - lag];
-                for (int i = 0; i < ts.length - lag; i++) {
-                    diffs[i] = ts[i + lag] - ts[i];
+                double sumSq = 0.0;
+                for (int i = start; i < end - lag; i++) {
+                    double diff = values[i + lag] - values[i];
+                    sumSq += diff * diff;
                 }
-                tau.add(Math.sqrt(Arrays.stream(diffs).map(d -> d * d).average().orElse(0.0)));
+                tau.add(Math.sqrt(sumSq / (length - lag)));
             }
 
             if (lags.size() < 2) {
@@ -115,13 +111,9 @@ public class ThreeMarkovModel {
             return;
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
         // 识别峰值和谷值
-        List<Integer> peaks = findPeaks(values, PEAK_PROMINENCE);
-        List<Integer> valleys = findPeaks(invertArray(values), PEAK_PROMINENCE);
+        List<Integer> peaks = findPeaks(PEAK_PROMINENCE, false);
+        List<Integer> valleys = findPeaks(PEAK_PROMINENCE, true);
 
         // 合并并排序所有转折点
         Set<Integer> turningPoints = new TreeSet<>();
@@ -195,43 +187,34 @@ public class ThreeMarkovModel {
         }
     }
 
-    // 寻找峰值
-    private List<Integer> findPeaks(double[] values, double prominence) {
+    // 寻找峰值（valley为true时寻找谷值，等价于在反转序列上寻找峰值）
+    private List<Integer> findPeaks(double prominence, boolean valley) {
         List<Integer> peaks = new ArrayList<>();
-        for (int i = 1; i < values.length - 1; i++) {
-            if (values[i] > values[i - 1] && values[i] > values[i + 1]) {
-                // 计算突出度（简化实现）
-                double leftMin = Arrays.stream(Arrays.copyOfRange(values, 0, i)).min().orElse(0.0);
-                double rightMin = Arrays.stream(Arrays.copyOfRange(values, i + 1, values.length)).min().orElse(0.0);
-                double peakProminence = values[i] - Math.max(leftMin, rightMin);
-                if (peakProminence >= prominence) {
-                    peaks.add(i);
-                }
+        int n = values.length;
+        for (int i = 1; i < n - 1; i++) {
+            double peakProminence;
+            if (!valley && values[i] > values[i - 1] && values[i] > values[i + 1]) {
+                // 计算突出度（简化实现），两侧最小值由区间统计内核O(1)给出
+                peakProminence = values[i] - Math.max(stats.min(0, i), stats.min(i + 1, n));
+            } else if (valley && values[i] < values[i - 1] && values[i] < values[i + 1]) {
+                peakProminence = Math.min(stats.max(0, i), stats.max(i + 1, n)) - values[i];
+            } else {
+                continue;
+            }
+            if (peakProminence >= prominence) {
+                peaks.add(i);
             }
         }
         return peaks;
     }
 
-    // 反转数组（用于寻找谷值）
-    private double[] invertArray(double[] array) {
-        double[] result = new double[array.length];
-        for (int i = 0; i < array.length; i++) {
-            result[i] = -array[i];
-        }
-        return result;
-    }
-
     // 分析分段
     public List<SegmentReport> analyzeSegments() {
         List<SegmentReport> reports = new ArrayList<>();
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
 
         for (Segment segment : segments) {
             int start = segment.getStart();
             int end = segment.getEnd();
-            double[] segmentValues = Arrays.copyOfRange(values, start, end + 1);
 
             // 修改后
             LocalDateTime startTimestamp = LocalDateTime.parse(
@@ -241,11 +224,11 @@ public class ThreeMarkovModel {
             long duration = java.time.Duration.between(startTimestamp, endTimestamp).toMinutes();
 
 
-            double meanReturn = Arrays.stream(segmentValues).average().orElse(0.0);
-            double maxDrawdown = Arrays.stream(segmentValues).min().orElse(0.0);
-            double volatility = calculateVolatility(segmentValues);
-            TrendResult trendResult = determineTrendType(segmentValues);
-            double hurst = hurstExponent(segmentValues);
+            double meanReturn = stats.mean(start, end + 1);
+            double maxDrawdown = stats.min(start, end + 1);
+            double volatility = calculateVolatility(start, end + 1);
+            TrendResult trendResult = determineTrendType(start, end + 1);
+            double hurst = hurstExponent(start, end + 1);
 
             String trendStrength = Math.abs(meanReturn) > 30 ? "强" : (Math.abs(meanReturn) > 15 ? "中" : "弱"); // 调整趋势强度判断阈值，基于profit数据分析
 
@@ -270,14 +253,11 @@ public class ThreeMarkovModel {
             return new OverallEvaluation("数据不足", 0.0, 0.5, "未知");
         }
 
-        double[] values = dataPoints.stream()
-                .mapToDouble(FinancialDataPoint::getValue)
-                .toArray();
-
-        double slope = safeSlopeCalc(values);
-        double hurst = hurstExponent(values);
+        int n = values.length;
+        double slope = safeSlopeCalc(0, n);
+        double hurst = hurstExponent(0, n);
 
-        double cumulativeReturn = Arrays.stream(values).sum() / values.length; // 改为计算平均收益，与Python保持一致
+        double cumulativeReturn = stats.mean(0, n); // 改为计算平均收益，与Python保持一致
 
         String overallTrend = slope > 0.15 ? "趋势上涨" : (slope < -0.15 ? "趋势下跌" : "震荡行情"); // 调整整体趋势判断阈值，基于profit数据分析
 
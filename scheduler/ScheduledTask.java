@@ -3,7 +3,11 @@ package com.demo.extract.scheduler;
 import com.demo.extract.DTO.OrderTimeSeries;
 import com.demo.extract.model.DecisionResult;
 import com.demo.extract.services.DataLoaderNew;
+import com.demo.extract.services.DecisionEngine;
+import com.demo.extract.services.DistanceCache;
+import com.demo.extract.services.OrderHistory;
 import com.demo.extract.services.SimilarityService;
+import com.demo.extract.services.TailingDataLoader;
 import com.demo.extract.util.CsvWriter;
 
 import java.io.File;
@@ -17,24 +21,42 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class ScheduledTask {
-    // 存储增强数据的字典
-    private static Map<String, OrderTimeSeries> enhancedDict = new HashMap<>();
-    // 存储增强数据长度的字典
-    private static Map<String, OrderTimeSeries> enhancedDictLength = new HashMap<>();
+    // 历史订单（完整数据enhancedDict与截取90%后的enhancedDictLength），只追加，写时复制发布快照
+    private static final OrderHistory history = new OrderHistory(0.9);
     // 存储决策结果的字典
     private static List<DecisionResult> results = new ArrayList<>();
 
     private static Set<String> targetIdsSet = new HashSet<>();
 
+    // 常驻决策引擎：历史订单、特征与线程池保持预热，每次只评估新到达的目标
+    private static DecisionEngine engine;
+
     private static final String tar = "9999";
 
+    // 持续追加的历史订单文件，增量读取新增行
+    private static final TailingDataLoader historyLoader = new TailingDataLoader("D:/data/测试777.csv");
+
+    // MT4写入的目标订单文件
+    private static final String csvFilePath = "D:/MT4Default/MQL4/Files/data.csv"; // 请替换为实际的CSV文件路径
+    // 文件写入后的去抖时间（毫秒）
+    private static final long DEBOUNCE_MILLIS = 50;
+
     public static void main(String[] args) throws IOException {
         //初始化数据
         initMaps();
+
+        // 文件监听：MT4写入完成后立即处理
+        SignalFileWatcher watcher = new SignalFileWatcher(Paths.get(csvFilePath), DEBOUNCE_MILLIS, ScheduledTask::executeTask);
+        try {
+            watcher.start();
+        } catch (IOException e) {
+            System.err.println("文件监听启动失败，仅使用定时轮询: " + e.getMessage());
+        }
+
         // 创建定时任务调度器
         ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
-        // 每5分钟执行一次任务
+        // 每5分钟执行一次任务（兜底：监听事件丢失时仍能处理）
         scheduler.scheduleAtFixedRate(
                 ScheduledTask::executeTask,
                 0,  // 初始延迟0秒
@@ -44,14 +66,16 @@ public class ScheduledTask {
     }
 
     /**
-     * 执行定时任务
+     * 执行定时任务（文件监听与定时轮询共用，串行执行）
      */
-    private static void executeTask() {
+    private static synchronized void executeTask() {
         try {
             System.out.println("执行定时任务: " + new Date());
 
+            // 0. 历史文件只解析新追加的数据
+            refreshHistory();
+
             // 1. 读取CSV文件
-            String csvFilePath = "D:/MT4Default/MQL4/Files/data.csv"; // 请替换为实际的CSV文件路径
 
             DataLoaderNew loaderNew = new DataLoaderNew();
             List<OrderTimeSeries> newOrders = loaderNew.loadFromCsv(csvFilePath);
@@ -72,11 +96,11 @@ public class ScheduledTask {
                 targetIdsSet.add(orderTimeSeries.getOrderId()+tar);
             }
 
-            // 2. 更新增强字典
-            updateEnhancedDicts(newOrders);
+            // 2. 标记目标订单
+            markTargetOrders(newOrders);
 
-            // 3. 运行批量测试
-            runBatchTest();
+            // 3. 目标入库并评估
+            runBatchTest(newOrders);
 
             // 4. 输出结果到CSV
             outputResultsToCsv();
@@ -118,30 +142,24 @@ public class ScheduledTask {
     }
 
     /**
-     * 更新增强字典
+     * 标记目标订单（订单号加后缀），入库由决策引擎完成
      */
-    private static void updateEnhancedDicts(List<OrderTimeSeries> orders) {
+    private static void markTargetOrders(List<OrderTimeSeries> orders) {
         for (OrderTimeSeries order : orders) {
             String orderId = order.getOrderId()+tar;
 
             order.setTargetOrder(true);
             order.setOrderId(orderId);
-
-            enhancedDict.put(orderId, order);
-            enhancedDictLength.put(orderId, order);
             System.out.println("更新订单数据: " + orderId + ", 数据长度: " + order.getValues().length);
         }
     }
 
     /**
-     * 运行批量测试
+     * 评估新目标：目标追加到历史并加入常驻引擎的分组，只对新目标做一次查询（曼哈顿距离，与batchTestAllOrdersMHT一致）
      */
-    private static void runBatchTest() {
-        // 假设BatchTester有一个batchTestAllOrders方法
-        // 并假设该方法会将结果存入results字典
-        SimilarityService service = new SimilarityService(4);
-        results = service.batchTestAllOrdersMHT(enhancedDict, enhancedDictLength,0.9,3000);
-        System.out.println("批量测试完成，共处理 " + results.size() + " 个订单");
+    private static void runBatchTest(List<OrderTimeSeries> targets) {
+        results = engine.addAndEvaluate(targets);
+        System.out.println("评估完成，共处理 " + results.size() + " 个订单");
     }
 
     /**
@@ -182,37 +200,28 @@ public class ScheduledTask {
     }
 
     public static void initMaps() throws IOException {
-        DataLoaderNew loaderNew = new DataLoaderNew();
-        List<OrderTimeSeries> allSeries = loaderNew.loadFromCsv("D:/data/测试777.csv");
+        history.append(validSeries(historyLoader.refresh()));
+        engine = new DecisionEngine(new SimilarityService(4), history, 0.9, DistanceCache.Metric.MANHATTAN);
+    }
+
+    /**
+     * 读取历史文件新追加的数据，新出现或延长后的订单加入历史并增量索引
+     */
+    private static void refreshHistory() throws IOException {
+        List<String> changedIds = history.append(validSeries(historyLoader.refresh()));
+        if (!changedIds.isEmpty()) {
+            engine.addOrders(changedIds);
+            System.out.println("历史订单更新: " + changedIds.size() + "个");
+        }
+    }
+
+    private static List<OrderTimeSeries> validSeries(List<OrderTimeSeries> allSeries) {
+        List<OrderTimeSeries> validSeries = new ArrayList<>();
         for(OrderTimeSeries orderTimeSeries:allSeries){
             if(orderTimeSeries.getValues().length>=70){
-                enhancedDict.put(orderTimeSeries.getOrderId(),orderTimeSeries);
-
-                OrderTimeSeries lengthOrder = new OrderTimeSeries();
-                double[] values = orderTimeSeries.getValues();
-                double[] timestamps = orderTimeSeries.getTimestamps();
-
-                double[] close = orderTimeSeries.getClose();//2.添加因子步骤  new 属性
-                double[] open = orderTimeSeries.getOpen();
-                double[] atr = orderTimeSeries.getAtr();
-                double[] th = orderTimeSeries.getTH();
-                double[] tl = orderTimeSeries.getTL();
-                String[] valueTime = orderTimeSeries.getValueTime();
-
-                int endIndex = (int)(values.length * 0.9);     // 计算80%位置
-                lengthOrder.setValues( Arrays.copyOfRange(values, 0, endIndex));
-                lengthOrder.setTimestamps(Arrays.copyOfRange(timestamps, 0, endIndex));
-                lengthOrder.setOrderId(orderTimeSeries.getOrderId());
-
-                lengthOrder.setClose(Arrays.copyOfRange(close, 0, endIndex));//3.添加因子步骤 属性注入
-                lengthOrder.setOpen(Arrays.copyOfRange(open, 0, endIndex));
-                lengthOrder.setAtr(Arrays.copyOfRange(atr, 0, endIndex));
-                lengthOrder.setTH(Arrays.copyOfRange(th, 0, endIndex));
-                lengthOrder.setTL(Arrays.copyOfRange(tl, 0, endIndex));
-                lengthOrder.setValueTime(Arrays.copyOfRange(valueTime, 0, endIndex));
-                enhancedDictLength.put(orderTimeSeries.getOrderId(),lengthOrder);
+                validSeries.add(orderTimeSeries);
             }
-
         }
+        return validSeries;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,169 @@
+package com.demo.extract.scheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 信号文件监听
+ * 基于WatchService监听文件所在目录，目标文件创建或修改后触发回调：
+ * 最后一次事件后静默debounceMillis再检查文件，且连续两次检查的大小与修改时间一致（写入已完成）才触发；
+ * 大小与修改时间和上一次触发时相同则不重复触发。回调在监听线程上串行执行。
+ */
+public class SignalFileWatcher implements Closeable {
+
+    private final Path file;
+    private final long debounceMillis;
+    private final Runnable onChange;
+
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * 构造函数
+     * @param file 监听的文件
+     * @param debounceMillis 去抖时间（毫秒）
+     * @param onChange 文件写入完成后的回调
+     */
+    public SignalFileWatcher(Path file, long debounceMillis, Runnable onChange) {
+        this.file = file.toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+    }
+
+    /**
+     * 开始监听（后台守护线程）
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        Path dir = file.getParent();
+        watchService = FileSystems.getDefault().newWatchService();
+        dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        running = true;
+        thread = new Thread(this::watchLoop, "signal-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("开始监听文件: " + file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        running = false;
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void watchLoop() {
+        boolean pending = false;
+        FileState lastChecked = null;
+        FileState lastFired = null;
+        try {
+            while (running) {
+                WatchKey key = pending
+                        ? watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)
+                        : watchService.take();
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || file.getFileName().equals(event.context())) {
+                            pending = true;
+                            lastChecked = null;
+                        }
+                    }
+                    key.reset();
+                    continue;
+                }
+
+                // 已静默debounceMillis：两次检查一致视为写入完成
+                FileState state;
+                try {
+                    state = FileState.of(file);
+                } catch (IOException e) {
+                    continue; // 写入方独占文件时可能读取失败，稍后再检查
+                }
+                if (state == null) {
+                    pending = false; // 文件不存在或为空，等待下一次写入事件
+                    continue;
+                }
+                if (!state.equals(lastChecked)) {
+                    lastChecked = state;
+                    continue;
+                }
+                pending = false;
+                if (state.equals(lastFired)) {
+                    continue;
+                }
+                lastFired = state;
+                fire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // close() 后正常退出
+        }
+    }
+
+    private void fire() {
+        try {
+            onChange.run();
+        } catch (Exception e) {
+            System.err.println("文件变化处理失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 文件大小与修改时间
+     */
+    private static class FileState {
+        final long size;
+        final long modified;
+
+        FileState(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * 文件不存在或为空时返回null
+         */
+        static FileState of(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            long size = Files.size(file);
+            return size == 0 ? null : new FileState(size, Files.getLastModifiedTime(file).toMillis());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) o;
+            return size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(modified);
+        }
+    }
+}
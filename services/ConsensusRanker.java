@@ -0,0 +1,170 @@
+package com.demo.extract.services;
+
+import java.util.Arrays;
+
+/**
+ * 多因子共识排序器
+ * 各因子的TopK排名以候选下标（int）给出，在按K·F分配的开放寻址表上累计出现次数与融合得分（Borda或倒数排名融合RRF），
+ * 复杂度O(K·F)，与候选总数无关；出现次数达到法定数（quorum）的候选按 出现次数降序 → 融合得分降序 → 下标升序 排序，结果确定
+ */
+public class ConsensusRanker {
+
+    public enum Method {
+        /** Borda计数：第r名（从0开始）得 K - r 分 */
+        BORDA,
+        /** 倒数排名融合：第r名得 1 / (rrfK + r + 1) 分 */
+        RRF
+    }
+
+    private static final int DEFAULT_RRF_K = 60;
+
+    private final Method method;
+    private final int quorum;
+    private final int rrfK;
+
+    /**
+     * 构造函数
+     * @param method 融合方式
+     * @param quorum 最少出现的因子数
+     */
+    public ConsensusRanker(Method method, int quorum) {
+        this(method, quorum, DEFAULT_RRF_K);
+    }
+
+    public ConsensusRanker(Method method, int quorum, int rrfK) {
+        this.method = method;
+        this.quorum = Math.max(1, quorum);
+        this.rrfK = rrfK;
+    }
+
+    /**
+     * 计算共识排名
+     * 出现过的候选记在按K·F分配的开放寻址表中，与候选总数无关
+     * @param rankings 每个因子的排名（候选下标，按名次排列）
+     * @param universe 候选下标上界（不含）
+     * @return 达到法定数的候选，已排序
+     */
+    public Result rank(int[][] rankings, int universe) {
+        int total = 0;
+        for (int[] ranking : rankings) {
+            total += ranking.length;
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, total) * 2 - 1) << 1; // 负载因子不超过0.5
+        int mask = capacity - 1;
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, -1);
+        int[] counts = new int[capacity];
+        double[] scores = new double[capacity];
+        int[] firstFactor = new int[capacity];
+        int[] firstRank = new int[capacity];
+        int[] touched = new int[total];
+        int touchedCount = 0;
+
+        for (int f = 0; f < rankings.length; f++) {
+            int[] ranking = rankings[f];
+            int k = ranking.length;
+            for (int r = 0; r < k; r++) {
+                int id = ranking[r];
+                if (id < 0 || id >= universe) {
+                    throw new IllegalArgumentException("候选下标越界: " + id + "，上界 " + universe);
+                }
+                int hash = id * 0x9E3779B9;
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (keys[slot] != id && keys[slot] != -1) {
+                    slot = (slot + 1) & mask;
+                }
+                if (keys[slot] == -1) {
+                    keys[slot] = id;
+                    touched[touchedCount++] = slot;
+                    firstFactor[slot] = f;
+                    firstRank[slot] = r;
+                }
+                counts[slot]++;
+                scores[slot] += method == Method.BORDA ? (k - r) : 1.0 / (rrfK + r + 1);
+            }
+        }
+
+        int size = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            if (counts[touched[i]] >= quorum) {
+                touched[size++] = touched[i];
+            }
+        }
+        int[] slots = Arrays.copyOf(touched, size);
+        sort(slots, keys, counts, scores);
+
+        int[] ids = new int[size];
+        int[] resultCounts = new int[size];
+        double[] resultScores = new double[size];
+        int[] resultFactors = new int[size];
+        int[] resultRanks = new int[size];
+        for (int i = 0; i < size; i++) {
+            int slot = slots[i];
+            ids[i] = keys[slot];
+            resultCounts[i] = counts[slot];
+            resultScores[i] = scores[slot];
+            resultFactors[i] = firstFactor[slot];
+            resultRanks[i] = firstRank[slot];
+        }
+        return new Result(ids, resultCounts, resultScores, resultFactors, resultRanks);
+    }
+
+    /**
+     * 插入排序（候选数不超过K·F，规模很小）
+     */
+    private static void sort(int[] slots, int[] keys, int[] counts, double[] scores) {
+        for (int i = 1; i < slots.length; i++) {
+            int slot = slots[i];
+            int j = i - 1;
+            while (j >= 0 && before(slot, slots[j], keys, counts, scores)) {
+                slots[j + 1] = slots[j];
+                j--;
+            }
+            slots[j + 1] = slot;
+        }
+    }
+
+    private static boolean before(int a, int b, int[] keys, int[] counts, double[] scores) {
+        if (counts[a] != counts[b]) {
+            return counts[a] > counts[b];
+        }
+        int c = Double.compare(scores[b], scores[a]);
+        return c != 0 ? c < 0 : keys[a] < keys[b];
+    }
+
+    /**
+     * 共识排名结果
+     */
+    public static class Result {
+        private final int[] ids;
+        private final int[] counts;
+        private final double[] scores;
+        private final int[] firstFactor;
+        private final int[] firstRank;
+
+        Result(int[] ids, int[] counts, double[] scores, int[] firstFactor, int[] firstRank) {
+            this.ids = ids;
+            this.counts = counts;
+            this.scores = scores;
+            this.firstFactor = firstFactor;
+            this.firstRank = firstRank;
+        }
+
+        public int size() { return ids.length; }
+
+        /** 第i名的候选下标 */
+        public int getId(int i) { return ids[i]; }
+
+        /** 第i名出现的因子数 */
+        public int getCount(int i) { return counts[i]; }
+
+        /** 第i名的融合得分 */
+        public double getScore(int i) { return scores[i]; }
+
+        /** 第i名首次出现的因子序号 */
+        public int getFirstFactor(int i) { return firstFactor[i]; }
+
+        /** 第i名在首次出现的因子中的名次 */
+        public int getFirstRank(int i) { return firstRank[i]; }
+    }
+}
@@ -31,7 +31,7 @@ public class CosineSimilarity {
     /**
      * 计算两个向量的余弦相似度
      */
-    private double computePairwise(double[] v1, double[] v2) {
+    double computePairwise(double[] v1, double[] v2) {
         double dotProduct = 0.0;
         double norm1 = 0.0;
         double norm2 = 0.0;
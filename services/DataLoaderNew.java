@@ -18,7 +18,7 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 public class DataLoaderNew {
-    private static final String[] EXPECTED_HEADERS = {
+    static final String[] EXPECTED_HEADERS = {
             "profit", "订单号", "holdtime", "日期",
             "close","进场价格", "atr", "open", "DonchianHigh", "DonchianLow"
     };
@@ -0,0 +1,296 @@
+package com.demo.extract.services;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.model.DecisionResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 常驻决策引擎
+ * 长期持有一个SimilarityService（线程池、距离缓存、近邻索引保持预热）以及按多/空分组的历史订单与各因子特征，
+ * 实盘新目标（addAndEvaluate）只增量加入其所在分组并对其单独评估，而不是每次对全部订单重新批量回测；
+ * 只读查询（evaluate）按已发布分组的标准化参数转换目标行后评估，不改变历史、分组与近邻索引。
+ * 分组以写时复制的方式发布：索引新订单时只提取其特征并复制行引用，查询读取已发布的分组，不等待索引。
+ * 开启近邻预筛时，各分组的近邻索引在发布新分组前增量更新（新订单插入，延长后的订单替换）。
+ */
+public class DecisionEngine {
+    private static final int FACTOR_TYPES = 6;
+
+    private final SimilarityService service;
+    private final OrderHistory history;
+    private final double testRatio;
+    private final DistanceCache.Metric metric;
+
+    // 当前已发布的分组（写时复制，查询不加锁）
+    private volatile Groups groups;
+
+    // 最近查询耗时（纳秒）环形缓冲，用于统计分位数
+    private final long[] recentLatencies = new long[1024];
+    private int latencyCount;
+
+    /**
+     * 构造函数，并索引历史中已有的全部订单
+     * @param service 相似度服务（由引擎负责关闭）
+     * @param history 历史订单（完整数据与截取后参与相似度计算的数据）
+     * @param testRatio 测试数据比例
+     * @param metric 距离度量，与对应的batchTestAllOrders*一致
+     */
+    public DecisionEngine(SimilarityService service, OrderHistory history,
+                          double testRatio, DistanceCache.Metric metric) {
+        this.service = service;
+        this.history = history;
+        this.testRatio = testRatio;
+        this.metric = metric;
+        this.groups = new Groups(Group.EMPTY, Group.EMPTY, history.snapshot());
+        long start = System.currentTimeMillis();
+        addOrders(new ArrayList<>(history.snapshot().truncated().keySet()));
+        System.out.println("决策引擎初始化完成: 多单" + groups.up.ids.size() + "个, 空单" + groups.down.ids.size()
+                + "个, 耗时" + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * 增量索引新订单或延长后的订单（须已追加到历史）：只为这些订单提取特征，再发布新的分组
+     * 已索引且数据未变的订单忽略。写入方之间串行，查询继续使用旧分组，不被阻塞。
+     */
+    public synchronized void addOrders(Collection<String> orderIds) {
+        Groups current = groups;
+        OrderHistory.Snapshot snapshot = history.snapshot();
+        Map<String, OrderTimeSeries> series = snapshot.truncated();
+        List<String> upIds = new ArrayList<>();
+        List<String> downIds = new ArrayList<>();
+        Set<String> replaced = new HashSet<>();
+        for (String orderId : new LinkedHashSet<>(orderIds)) {
+            OrderTimeSeries order = series.get(orderId);
+            if (order == null) {
+                continue;
+            }
+            OrderTimeSeries indexed = current.up.members.containsKey(orderId)
+                    ? current.up.members.get(orderId) : current.down.members.get(orderId);
+            if (indexed == order) {
+                continue;
+            }
+            if (indexed != null) {
+                replaced.add(orderId); // 延长后的订单：移除旧行，按新数据重新加入（方向可能改变）
+            }
+            int direction = SimilarityService.directionOf(order);
+            if (direction > 0) {
+                upIds.add(orderId);
+            } else if (direction < 0) {
+                downIds.add(orderId);
+            }
+        }
+        if (upIds.isEmpty() && downIds.isEmpty() && replaced.isEmpty()) {
+            return;
+        }
+        Group up = current.up.with(replaced, upIds, extractFeatures(upIds, series), series);
+        Group down = current.down.with(replaced, downIds, extractFeatures(downIds, series), series);
+        // 近邻索引与分组同步更新：延长后的订单删除旧向量并按新数据重新插入（方向改变时移到另一分组的索引）
+        service.updateFeatureIndex(1, up.ids, replaced, upIds, up.members);
+        service.updateFeatureIndex(-1, down.ids, replaced, downIds, down.members);
+        groups = new Groups(up, down, snapshot);
+    }
+
+    private double[][][] extractFeatures(List<String> orderIds, Map<String, OrderTimeSeries> series) {
+        return orderIds.isEmpty() ? null : service.extractFactorFeatures(orderIds, series);
+    }
+
+    /**
+     * 新目标入库并评估（ScheduledTask的实盘路径）：目标永久追加到历史（不截取，已存在同ID订单时替换），
+     * 增量加入其分组，再逐个在分组内评估；之后的查询会把它们作为候选相似订单。
+     * 只读的试算请使用evaluate(OrderTimeSeries)。
+     * @return 各目标的决策结果（无法评估的目标不返回）
+     */
+    public List<DecisionResult> addAndEvaluate(Collection<OrderTimeSeries> targets) {
+        long start = System.nanoTime();
+        List<String> targetIds = history.appendTargets(targets);
+        addOrders(targetIds);
+        long indexNanos = System.nanoTime() - start;
+
+        List<DecisionResult> results = new ArrayList<>();
+        for (String targetId : targetIds) {
+            StageTimings timings = new StageTimings();
+            timings.record(StageTimings.Stage.FEATURES, indexNanos / targetIds.size());
+            DecisionResult result = evaluateIndexed(targetId, timings);
+            if (result != null) {
+                result.printDetailedReport();
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 只读查询：在已发布的分组内评估目标并打印分阶段耗时，目标不加入历史、分组与近邻索引，
+     * 不影响之后的查询；标准化沿用分组已拟合的参数，只转换目标行
+     * @param target 目标订单（同时作为完整数据与参与相似度计算的数据）
+     * @return 决策结果，方向无法判断或数据不足时返回null
+     */
+    public DecisionResult evaluate(OrderTimeSeries target) {
+        StageTimings timings = new StageTimings();
+        DecisionResult result = evaluate(target, timings);
+        System.out.println("目标订单" + target.getOrderId() + "分阶段耗时: " + timings);
+        return result;
+    }
+
+    /**
+     * 只读查询（见evaluate(OrderTimeSeries)），分阶段耗时写入timings
+     */
+    public DecisionResult evaluate(OrderTimeSeries target, StageTimings timings) {
+        Groups current = groups;
+        int direction = SimilarityService.directionOf(target);
+        Group group = direction > 0 ? current.up : direction < 0 ? current.down : null;
+        if (group == null) {
+            System.err.println("目标订单" + target.getOrderId() + "数据不足，无法评估");
+            return null;
+        }
+        DecisionResult result = null;
+        try {
+            result = service.evaluateTarget(target, current.source.full(), group.members,
+                    group.ids, group.scaling, testRatio, metric, timings);
+        } catch (IOException e) {
+            System.err.println("目标订单" + target.getOrderId() + "评估失败: " + e.getMessage());
+        }
+        recordLatency(timings.getTotalNanos());
+        return result;
+    }
+
+    /**
+     * 最近若干次查询耗时的分位数（毫秒），如percentile=0.99为p99
+     */
+    public synchronized double latencyPercentileMillis(double percentile) {
+        int count = Math.min(latencyCount, recentLatencies.length);
+        if (count == 0) {
+            return 0.0;
+        }
+        long[] sorted = Arrays.copyOf(recentLatencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))] / 1e6;
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        recentLatencies[latencyCount++ % recentLatencies.length] = nanos;
+    }
+
+    /**
+     * 在已发布的分组内评估目标（不加锁）
+     */
+    private DecisionResult evaluateIndexed(String targetId, StageTimings timings) {
+        Groups current = groups;
+        Group group = current.up.members.containsKey(targetId) ? current.up
+                : current.down.members.containsKey(targetId) ? current.down : null;
+        if (group == null) {
+            System.err.println("目标订单" + targetId + "数据不足，无法评估");
+            return null;
+        }
+        DecisionResult result = null;
+        try {
+            result = service.evaluateInGroup(targetId, current.source.full(), group.members,
+                    group.ids, group.scaling, testRatio, metric, timings);
+        } catch (IOException e) {
+            System.err.println("目标订单" + targetId + "评估失败: " + e.getMessage());
+        }
+        recordLatency(timings.getTotalNanos());
+        return result;
+    }
+
+    public void shutdown() {
+        service.shutdown();
+    }
+
+    /**
+     * 多/空两个分组及其所基于的历史快照
+     */
+    private static class Groups {
+        final Group up;
+        final Group down;
+        final OrderHistory.Snapshot source;
+
+        Groups(Group up, Group down, OrderHistory.Snapshot source) {
+            this.up = up;
+            this.down = down;
+            this.source = source;
+        }
+    }
+
+    /**
+     * 一个方向分组（不可变）：订单、行顺序与各因子的标准化（标准化前的行与按列均值/标准差）
+     * 标准化参数在发布分组时按全部行重新拟合，查询时只需转换目标行。
+     */
+    private static class Group {
+        static final Group EMPTY = new Group(Collections.emptyMap(), Collections.emptyList(),
+                FactorScaling.fitAll(new double[FACTOR_TYPES][0][]));
+
+        final Map<String, OrderTimeSeries> members;
+        final List<String> ids;
+        final FactorScaling[] scaling; // 与ids行顺序一致，下标0~5对应因子类型1~6
+
+        Group(Map<String, OrderTimeSeries> members, List<String> ids, FactorScaling[] scaling) {
+            this.members = members;
+            this.ids = ids;
+            this.scaling = scaling;
+        }
+
+        /**
+         * 复制出新分组：去掉removed中的订单，再追加newIds（newFeatures只含新订单的特征，其余行复用），并重新拟合标准化参数
+         */
+        Group with(Set<String> removed, List<String> newIds, double[][][] newFeatures,
+                   Map<String, OrderTimeSeries> series) {
+            boolean removes = false;
+            for (String orderId : removed) {
+                if (members.containsKey(orderId)) {
+                    removes = true;
+                    break;
+                }
+            }
+            if (!removes && newIds.isEmpty()) {
+                return this;
+            }
+
+            List<Integer> keptRows = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                if (!removed.contains(ids.get(i))) {
+                    keptRows.add(i);
+                }
+            }
+
+            int size = keptRows.size() + newIds.size();
+            Map<String, OrderTimeSeries> nextMembers = new HashMap<>(size * 2);
+            List<String> nextIds = new ArrayList<>(size);
+            double[][][] nextRows = new double[FACTOR_TYPES][size][];
+            for (int row = 0; row < keptRows.size(); row++) {
+                int old = keptRows.get(row);
+                String orderId = ids.get(old);
+                nextMembers.put(orderId, members.get(orderId));
+                nextIds.add(orderId);
+                for (int t = 0; t < FACTOR_TYPES; t++) {
+                    nextRows[t][row] = scaling[t].row(old);
+                }
+            }
+            for (int i = 0; i < newIds.size(); i++) {
+                String orderId = newIds.get(i);
+                int row = keptRows.size() + i;
+                nextMembers.put(orderId, series.get(orderId));
+                nextIds.add(orderId);
+                for (int t = 0; t < FACTOR_TYPES; t++) {
+                    nextRows[t][row] = FactorScaling.baseRow(t + 1, newFeatures[t][i]);
+                }
+            }
+            FactorScaling[] nextScaling = new FactorScaling[FACTOR_TYPES];
+            for (int t = 0; t < FACTOR_TYPES; t++) {
+                nextScaling[t] = FactorScaling.fit(nextRows[t]);
+            }
+            return new Group(Collections.unmodifiableMap(nextMembers), Collections.unmodifiableList(nextIds), nextScaling);
+        }
+    }
+}
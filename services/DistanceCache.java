@@ -0,0 +1,288 @@
+package com.demo.extract.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 持久化的两两距离缓存
+ * 以（目标序列内容哈希, 候选序列内容哈希, 度量, 因子, 截取比例, 窗口）为键，保存在内存映射文件中的开放寻址哈希表里；
+ * 多次批量回测或调参时只需计算内容或参数发生变化的订单对。
+ * 文件布局：32字节文件头（魔数、版本、状态、槽位数、条目数）+ 每槽32字节（三段键 + 距离值）。
+ * 打开时状态置为"使用中"，flush/close后置为"已关闭"；条目数在打开时按槽位重新统计，不依赖文件头，
+ * 槽位先写值再写目标哈希（非0即占用），异常退出时最多丢失正在写入的一条。
+ */
+public class DistanceCache implements Closeable {
+
+    public enum Metric {
+        DTW, MANHATTAN, PEARSON, CONSTRAINED_DTW
+    }
+
+    private static final long MAGIC = 0x4449535443414348L; // "DISTCACH"
+    private static final int VERSION = 2;
+    private static final int STATE_OPEN = 1;    // 使用中（未正常关闭）
+    private static final int STATE_CLOSED = 2;  // 已刷盘
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 32;
+    private static final long INITIAL_CAPACITY = 1 << 16;
+    private static final long MAX_CAPACITY = 1 << 25;      // 单个映射不超过1GB
+    private static final double MAX_LOAD = 0.7;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long capacity;
+    private long count;
+    private boolean markedClosed; // 文件头状态为已关闭，下一次写入前需重新标记为使用中
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private DistanceCache(FileChannel channel) throws IOException {
+        this.channel = channel;
+        if (channel.size() >= HEADER_SIZE) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong(0) == MAGIC && header.getInt(8) == VERSION) {
+                long storedCapacity = header.getLong(16);
+                int state = header.getInt(12);
+                boolean validCapacity = storedCapacity >= INITIAL_CAPACITY && storedCapacity <= MAX_CAPACITY
+                        && Long.bitCount(storedCapacity) == 1;
+                if ((state == STATE_OPEN || state == STATE_CLOSED) && validCapacity
+                        && channel.size() >= HEADER_SIZE + storedCapacity * SLOT_SIZE) {
+                    capacity = storedCapacity;
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * SLOT_SIZE);
+                    count = countOccupied();
+                    if (state == STATE_OPEN) {
+                        System.err.println("距离缓存上次未正常关闭，已重新统计条目数: " + count);
+                    }
+                    markOpen();
+                    return;
+                }
+            }
+            System.err.println("距离缓存文件格式不符，将重新创建");
+        }
+        capacity = INITIAL_CAPACITY;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * SLOT_SIZE);
+        clearSlots();
+        markOpen();
+    }
+
+    /**
+     * 打开（不存在则创建）缓存文件
+     */
+    public static DistanceCache open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new DistanceCache(channel);
+    }
+
+    /**
+     * 序列内容哈希（64位），内容不变则哈希不变
+     */
+    public static long contentHash(double[] values) {
+        long h = 0x9E3779B97F4A7C15L ^ values.length;
+        for (double value : values) {
+            h = mix(h ^ Double.doubleToLongBits(value));
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * 查找缓存，未命中时计算并写入
+     * @param targetHash 目标序列内容哈希（见contentHash，0与1视为同一值）
+     */
+    public double computeIfAbsent(long targetHash, long candidateHash, Metric metric, int type,
+                                  double ratio, int window, DoubleSupplier compute) {
+        if (targetHash == 0) {
+            targetHash = 1; // 0保留为空槽位标记，与contentHash的取值约定一致
+        }
+        long params = paramsHash(metric, type, ratio, window);
+        double cached = get(targetHash, candidateHash, params);
+        if (!Double.isNaN(cached)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        double value = compute.getAsDouble();
+        if (!Double.isNaN(value)) {
+            put(targetHash, candidateHash, params, value);
+        }
+        return value;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * 将映射内容刷到磁盘
+     */
+    public synchronized void flush() {
+        buffer.force();
+        writeHeader(STATE_CLOSED);
+        buffer.force();
+        markedClosed = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private synchronized double get(long targetHash, long candidateHash, long params) {
+        long slot = findSlot(targetHash, candidateHash, params);
+        long offset = slotOffset(slot);
+        if (buffer.getLong((int) offset) == 0) {
+            return Double.NaN;
+        }
+        return buffer.getDouble((int) offset + 24);
+    }
+
+    private synchronized void put(long targetHash, long candidateHash, long params, double value) {
+        if (count + 1 > capacity * MAX_LOAD) {
+            if (capacity >= MAX_CAPACITY) {
+                return; // 达到上限后不再写入，仅作只读缓存
+            }
+            grow();
+        }
+        if (markedClosed) {
+            markOpen();
+        }
+        long slot = findSlot(targetHash, candidateHash, params);
+        int offset = (int) slotOffset(slot);
+        if (buffer.getLong(offset) == 0) {
+            count++;
+        }
+        writeSlot(offset, targetHash, candidateHash, params, value);
+    }
+
+    /**
+     * 线性探测，返回键所在槽位或第一个空槽位
+     */
+    private long findSlot(long targetHash, long candidateHash, long params) {
+        long mask = capacity - 1;
+        long slot = mix(targetHash * 31 + candidateHash * 17 + params) & mask;
+        while (true) {
+            int offset = (int) slotOffset(slot);
+            long key = buffer.getLong(offset);
+            if (key == 0 || (key == targetHash
+                    && buffer.getLong(offset + 8) == candidateHash
+                    && buffer.getLong(offset + 16) == params)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 扩容：条目读入堆内，重新映射为两倍大小后重新插入（数组大小按实际占用的槽位计算）
+     */
+    private void grow() {
+        int occupied = (int) countOccupied();
+        long[] keys = new long[occupied * 3];
+        double[] values = new double[occupied];
+        int n = 0;
+        for (long slot = 0; slot < capacity; slot++) {
+            int offset = (int) slotOffset(slot);
+            long key = buffer.getLong(offset);
+            if (key != 0) {
+                keys[n * 3] = key;
+                keys[n * 3 + 1] = buffer.getLong(offset + 8);
+                keys[n * 3 + 2] = buffer.getLong(offset + 16);
+                values[n] = buffer.getDouble(offset + 24);
+                n++;
+            }
+        }
+        capacity *= 2;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * SLOT_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException("距离缓存扩容失败", e);
+        }
+        clearSlots();
+        count = 0;
+        for (int i = 0; i < n; i++) {
+            int offset = (int) slotOffset(findSlot(keys[i * 3], keys[i * 3 + 1], keys[i * 3 + 2]));
+            writeSlot(offset, keys[i * 3], keys[i * 3 + 1], keys[i * 3 + 2], values[i]);
+            count++;
+        }
+        writeHeader(STATE_OPEN);
+    }
+
+    /**
+     * 先写候选哈希、参数与距离值，最后写目标哈希（占用标记），写入中断时该槽位仍为空
+     */
+    private void writeSlot(int offset, long targetHash, long candidateHash, long params, double value) {
+        buffer.putLong(offset + 8, candidateHash);
+        buffer.putLong(offset + 16, params);
+        buffer.putDouble(offset + 24, value);
+        buffer.putLong(offset, targetHash);
+    }
+
+    private long countOccupied() {
+        long occupied = 0;
+        for (long slot = 0; slot < capacity; slot++) {
+            if (buffer.getLong((int) slotOffset(slot)) != 0) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * 文件头标记为使用中并立即刷盘，之后异常退出可在下次打开时识别
+     */
+    private void markOpen() {
+        writeHeader(STATE_OPEN);
+        buffer.force();
+        markedClosed = false;
+    }
+
+    private void clearSlots() {
+        for (long slot = 0; slot < capacity; slot++) {
+            buffer.putLong((int) slotOffset(slot), 0L);
+        }
+    }
+
+    private void writeHeader(int state) {
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, state);
+        buffer.putLong(16, capacity);
+        buffer.putLong(24, count);
+    }
+
+    private static long slotOffset(long slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long paramsHash(Metric metric, int type, double ratio, int window) {
+        long h = mix(metric.ordinal() + 1L);
+        h = mix(h ^ type);
+        h = mix(h ^ Double.doubleToLongBits(ratio));
+        h = mix(h ^ window);
+        return h;
+    }
+
+    /**
+     * 64位混合函数（SplitMix64终结步骤）
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,142 @@
+package com.demo.extract.services;
+
+/**
+ * 一个因子在一组订单上的标准化参数与余弦相似度
+ * 缓存各订单标准化前的行（收益因子为特征本身，价格类因子为特征的对数收益率）与按列的均值、标准差，
+ * 结果与StandardScaler.standardize/preprocessClosePrices后再用CosineSimilarity计算逐位一致，
+ * 但不生成标准化后的矩阵：查询时只转换目标行，其余行在计算相似度时逐行转换到复用的缓冲区。
+ * 实例不可变；常驻决策引擎在发布分组时复用未变订单的行，只为新订单计算。
+ */
+final class FactorScaling {
+    private static final double EPSILON = 1e-8; // 与StandardScaler一致，防止除零
+
+    private final double[][] rows;
+    private final double[] means;
+    private final double[] stds;
+
+    private FactorScaling(double[][] rows, double[] means, double[] stds) {
+        this.rows = rows;
+        this.means = means;
+        this.stds = stds;
+    }
+
+    /**
+     * 标准化前的行：收益因子（类型1）直接使用特征，价格类因子转为对数收益率
+     */
+    static double[] baseRow(int type, double[] features) {
+        if (type == 1) {
+            return features;
+        }
+        double[] returns = new double[features.length - 1];
+        for (int i = 1; i < features.length; i++) {
+            returns[i - 1] = Math.log(features[i] / features[i - 1]);
+        }
+        return returns;
+    }
+
+    /**
+     * 由各因子特征矩阵拟合（下标0~5对应因子类型1~6）
+     */
+    static FactorScaling[] fitAll(double[][][] features) {
+        FactorScaling[] scaling = new FactorScaling[features.length];
+        for (int t = 0; t < features.length; t++) {
+            double[][] rows = new double[features[t].length][];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = baseRow(t + 1, features[t][i]);
+            }
+            scaling[t] = fit(rows);
+        }
+        return scaling;
+    }
+
+    /**
+     * 按列拟合均值与标准差（与commons-math的Mean、无偏StandardDeviation的计算顺序一致）
+     * @param rows 标准化前的行，不复制，调用方不得再修改
+     */
+    static FactorScaling fit(double[][] rows) {
+        if (rows.length == 0) {
+            return new FactorScaling(rows, new double[0], new double[0]);
+        }
+        int columns = rows[0].length;
+        int n = rows.length;
+        // 按行遍历、各列分别累加（每列的运算顺序与逐列计算相同，结果一致，但顺序访问内存）
+        double[] means = new double[columns];
+        for (double[] row : rows) {
+            for (int col = 0; col < columns; col++) {
+                means[col] += row[col];
+            }
+        }
+        for (int col = 0; col < columns; col++) {
+            means[col] /= n;
+        }
+        double[] correction = new double[columns];
+        for (double[] row : rows) {
+            for (int col = 0; col < columns; col++) {
+                correction[col] += row[col] - means[col];
+            }
+        }
+        for (int col = 0; col < columns; col++) {
+            means[col] += correction[col] / n;
+        }
+
+        double[] stds = new double[columns];
+        if (n > 1) {
+            double[] accum = new double[columns];
+            double[] accum2 = new double[columns];
+            for (double[] row : rows) {
+                for (int col = 0; col < columns; col++) {
+                    double dev = row[col] - means[col];
+                    accum[col] += dev * dev;
+                    accum2[col] += dev;
+                }
+            }
+            for (int col = 0; col < columns; col++) {
+                stds[col] = Math.sqrt((accum[col] - (accum2[col] * accum2[col] / n)) / (n - 1.0));
+            }
+        }
+        return new FactorScaling(rows, means, stds);
+    }
+
+    int size() {
+        return rows.length;
+    }
+
+    /**
+     * 标准化前的第i行（供发布新分组时复用）
+     */
+    double[] row(int i) {
+        return rows[i];
+    }
+
+    /**
+     * 目标行与所有行（含目标自身）标准化后的余弦相似度
+     */
+    double[] cosineToRow(int targetIdx, CosineSimilarity cosine) {
+        return cosineTo(rows[targetIdx], cosine);
+    }
+
+    /**
+     * 一行标准化前的数据（可不属于本组，如只读查询的目标）按本组的均值、标准差标准化后，与所有行的余弦相似度
+     * @param baseRow 标准化前的行（见baseRow），长度须与本组的列数一致
+     */
+    double[] cosineTo(double[] baseRow, CosineSimilarity cosine) {
+        if (baseRow.length != means.length) {
+            throw new IllegalArgumentException("特征维度不一致: " + baseRow.length + "，分组为" + means.length);
+        }
+        double[] target = new double[means.length];
+        scale(baseRow, target);
+        double[] buffer = new double[means.length];
+        double[] similarities = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            scale(rows[i], buffer);
+            similarities[i] = cosine.computePairwise(target, buffer);
+        }
+        return similarities;
+    }
+
+    private void scale(double[] row, double[] out) {
+        for (int col = 0; col < out.length; col++) {
+            out[col] = (row[col] - means[col]) / (stds[col] + EPSILON);
+        }
+    }
+}
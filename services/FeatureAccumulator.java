@@ -0,0 +1,332 @@
+package com.demo.extract.services;
+
+import com.demo.extract.DTO.OrderFeatures;
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+
+import java.util.Arrays;
+
+/**
+ * 单遍特征累加器
+ * 以Welford方式在线累积至四阶中心矩，同时累积回归量、极值、绝对值和符号计数，
+ * 所有分位数共用一次排序；支持在已有累加器上追加新数据点，无需重新扫描历史
+ */
+public class FeatureAccumulator {
+    /**
+     * 特征向量维度，顺序见 {@link #writeTo(double[])}
+     */
+    public static final int FEATURE_COUNT = 20;
+
+    private String orderId;
+
+    private long n;
+    private double mean;
+    private double m2;   // Σ(x-mean)²
+    private double m3;   // Σ(x-mean)³
+    private double m4;   // Σ(x-mean)⁴
+
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double absMax = Double.NaN;
+    private double absSum;
+    private long posCount;
+    private long negCount;
+    private long zeroCount;
+    private double firstValue;
+    private double lastValue;
+
+    private final SimpleRegression regression = new SimpleRegression();
+
+    // 原始数据（用于分位数），sorted为有序副本，追加时按二分插入维护
+    private double[] data;
+    private double[] sorted;
+    private boolean sortedValid;
+
+    /**
+     * 构造函数
+     * @param orderId 订单ID
+     * @param expectedSize 预计数据点数量
+     */
+    public FeatureAccumulator(String orderId, int expectedSize) {
+        this.orderId = orderId;
+        this.data = new double[Math.max(16, expectedSize)];
+    }
+
+    /**
+     * 以整条序列初始化累加器
+     * @param orderId 订单ID
+     * @param timestamps 时间轴（回归自变量）
+     * @param values 序列值
+     */
+    public static FeatureAccumulator of(String orderId, double[] timestamps, double[] values) {
+        FeatureAccumulator accumulator = new FeatureAccumulator(orderId, values.length);
+        accumulator.addAll(timestamps, values);
+        return accumulator;
+    }
+
+    /**
+     * 清空累加器以便复用缓冲区（批量提取特征矩阵时每个订单复用同一实例）
+     * @param orderId 新的订单ID
+     */
+    public void reset(String orderId) {
+        this.orderId = orderId;
+        n = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        m3 = 0.0;
+        m4 = 0.0;
+        min = Double.NaN;
+        max = Double.NaN;
+        absMax = Double.NaN;
+        absSum = 0.0;
+        posCount = 0;
+        negCount = 0;
+        zeroCount = 0;
+        firstValue = 0.0;
+        lastValue = 0.0;
+        regression.clear();
+        sortedValid = false;
+    }
+
+    /**
+     * 追加一组数据点
+     */
+    public void addAll(double[] timestamps, double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            add(timestamps[i], values[i]);
+        }
+    }
+
+    /**
+     * 追加一个数据点
+     * @param timestamp 时间（回归自变量）
+     * @param value 数据值
+     */
+    public void add(double timestamp, double value) {
+        // 高阶矩在线更新（Pébay公式，与commons-math FourthMoment一致）
+        long n1 = n;
+        n++;
+        double delta = value - mean;
+        double deltaN = delta / n;
+        double deltaN2 = deltaN * deltaN;
+        double term1 = delta * deltaN * n1;
+        mean += deltaN;
+        m4 += term1 * deltaN2 * (n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+        m3 += term1 * deltaN * (n - 2) - 3 * deltaN * m2;
+        m2 += term1;
+
+        double abs = Math.abs(value);
+        if (n1 == 0) {
+            min = value;
+            max = value;
+            absMax = abs;
+            firstValue = value;
+        } else {
+            if (value < min) min = value;
+            if (value > max) max = value;
+            if (abs > absMax) absMax = abs;
+        }
+        absSum += abs;
+        lastValue = value;
+        if (value > 0) {
+            posCount++;
+        } else if (value < 0) {
+            negCount++;
+        } else if (value == 0) {
+            zeroCount++;
+        }
+
+        regression.addData(timestamp, value);
+
+        int size = (int) n1;
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size] = value;
+        if (sortedValid) {
+            insertSorted(value, size);
+        }
+    }
+
+    public long getCount() {
+        return n;
+    }
+
+    public double getMean() {
+        return n > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * 样本标准差（n-1），与commons-math StandardDeviation一致
+     */
+    public double getStd() {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return n == 1 ? 0.0 : Math.sqrt(m2 / (n - 1));
+    }
+
+    /**
+     * 样本偏度，与commons-math Skewness一致（少于3个点返回NaN）
+     */
+    public double getSkewness() {
+        if (n < 3) {
+            return Double.NaN;
+        }
+        double variance = m2 / (n - 1);
+        double n0 = n;
+        return (n0 / ((n0 - 1) * (n0 - 2))) * (m3 / (variance * Math.sqrt(variance)));
+    }
+
+    /**
+     * 样本超额峰度，与commons-math Kurtosis一致（少于4个点返回NaN）
+     */
+    public double getKurtosis() {
+        if (n < 4) {
+            return Double.NaN;
+        }
+        double variance = m2 / (n - 1);
+        double n0 = n;
+        double accum = m4 / (variance * variance);
+        double coefficientOne = (n0 * (n0 + 1)) / ((n0 - 1) * (n0 - 2) * (n0 - 3));
+        double termTwo = (3 * (n0 - 1) * (n0 - 1)) / ((n0 - 2) * (n0 - 3));
+        return coefficientOne * accum - termTwo;
+    }
+
+    /**
+     * 分位数，与StatUtils.percentile默认估计方式一致
+     * @param p 百分位（0,100]
+     */
+    public double percentile(double p) {
+        double[] values = sortedValues();
+        int length = (int) n;
+        if (length == 0) {
+            return Double.NaN;
+        }
+        if (length == 1) {
+            return values[0];
+        }
+        double pos = p * (length + 1) / 100;
+        double fpos = Math.floor(pos);
+        int intPos = (int) fpos;
+        double dif = pos - fpos;
+        if (pos < 1) {
+            return values[0];
+        }
+        if (pos >= length) {
+            return values[length - 1];
+        }
+        double lower = values[intPos - 1];
+        double upper = values[intPos];
+        return lower + dif * (upper - lower);
+    }
+
+    /**
+     * 生成订单特征
+     */
+    public OrderFeatures toFeatures() {
+        if (n == 0) {
+            throw new IllegalStateException("特征累加器中没有数据点");
+        }
+
+        // 趋势特征
+        Double slope = null, intercept = null, rValue = null, pValue = null;
+        if (n > 1) {
+            slope = regression.getSlope();
+            intercept = regression.getIntercept();
+            rValue = regression.getR();
+            pValue = regression.getSignificance();
+        }
+
+        return OrderFeatures.builder()
+                .orderId(orderId)
+                .count((int) n)
+                .mean(getMean())
+                .std(getStd())
+                .min(min)
+                .max(max)
+                .median(percentile(50))
+                .q25(percentile(25))
+                .q75(percentile(75))
+                .skewness(getSkewness())
+                .kurtosis(getKurtosis())
+                .range(max - min)
+                .firstValue(firstValue)
+                .lastValue(lastValue)
+                .absMax(absMax)
+                .absMean(absSum / n)
+                .posCount(posCount)
+                .negCount(negCount)
+                .zeroCount(zeroCount)
+                .trendSlope(slope)
+                .trendIntercept(intercept)
+                .trendRValue(rValue)
+                .trendPValue(pValue)
+                .build();
+    }
+
+    /**
+     * 将特征直接写入预分配的特征矩阵行，避免构造OrderFeatures对象
+     * 顺序：mean, std, min, max, median, q25, q75, skewness, kurtosis, range,
+     * firstValue, lastValue, absMax, absMean, posCount, negCount, zeroCount,
+     * trendSlope, trendIntercept, trendRValue（不足两个点时趋势特征记为0）
+     * @param row 长度不小于FEATURE_COUNT的数组
+     */
+    public void writeTo(double[] row) {
+        if (n == 0) {
+            throw new IllegalStateException("特征累加器中没有数据点");
+        }
+        row[0] = getMean();
+        row[1] = getStd();
+        row[2] = min;
+        row[3] = max;
+        row[4] = percentile(50);
+        row[5] = percentile(25);
+        row[6] = percentile(75);
+        row[7] = getSkewness();
+        row[8] = getKurtosis();
+        row[9] = max - min;
+        row[10] = firstValue;
+        row[11] = lastValue;
+        row[12] = absMax;
+        row[13] = absSum / n;
+        row[14] = posCount;
+        row[15] = negCount;
+        row[16] = zeroCount;
+        if (n > 1) {
+            row[17] = regression.getSlope();
+            row[18] = regression.getIntercept();
+            row[19] = regression.getR();
+        } else {
+            row[17] = 0.0;
+            row[18] = 0.0;
+            row[19] = 0.0;
+        }
+    }
+
+    /**
+     * 有序副本（仅前n个元素有效），首次调用时排序一次，之后由追加操作维护
+     */
+    private double[] sortedValues() {
+        if (!sortedValid) {
+            if (sorted == null || sorted.length < n) {
+                sorted = new double[data.length];
+            }
+            System.arraycopy(data, 0, sorted, 0, (int) n);
+            Arrays.sort(sorted, 0, (int) n);
+            sortedValid = true;
+        }
+        return sorted;
+    }
+
+    private void insertSorted(double value, int size) {
+        if (size == sorted.length) {
+            sorted = Arrays.copyOf(sorted, size * 2);
+        }
+        int pos = Arrays.binarySearch(sorted, 0, size, value);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        System.arraycopy(sorted, pos, sorted, pos + 1, size - pos);
+        sorted[pos] = value;
+    }
+}
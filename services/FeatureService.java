@@ -3,15 +3,48 @@ package com.demo.extract.services;
 
 import com.demo.extract.DTO.OrderFeatures;
 import com.demo.extract.DTO.OrderTimeSeries;
-import org.apache.commons.math3.stat.StatUtils;
-import org.apache.commons.math3.stat.descriptive.moment.*;
-import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.apache.ibatis.annotations.Param;
 
-import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public class FeatureService {
     public OrderFeatures extractFeatures(OrderTimeSeries series,Integer type) {
+        return accumulate(series, type).toFeatures();
+    }
+
+    /**
+     * 单遍累积指定因子的特征，返回的累加器可继续追加新数据点
+     * @param series 订单时间序列
+     * @param type 因子类型（1收益 2收盘价 3开盘价 4ATR 5通道上轨 6通道下轨）
+     */
+    public FeatureAccumulator accumulate(OrderTimeSeries series, Integer type) {
+        return FeatureAccumulator.of(series.getOrderId(), series.getTimestamps(), selectValues(series, type));
+    }
+
+    /**
+     * 提取指定因子的特征矩阵，每个订单的特征直接写入预分配矩阵的一行
+     * @param orderIds 订单ID（决定行顺序）
+     * @param seriesMap 订单数据
+     * @param type 因子类型
+     * @return 特征矩阵[订单数][FeatureAccumulator.FEATURE_COUNT]
+     */
+    public double[][] extractFeatureMatrix(List<String> orderIds, Map<String, OrderTimeSeries> seriesMap, Integer type) {
+        double[][] matrix = new double[orderIds.size()][FeatureAccumulator.FEATURE_COUNT];
+        FeatureAccumulator accumulator = new FeatureAccumulator(null, 512);
+        for (int i = 0; i < orderIds.size(); i++) {
+            OrderTimeSeries series = seriesMap.get(orderIds.get(i));
+            accumulator.reset(series.getOrderId());
+            accumulator.addAll(series.getTimestamps(), selectValues(series, type));
+            accumulator.writeTo(matrix[i]);
+        }
+        return matrix;
+    }
+
+    /**
+     * 按因子类型选取序列
+     */
+    public double[] selectValues(OrderTimeSeries series, Integer type) {
         double[] values = series.getValues();
         switch (type){
             case 1:
@@ -35,152 +68,14 @@ public class FeatureService {
                 values = series.getTL();
                 break;
         }
-
-        double[] timestamps = series.getTimestamps();
-
-        // 基础统计量
-        double mean = StatUtils.mean(values);
-        double std = new StandardDeviation().evaluate(values);
-        double skewness = new Skewness().evaluate(values);
-        double kurtosis = new Kurtosis().evaluate(values);
-
-        // 趋势特征
-        Double slope = null, intercept = null, rValue = null, pValue = null;
-        if (values.length > 1) {
-            SimpleRegression regression = new SimpleRegression();
-            for (int i = 0; i < values.length; i++) {
-                regression.addData(timestamps[i], values[i]);
-            }
-            slope = regression.getSlope();
-            intercept = regression.getIntercept();
-            rValue = regression.getR();
-            pValue = regression.getSignificance();
-        }
-
-        return OrderFeatures.builder()
-                .orderId(series.getOrderId())
-                .count(values.length)
-                .mean(mean)
-                .std(std)
-                .min(StatUtils.min(values))
-                .max(StatUtils.max(values))
-                .median(StatUtils.percentile(values, 50))
-                .q25(StatUtils.percentile(values, 25))
-                .q75(StatUtils.percentile(values, 75))
-                .skewness(skewness)
-                .kurtosis(kurtosis)
-                .range(StatUtils.max(values) - StatUtils.min(values))
-                .firstValue(values[0])
-                .lastValue(values[values.length-1])
-                .absMax(StatUtils.max(Arrays.stream(values).map(Math::abs).toArray()))
-                .absMean(StatUtils.mean(Arrays.stream(values).map(Math::abs).toArray()))
-                .posCount(Arrays.stream(values).filter(v -> v > 0).count())
-                .negCount(Arrays.stream(values).filter(v -> v < 0).count())
-                .zeroCount(Arrays.stream(values).filter(v -> v == 0).count())
-                .trendSlope(slope)
-                .trendIntercept(intercept)
-                .trendRValue(rValue)
-                .trendPValue(pValue)
-                .build();
+        return values;
     }
 
     public OrderFeatures extractClose(OrderTimeSeries series) {
-        double[] values = series.getClose();
-        double[] timestamps = series.getTimestamps();
-
-        // 基础统计量
-        double mean = StatUtils.mean(values);
-        double std = new StandardDeviation().evaluate(values);
-        double skewness = new Skewness().evaluate(values);
-        double kurtosis = new Kurtosis().evaluate(values);
-
-        // 趋势特征
-        Double slope = null, intercept = null, rValue = null, pValue = null;
-        if (values.length > 1) {
-            SimpleRegression regression = new SimpleRegression();
-            for (int i = 0; i < values.length; i++) {
-                regression.addData(timestamps[i], values[i]);
-            }
-            slope = regression.getSlope();
-            intercept = regression.getIntercept();
-            rValue = regression.getR();
-            pValue = regression.getSignificance();
-        }
-
-        return OrderFeatures.builder()
-                .orderId(series.getOrderId())
-                .count(values.length)
-                .mean(mean)
-                .std(std)
-                .min(StatUtils.min(values))
-                .max(StatUtils.max(values))
-                .median(StatUtils.percentile(values, 50))
-                .q25(StatUtils.percentile(values, 25))
-                .q75(StatUtils.percentile(values, 75))
-                .skewness(skewness)
-                .kurtosis(kurtosis)
-                .range(StatUtils.max(values) - StatUtils.min(values))
-                .firstValue(values[0])
-                .lastValue(values[values.length-1])
-                .absMax(StatUtils.max(Arrays.stream(values).map(Math::abs).toArray()))
-                .absMean(StatUtils.mean(Arrays.stream(values).map(Math::abs).toArray()))
-                .posCount(Arrays.stream(values).filter(v -> v > 0).count())
-                .negCount(Arrays.stream(values).filter(v -> v < 0).count())
-                .zeroCount(Arrays.stream(values).filter(v -> v == 0).count())
-                .trendSlope(slope)
-                .trendIntercept(intercept)
-                .trendRValue(rValue)
-                .trendPValue(pValue)
-                .build();
+        return extractFeatures(series, 2);
     }
 
     public OrderFeatures extractOpen(OrderTimeSeries series) {
-        double[] values = series.getOpen();
-        double[] timestamps = series.getTimestamps();
-
-        // 基础统计量
-        double mean = StatUtils.mean(values);
-        double std = new StandardDeviation().evaluate(values);
-        double skewness = new Skewness().evaluate(values);
-        double kurtosis = new Kurtosis().evaluate(values);
-
-        // 趋势特征
-        Double slope = null, intercept = null, rValue = null, pValue = null;
-        if (values.length > 1) {
-            SimpleRegression regression = new SimpleRegression();
-            for (int i = 0; i < values.length; i++) {
-                regression.addData(timestamps[i], values[i]);
-            }
-            slope = regression.getSlope();
-            intercept = regression.getIntercept();
-            rValue = regression.getR();
-            pValue = regression.getSignificance();
-        }
-
-        return OrderFeatures.builder()
-                .orderId(series.getOrderId())
-                .count(values.length)
-                .mean(mean)
-                .std(std)
-                .min(StatUtils.min(values))
-                .max(StatUtils.max(values))
-                .median(StatUtils.percentile(values, 50))
-                .q25(StatUtils.percentile(values, 25))
-                .q75(StatUtils.percentile(values, 75))
-                .skewness(skewness)
-                .kurtosis(kurtosis)
-                .range(StatUtils.max(values) - StatUtils.min(values))
-                .firstValue(values[0])
-                .lastValue(values[values.length-1])
-                .absMax(StatUtils.max(Arrays.stream(values).map(Math::abs).toArray()))
-                .absMean(StatUtils.mean(Arrays.stream(values).map(Math::abs).toArray()))
-                .posCount(Arrays.stream(values).filter(v -> v > 0).count())
-                .negCount(Arrays.stream(values).filter(v -> v < 0).count())
-                .zeroCount(Arrays.stream(values).filter(v -> v == 0).count())
-                .trendSlope(slope)
-                .trendIntercept(intercept)
-                .trendRValue(rValue)
-                .trendPValue(pValue)
-                .build();
+        return extractFeatures(series, 3);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,535 @@
+package com.demo.extract.services;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * HNSW（分层可导航小世界图）近似最近邻索引
+ * 以余弦距离（1 - 余弦相似度，与CosineSimilarity一致，NaN与无穷大分量按0处理）组织向量，
+ * 支持增量插入与删除（标记删除：节点仍参与图的导航，但不再出现在查询结果中，更新=删除旧节点+插入新节点）；
+ * 查询精度由efSearch控制，可按目标召回率自动校准。
+ * 插入与查询不可并发调用，由调用方加锁（查询之间可以并发）。
+ */
+public class HnswIndex {
+    private final int dimension;
+    private final int m;          // 每层最大连接数
+    private final int maxM0;      // 第0层最大连接数
+    private final int efConstruction;
+    private final double levelFactor;
+    private final Random random;
+
+    private double[][] vectors = new double[16][]; // 单位化后的向量
+    private int[] levels = new int[16];
+    private int[][][] links = new int[16][][];    // links[节点][层] = {数量, 邻居...}
+    private boolean[] deleted = new boolean[16];
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private volatile int efSearch;
+    private volatile double calibratedRecall = 1.0;
+
+    // 每个查询线程复用的访问标记
+    private final ThreadLocal<int[]> visitedMarks = ThreadLocal.withInitial(() -> new int[0]);
+    private final ThreadLocal<int[]> visitedEpoch = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * 构造函数
+     * @param dimension 向量维度
+     * @param m 每层最大连接数（常用8~32）
+     * @param efConstruction 建图时的候选队列长度
+     * @param seed 层级随机种子（保证相同插入顺序下结果可复现）
+     */
+    public HnswIndex(int dimension, int m, int efConstruction, long seed) {
+        this.dimension = dimension;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelFactor = 1.0 / Math.log(this.m);
+        this.random = new Random(seed);
+        this.efSearch = this.efConstruction;
+    }
+
+    /**
+     * 节点总数（含已删除的节点）
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 未删除的节点数
+     */
+    public int liveSize() {
+        return size - deletedCount;
+    }
+
+    /**
+     * 标记删除节点，之后的查询不再返回该节点
+     */
+    public void markDeleted(int node) {
+        if (node < 0 || node >= size) {
+            throw new IllegalArgumentException("节点不存在: " + node);
+        }
+        if (!deleted[node]) {
+            deleted[node] = true;
+            deletedCount++;
+        }
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted[node];
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    /**
+     * 最近一次校准时抽样查询的平均召回率
+     */
+    public double getCalibratedRecall() {
+        return calibratedRecall;
+    }
+
+    /**
+     * 插入向量
+     * @return 节点编号（按插入顺序从0开始）
+     */
+    public int add(double[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不一致: 期望" + dimension + ", 实际" + vector.length);
+        }
+        int node = size;
+        ensureCapacity(node + 1);
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor);
+        vectors[node] = normalize(vector);
+        levels[node] = level;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[1 + (l == 0 ? maxM0 : m) + 1];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        double[] query = vectors[node];
+        int current = entryPoint;
+        double currentDist = distance(query, vectors[current]);
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(query, current, currentDist, l);
+            currentDist = distance(query, vectors[current]);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            DistanceHeap found = searchLayer(query, current, efConstruction, l, false);
+            int maxLinks = l == 0 ? maxM0 : m;
+            int[] selected = selectNeighbors(query, found, m);
+            for (int neighbor : selected) {
+                connect(node, neighbor, l, maxLinks);
+                connect(neighbor, node, l, maxLinks);
+            }
+            current = found.closest();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * 查询最近的k个节点
+     * @param query 查询向量
+     * @param k 返回数量
+     * @return 节点编号，按距离升序
+     */
+    public int[] search(double[] query, int k) {
+        return search(query, k, Math.max(k, efSearch));
+    }
+
+    public int[] search(double[] query, int k, int ef) {
+        if (liveSize() == 0 || k <= 0) {
+            return new int[0];
+        }
+        double[] q = normalize(query);
+        int current = entryPoint;
+        double currentDist = distance(q, vectors[current]);
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(q, current, currentDist, l);
+            currentDist = distance(q, vectors[current]);
+        }
+        DistanceHeap found = searchLayer(q, current, Math.max(k, ef), 0, true);
+        return found.sortedIds(Math.min(k, found.size()));
+    }
+
+    /**
+     * 精确查询（暴力扫描），用于校准与对比
+     */
+    public int[] exactSearch(double[] query, int k) {
+        double[] q = normalize(query);
+        DistanceHeap best = new DistanceHeap(Math.max(1, k));
+        for (int i = 0; i < size; i++) {
+            if (!deleted[i]) {
+                best.offerBounded(i, distance(q, vectors[i]), k);
+            }
+        }
+        return best.sortedIds(Math.min(k, best.size()));
+    }
+
+    /**
+     * 按目标召回率校准efSearch：从k开始倍增，直到抽样查询的平均召回率达到目标
+     * 采用留一法：查询节点自身不计入近似与精确结果（自身总能被找到，计入会高估召回率）
+     * @param recallTarget 目标召回率（0~1）
+     * @param k 查询数量
+     * @param sampleSize 抽样查询数
+     * @return 校准后的efSearch
+     */
+    public int calibrate(double recallTarget, int k, int sampleSize) {
+        if (liveSize() == 0) {
+            return efSearch;
+        }
+        Random sampler = new Random(size);
+        int samples = Math.min(sampleSize, liveSize());
+        int[] queries = new int[samples];
+        int[][] exact = new int[samples][];
+        for (int s = 0; s < samples; s++) {
+            do {
+                queries[s] = sampler.nextInt(size);
+            } while (deleted[queries[s]]);
+            exact[s] = excluding(exactSearch(vectors[queries[s]], k + 1), queries[s], k);
+        }
+
+        int ef = Math.max(1, k);
+        while (true) {
+            double recall = 0.0;
+            for (int s = 0; s < samples; s++) {
+                int[] approx = excluding(search(vectors[queries[s]], k + 1, ef), queries[s], k);
+                recall += exact[s].length == 0 ? 1.0 : overlap(approx, exact[s]) / (double) exact[s].length;
+            }
+            recall /= samples;
+            if (recall >= recallTarget || ef >= size) {
+                calibratedRecall = recall;
+                break;
+            }
+            ef = Math.min(size, ef * 2);
+        }
+        setEfSearch(ef);
+        return ef;
+    }
+
+    /**
+     * 去掉指定节点后的前k个
+     */
+    private static int[] excluding(int[] ids, int node, int k) {
+        int[] result = new int[Math.min(k, ids.length)];
+        int n = 0;
+        for (int i = 0; i < ids.length && n < result.length; i++) {
+            if (ids[i] != node) {
+                result[n++] = ids[i];
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private static int overlap(int[] a, int[] b) {
+        int count = 0;
+        for (int x : a) {
+            for (int y : b) {
+                if (x == y) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int greedyClosest(double[] query, int current, double currentDist, int level) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbors = links[current][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int candidate = neighbors[i];
+                double d = distance(query, vectors[candidate]);
+                if (d < currentDist) {
+                    currentDist = d;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层束搜索，返回不超过ef个最近节点
+     * @param skipDeleted 已删除的节点只用于导航，不放入结果（查询时为true，建图时为false）
+     */
+    private DistanceHeap searchLayer(double[] query, int entry, int ef, int level, boolean skipDeleted) {
+        int[] marks = visitedMarks.get();
+        if (marks.length < size) {
+            marks = new int[Math.max(size, marks.length * 2)];
+            visitedMarks.set(marks);
+        }
+        int[] epochHolder = visitedEpoch.get();
+        int epoch = ++epochHolder[0];
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            epochHolder[0] = epoch = 1;
+        }
+
+        DistanceHeap candidates = new DistanceHeap(ef * 2);  // 最小堆（按负距离存入最大堆）
+        DistanceHeap results = new DistanceHeap(ef + 1);      // 最大堆
+        double entryDist = distance(query, vectors[entry]);
+        marks[entry] = epoch;
+        candidates.push(entry, -entryDist);
+        if (!skipDeleted || !deleted[entry]) {
+            results.push(entry, entryDist);
+        }
+
+        while (candidates.size() > 0) {
+            double candidateDist = -candidates.topDistance();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateDist > results.topDistance()) {
+                break;
+            }
+            int[] neighbors = links[candidate][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (marks[neighbor] == epoch) {
+                    continue;
+                }
+                marks[neighbor] = epoch;
+                double d = distance(query, vectors[neighbor]);
+                if (results.size() < ef || d < results.topDistance()) {
+                    candidates.push(neighbor, -d);
+                    if (!skipDeleted || !deleted[neighbor]) {
+                        results.push(neighbor, d);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 启发式邻居选择：优先保留与已选邻居不冗余的候选，不足时用最近的候选补齐
+     */
+    private int[] selectNeighbors(double[] query, DistanceHeap found, int count) {
+        int[] ordered = found.sortedIds(found.size());
+        int[] selected = new int[Math.min(count, ordered.length)];
+        boolean[] taken = new boolean[ordered.length];
+        int n = 0;
+        for (int i = 0; i < ordered.length && n < selected.length; i++) {
+            int candidate = ordered[i];
+            double toQuery = distance(query, vectors[candidate]);
+            boolean keep = true;
+            for (int j = 0; j < n; j++) {
+                if (distance(vectors[candidate], vectors[selected[j]]) < toQuery) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[n++] = candidate;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < ordered.length && n < selected.length; i++) {
+            if (!taken[i]) {
+                selected[n++] = ordered[i];
+            }
+        }
+        return selected;
+    }
+
+    private void connect(int from, int to, int level, int maxLinks) {
+        int[] neighbors = links[from][level];
+        int count = neighbors[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbors[i] == to) {
+                return;
+            }
+        }
+        if (count < maxLinks) {
+            neighbors[count + 1] = to;
+            neighbors[0] = count + 1;
+            return;
+        }
+        // 超出上限：替换掉距离最远的邻居
+        double[] base = vectors[from];
+        int worst = -1;
+        double worstDist = distance(base, vectors[to]);
+        for (int i = 1; i <= count; i++) {
+            double d = distance(base, vectors[neighbors[i]]);
+            if (d > worstDist) {
+                worstDist = d;
+                worst = i;
+            }
+        }
+        if (worst > 0) {
+            neighbors[worst] = to;
+        }
+    }
+
+    private double[] normalize(double[] vector) {
+        double[] unit = new double[dimension];
+        double norm = 0.0;
+        for (int i = 0; i < dimension; i++) {
+            double v = Double.isFinite(vector[i]) ? vector[i] : 0.0; // 对数收益率预处理可能产生无穷大
+            unit[i] = v;
+            norm += v * v;
+        }
+        if (norm <= 1e-10) {
+            Arrays.fill(unit, 0.0); // 零向量与任何向量的相似度记为0
+            return unit;
+        }
+        double scale = 1.0 / Math.sqrt(norm);
+        for (int i = 0; i < dimension; i++) {
+            unit[i] *= scale;
+        }
+        return unit;
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double dot = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1.0 - dot;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > vectors.length) {
+            int newCapacity = Math.max(capacity, vectors.length * 2);
+            vectors = Arrays.copyOf(vectors, newCapacity);
+            levels = Arrays.copyOf(levels, newCapacity);
+            links = Arrays.copyOf(links, newCapacity);
+            deleted = Arrays.copyOf(deleted, newCapacity);
+        }
+    }
+
+    /**
+     * 基于数组的二叉最大堆（按距离），存入负距离即可当最小堆使用
+     */
+    private static class DistanceHeap {
+        private int[] ids;
+        private double[] distances;
+        private int size;
+
+        DistanceHeap(int capacity) {
+            ids = new int[Math.max(4, capacity)];
+            distances = new double[ids.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        double topDistance() {
+            return distances[0];
+        }
+
+        void push(int id, double distance) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int pos = size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (distances[parent] >= distance) {
+                    break;
+                }
+                ids[pos] = ids[parent];
+                distances[pos] = distances[parent];
+                pos = parent;
+            }
+            ids[pos] = id;
+            distances[pos] = distance;
+        }
+
+        int pop() {
+            int top = ids[0];
+            size--;
+            if (size > 0) {
+                int id = ids[size];
+                double distance = distances[size];
+                int pos = 0;
+                int half = size >>> 1;
+                while (pos < half) {
+                    int child = 2 * pos + 1;
+                    if (child + 1 < size && distances[child + 1] > distances[child]) {
+                        child++;
+                    }
+                    if (distance >= distances[child]) {
+                        break;
+                    }
+                    ids[pos] = ids[child];
+                    distances[pos] = distances[child];
+                    pos = child;
+                }
+                ids[pos] = id;
+                distances[pos] = distance;
+            }
+            return top;
+        }
+
+        /**
+         * 保留距离最小的limit个
+         */
+        void offerBounded(int id, double distance, int limit) {
+            if (size < limit) {
+                push(id, distance);
+            } else if (limit > 0 && distance < distances[0]) {
+                pop();
+                push(id, distance);
+            }
+        }
+
+        int closest() {
+            int best = ids[0];
+            double bestDist = distances[0];
+            for (int i = 1; i < size; i++) {
+                if (distances[i] < bestDist) {
+                    bestDist = distances[i];
+                    best = ids[i];
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 按距离升序返回前count个编号（不改变堆）
+         */
+        int[] sortedIds(int count) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int c = Double.compare(distances[a], distances[b]);
+                return c != 0 ? c : Integer.compare(ids[a], ids[b]);
+            });
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = ids[order[i]];
+            }
+            return result;
+        }
+    }
+}
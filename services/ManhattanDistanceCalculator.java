@@ -2,10 +2,6 @@ package com.demo.extract.services;
 
 import com.demo.extract.DTO.OrderTimeSeries;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
-
 public class ManhattanDistanceCalculator {
 
     /**
@@ -16,19 +12,12 @@ public class ManhattanDistanceCalculator {
      * @return 曼哈顿距离值
      */
     public static double compute(OrderTimeSeries s1, OrderTimeSeries s2, Integer type) {
-        List<Double> data1 = getDataByType(s1, type);
-        List<Double> data2 = getDataByType(s2, type);
+        double[] data1 = getDataByType(s1, type);
+        double[] data2 = getDataByType(s2, type);
 
         // 确保两个序列长度相同
-        int minLength = Math.min(data1.size(), data2.size());
-        data1 = data1.subList(0, minLength);
-        data2 = data2.subList(0, minLength);
-
-        double distance = 0.0;
-        for (int i = 0; i < minLength; i++) {
-            distance += Math.abs(data1.get(i) - data2.get(i));
-        }
-        return distance;
+        int minLength = Math.min(data1.length, data2.length);
+        return sumAbsDiff(data1, data2, minLength);
     }
 
     /**
@@ -41,28 +30,25 @@ public class ManhattanDistanceCalculator {
      */
     public static double computePartial(OrderTimeSeries s1, OrderTimeSeries s2, double ratio, Integer type) {
         // 计算目标序列和参考序列的截取点
-        List<Double> fullData1 = getDataByType(s1, type);
-        List<Double> fullData2 = getDataByType(s2, type);
+        double[] fullData1 = getDataByType(s1, type);
+        double[] fullData2 = getDataByType(s2, type);
 
-        int splitPointS1 = (int) Math.round(fullData1.size() * ratio);
-        int splitPointS2 = (int) Math.round(fullData2.size() * ratio);
+        int splitPointS1 = (int) Math.round(fullData1.length * ratio);
+        int splitPointS2 = (int) Math.round(fullData2.length * ratio);
 
         // 确保截取点至少为1
         splitPointS1 = Math.max(1, splitPointS1);
         splitPointS2 = Math.max(1, splitPointS2);
 
-        // 截取数据
-        List<Double> data1 = fullData1.subList(0, splitPointS1);
-        List<Double> data2 = fullData2.subList(0, splitPointS2);
-
-        // 确保两个序列长度相同
-        int minLength = Math.min(data1.size(), data2.size());
-        data1 = data1.subList(0, minLength);
-        data2 = data2.subList(0, minLength);
+        // 截取后确保两个序列长度相同（直接在原数组上按长度累加，不复制）
+        int minLength = Math.min(splitPointS1, splitPointS2);
+        return sumAbsDiff(fullData1, fullData2, minLength);
+    }
 
+    private static double sumAbsDiff(double[] data1, double[] data2, int length) {
         double distance = 0.0;
-        for (int i = 0; i < minLength; i++) {
-            distance += Math.abs(data1.get(i) - data2.get(i));
+        for (int i = 0; i < length; i++) {
+            distance += Math.abs(data1[i] - data2[i]);
         }
         return distance;
     }
@@ -82,42 +68,27 @@ public class ManhattanDistanceCalculator {
     }
 
     /**
-     * 根据类型获取相应的数据
+     * 根据类型获取相应的数据（直接返回序列内部数组，调用方只读）
      */
-    private static List<Double> getDataByType(OrderTimeSeries series, Integer type) {
+    private static double[] getDataByType(OrderTimeSeries series, Integer type) {
         if (series == null) {
             throw new IllegalArgumentException("OrderTimeSeries cannot be null");
         }
 
         switch (type) {
-            case 1:
-                return Arrays.stream(series.getValues())  // 将double[]转为DoubleStream
-                        .boxed()         // 将double转为Double
-                        .collect(Collectors.toList());
             case 2:
-                return Arrays.stream(series.getClose())  // 将double[]转为DoubleStream
-                        .boxed()         // 将double转为Double
-                        .collect(Collectors.toList());
+                return series.getClose();
             case 3:
-                return Arrays.stream(series.getOpen())  // 将double[]转为DoubleStream
-                        .boxed()         // 将double转为Double
-                        .collect(Collectors.toList());
+                return series.getOpen();
             case 4:
-                return Arrays.stream(series.getAtr())  // 将double[]转为DoubleStream
-                        .boxed()         // 将double转为Double
-                        .collect(Collectors.toList());
+                return series.getAtr();
             case 5:
-                return Arrays.stream(series.getTH())  // 将double[]转为DoubleStream
-                        .boxed()         // 将double转为Double
-                        .collect(Collectors.toList());
+                return series.getTH();
             case 6:
-                return Arrays.stream(series.getTL())  // 将double[]转为DoubleStream
-                        .boxed()         // 将double转为Double
-                        .collect(Collectors.toList());
+                return series.getTL();
+            case 1:
             default:
-                return Arrays.stream(series.getValues())  // 将double[]转为DoubleStream
-                        .boxed()         // 将double转为Double
-                        .collect(Collectors.toList());
+                return series.getValues();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package com.demo.extract.services;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.model.AdvancedMarkovModel;
+import com.demo.extract.model.ImprovedAdvancedMarkovModel;
+import com.demo.extract.model.KlineData;
+import com.demo.extract.model.MarkovAnalysisResult;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 马尔可夫趋势批量分析器
+ * 将多条序列（订单或按天分组的K线）的分段与整体评估放入工作窃取线程池并行执行，
+ * 结果按输入顺序返回，并附带整体耗时统计
+ */
+public class MarkovBatchAnalyzer {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final ForkJoinPool pool;
+
+    /**
+     * 构造函数，并行度默认为CPU核数
+     */
+    public MarkovBatchAnalyzer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 构造函数
+     * @param parallelism 并行度
+     */
+    public MarkovBatchAnalyzer(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * 使用AdvancedMarkovModel批量分析订单收益序列
+     * @param orders 订单列表
+     * @return 批量分析结果，顺序与输入一致
+     */
+    public BatchResult<MarkovAnalysisResult> analyzeOrders(List<OrderTimeSeries> orders) {
+        return analyze(orders, order -> {
+            long start = System.currentTimeMillis();
+            AdvancedMarkovModel model = new AdvancedMarkovModel(
+                    order.getValues(), order.getValueTime(), order.getOrderId());
+            MarkovAnalysisResult result = model.getMarkovResult();
+            result.setOrderId(order.getOrderId());
+            result.setDataPointsCount(order.getLength());
+            result.setProcessingTime(System.currentTimeMillis() - start);
+            return result;
+        });
+    }
+
+    /**
+     * 使用ImprovedAdvancedMarkovModel批量分析按天分组的K线数据
+     * @param klinesByDay 按日期分组的K线（建议使用有序Map，结果顺序与其迭代顺序一致）
+     * @return 批量分析结果
+     */
+    public BatchResult<MarkovAnalysisResult> analyzeDailyKlines(Map<LocalDate, List<KlineData>> klinesByDay) {
+        List<Map.Entry<LocalDate, List<KlineData>>> days = new ArrayList<>(klinesByDay.entrySet());
+        return analyze(days, entry -> {
+            long start = System.currentTimeMillis();
+            String analysisId = "KLINE_" + entry.getKey().format(DATE_FORMATTER);
+            List<KlineData> klines = entry.getValue();
+            int dataSize = klines.size();
+            double[] closeValues = new double[dataSize];
+            String[] timeStrings = new String[dataSize];
+            for (int i = 0; i < dataSize; i++) {
+                KlineData kline = klines.get(i);
+                closeValues[i] = kline.getClose();
+                timeStrings[i] = kline.getTimestamp().format(DATE_FORMATTER) + " " +
+                        kline.getTimestamp().format(TIME_FORMATTER);
+            }
+            ImprovedAdvancedMarkovModel model = new ImprovedAdvancedMarkovModel(closeValues, timeStrings, analysisId);
+            MarkovAnalysisResult result = model.getMarkovResult();
+            result.setOrderId(analysisId);
+            result.setDataPointsCount(dataSize);
+            result.setProcessingTime(System.currentTimeMillis() - start);
+            return result;
+        });
+    }
+
+    /**
+     * 通用批量分析入口
+     * @param inputs 输入序列
+     * @param analyzer 单条序列的分析函数（需线程安全，每次调用应自行创建模型实例）
+     * @return 批量分析结果，单条失败时对应位置为null
+     */
+    public <T, R> BatchResult<R> analyze(List<T> inputs, Function<T, R> analyzer) {
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        List<R> results = ParallelMap.map(pool, inputs, analyzer, (e, i) -> {
+            failed.incrementAndGet();
+            System.err.println("第" + i + "条序列分析失败: " + e.getMessage());
+        }, "批量马尔可夫分析");
+        long elapsed = System.currentTimeMillis() - start;
+        return new BatchResult<>(results, elapsed, failed.get());
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * 批量分析结果
+     */
+    public static class BatchResult<R> {
+        private final List<R> results;
+        private final long elapsedMillis;
+        private final int failedCount;
+
+        public BatchResult(List<R> results, long elapsedMillis, int failedCount) {
+            this.results = results;
+            this.elapsedMillis = elapsedMillis;
+            this.failedCount = failedCount;
+        }
+
+        public List<R> getResults() { return results; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public int getFailedCount() { return failedCount; }
+        public int size() { return results.size(); }
+
+        /**
+         * 吞吐量（条/秒）
+         */
+        public double getThroughput() {
+            return elapsedMillis > 0 ? results.size() * 1000.0 / elapsedMillis : results.size();
+        }
+
+        public String getSummary() {
+            return String.format("批量分析完成: 共%d条, 失败%d条, 总耗时%dms, 吞吐量%.1f条/秒",
+                    results.size(), failedCount, elapsedMillis, getThroughput());
+        }
+    }
+}
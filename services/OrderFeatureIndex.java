@@ -0,0 +1,298 @@
+package com.demo.extract.services;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.util.StandardScaler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 订单特征近似最近邻索引
+ * 为每个因子（收益、收盘价、开盘价、ATR、通道上轨、通道下轨）维护一个HNSW索引，
+ * 向量为FeatureService提取并标准化后的特征（首次建索引时拟合标准化参数，后续新订单沿用该参数增量插入）。
+ * 用作DTW等精确距离计算前的候选预筛：各因子近邻的并集作为候选集。
+ * 一个索引只对应一个分组（多单或空单），标准化参数与近邻都只来自该分组。
+ * 订单数据变化（如延长后的订单）时删除旧节点并按新数据重新插入。
+ */
+public class OrderFeatureIndex {
+    private static final int FACTOR_COUNT = 6;
+    private static final int DEFAULT_M = 16;
+    private static final int DEFAULT_EF_CONSTRUCTION = 100;
+    private static final int CALIBRATION_SAMPLES = 50;
+
+    private final FeatureService featureService;
+    private final int candidatesPerFactor;
+    private final double recallTarget;
+
+    // 标准化参数与HNSW索引一起发布（build时整体替换），节点的增删在写锁内进行
+    private volatile State state;
+    private final List<String> nodeIds = new ArrayList<>();       // 节点编号 → 订单ID（含已删除的节点）
+    private final Map<String, Integer> nodeIndex = new HashMap<>(); // 订单ID → 当前节点编号
+    private final Map<String, OrderTimeSeries> indexedSeries = new HashMap<>(); // 订单ID → 建立节点时的数据
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile List<String> syncedIds; // 最近一次同步的分组订单列表（按引用比较）
+
+    /**
+     * 构造函数
+     * @param featureService 特征服务
+     * @param candidatesPerFactor 每个因子返回的近邻数量
+     * @param recallTarget 目标召回率（相对暴力扫描的TopK），用于校准查询精度
+     */
+    public OrderFeatureIndex(FeatureService featureService, int candidatesPerFactor, double recallTarget) {
+        this.featureService = featureService;
+        this.candidatesPerFactor = candidatesPerFactor;
+        this.recallTarget = recallTarget;
+    }
+
+    public boolean isBuilt() {
+        return state != null;
+    }
+
+    /**
+     * 当前索引中的订单数（不含已删除的节点）
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String orderId) {
+        lock.readLock().lock();
+        try {
+            return nodeIndex.containsKey(orderId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 校准后的召回率（各因子中的最小值，留一法抽样估计），未建索引时为0
+     */
+    public double getCalibratedRecall() {
+        lock.readLock().lock();
+        try {
+            State current = state;
+            if (current == null) {
+                return 0.0;
+            }
+            double recall = 1.0;
+            for (HnswIndex index : current.indexes) {
+                recall = Math.min(recall, index.getCalibratedRecall());
+            }
+            return recall;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 使索引与分组订单一致：与上次同步的是同一个列表时直接返回（批量回测中每个目标共用分组列表）；
+     * 否则删除不再属于分组的订单，插入新订单，数据已变化的订单（按对象引用判断）重新插入
+     */
+    public synchronized void sync(List<String> orderIds, Map<String, OrderTimeSeries> seriesMap) {
+        if (orderIds == syncedIds) {
+            return;
+        }
+        if (!isBuilt()) {
+            build(orderIds, seriesMap);
+        } else {
+            Set<String> members = new HashSet<>(orderIds);
+            List<String> removed = new ArrayList<>();
+            List<String> changed = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (String orderId : nodeIndex.keySet()) {
+                    if (!members.contains(orderId)) {
+                        removed.add(orderId);
+                    }
+                }
+                for (String orderId : orderIds) {
+                    OrderTimeSeries series = seriesMap.get(orderId);
+                    if (series != null && indexedSeries.get(orderId) != series) {
+                        changed.add(orderId);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            update(removed, changed, seriesMap);
+        }
+        syncedIds = orderIds;
+    }
+
+    /**
+     * 使用全部订单建立索引（拟合标准化参数并按目标召回率校准）
+     */
+    public void build(List<String> orderIds, Map<String, OrderTimeSeries> seriesMap) {
+        lock.writeLock().lock();
+        try {
+            StandardScaler[] scalers = new StandardScaler[FACTOR_COUNT];
+            HnswIndex[] indexes = new HnswIndex[FACTOR_COUNT];
+            for (int f = 0; f < FACTOR_COUNT; f++) {
+                int type = f + 1;
+                double[][] features = featureService.extractFeatureMatrix(orderIds, seriesMap, type);
+                scalers[f] = new StandardScaler();
+                double[][] scaled = type == 1 ? scalers[f].standardize(features) : scalers[f].fitClosePrices(features);
+                int dimension = scaled.length > 0 ? scaled[0].length : FeatureAccumulator.FEATURE_COUNT;
+                indexes[f] = new HnswIndex(dimension, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, type);
+                for (double[] vector : scaled) {
+                    indexes[f].add(vector);
+                }
+                indexes[f].calibrate(recallTarget, candidatesPerFactor, CALIBRATION_SAMPLES);
+            }
+            nodeIds.clear();
+            nodeIndex.clear();
+            indexedSeries.clear();
+            state = new State(scalers, indexes);
+            for (String orderId : orderIds) {
+                nodeIndex.put(orderId, nodeIds.size());
+                nodeIds.add(orderId);
+                indexedSeries.put(orderId, seriesMap.get(orderId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 增量插入新订单（已存在的订单忽略），沿用建索引时的标准化参数
+     */
+    public void addAll(List<String> orderIds, Map<String, OrderTimeSeries> seriesMap) {
+        List<String> missing = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String orderId : orderIds) {
+                if (!nodeIndex.containsKey(orderId) && seriesMap.containsKey(orderId)) {
+                    missing.add(orderId);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        update(Collections.emptyList(), missing, seriesMap);
+    }
+
+    /**
+     * 删除订单（不在索引中的忽略）
+     */
+    public void removeAll(Collection<String> orderIds) {
+        update(orderIds, Collections.emptyList(), Collections.emptyMap());
+    }
+
+    /**
+     * 增量更新：先删除removedIds，再插入或重新插入upsertIds（已在索引中的订单删除旧节点后按新数据插入）
+     * 尚未建立索引时忽略，由build或sync建立。
+     */
+    public void update(Collection<String> removedIds, List<String> upsertIds, Map<String, OrderTimeSeries> seriesMap) {
+        if (!isBuilt()) {
+            return;
+        }
+        List<String> inserts = new ArrayList<>(upsertIds.size());
+        for (String orderId : upsertIds) {
+            if (seriesMap.containsKey(orderId)) {
+                inserts.add(orderId);
+            }
+        }
+        // 特征提取在锁外进行，查询不被阻塞；标准化在写锁内，与同一次发布的标准化参数一致
+        double[][][] features = new double[FACTOR_COUNT][][];
+        if (!inserts.isEmpty()) {
+            for (int f = 0; f < FACTOR_COUNT; f++) {
+                features[f] = featureService.extractFeatureMatrix(inserts, seriesMap, f + 1);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            State current = state;
+            for (String orderId : removedIds) {
+                delete(current, orderId);
+            }
+            for (int i = 0; i < inserts.size(); i++) {
+                String orderId = inserts.get(i);
+                delete(current, orderId);
+                for (int f = 0; f < FACTOR_COUNT; f++) {
+                    current.indexes[f].add(current.vector(f, features[f][i]));
+                }
+                nodeIndex.put(orderId, nodeIds.size());
+                nodeIds.add(orderId);
+                indexedSeries.put(orderId, seriesMap.get(orderId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 候选预筛：各因子近邻的并集
+     * @param target 目标订单
+     * @return 候选订单ID（不含目标自身）
+     */
+    public Set<String> candidates(OrderTimeSeries target) {
+        double[][] features = new double[FACTOR_COUNT][];
+        Map<String, OrderTimeSeries> single = Collections.singletonMap(target.getOrderId(), target);
+        List<String> ids = Collections.singletonList(target.getOrderId());
+        for (int f = 0; f < FACTOR_COUNT; f++) {
+            features[f] = featureService.extractFeatureMatrix(ids, single, f + 1)[0];
+        }
+
+        Set<String> result = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            State current = state;
+            if (current == null) {
+                return result;
+            }
+            // 标准化与查询使用同一个State；多取一个，目标自身在索引中时会占掉一个名额
+            for (int f = 0; f < FACTOR_COUNT; f++) {
+                for (int node : current.indexes[f].search(current.vector(f, features[f]), candidatesPerFactor + 1)) {
+                    result.add(nodeIds.get(node));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.remove(target.getOrderId());
+        return result;
+    }
+
+    /**
+     * 标记删除订单的当前节点（须持有写锁）
+     */
+    private void delete(State current, String orderId) {
+        Integer node = nodeIndex.remove(orderId);
+        if (node != null) {
+            for (int f = 0; f < FACTOR_COUNT; f++) {
+                current.indexes[f].markDeleted(node);
+            }
+            indexedSeries.remove(orderId);
+        }
+    }
+
+    /**
+     * 一次build拟合的标准化参数及据此建立的各因子索引，作为整体发布
+     */
+    private static class State {
+        final StandardScaler[] scalers;
+        final HnswIndex[] indexes;
+
+        State(StandardScaler[] scalers, HnswIndex[] indexes) {
+            this.scalers = scalers;
+            this.indexes = indexes;
+        }
+
+        double[] vector(int factor, double[] features) {
+            return factor == 0 ? scalers[factor].transform(features) : scalers[factor].transformClosePrices(features);
+        }
+    }
+}
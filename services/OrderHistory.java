@@ -0,0 +1,142 @@
+package com.demo.extract.services;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只追加的历史订单存储
+ * 同时维护完整订单（enhancedDict）与按比例截取后的订单（enhancedDictLength）。
+ * 写入方串行追加新订单或延长后的订单，只为变化的订单生成截取副本，再以写时复制的方式发布新的不可变快照；
+ * 查询方通过snapshot()读取当前快照，不会被写入阻塞。
+ */
+public class OrderHistory {
+
+    private final double ratio;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), 0);
+
+    /**
+     * 构造函数
+     * @param ratio 截取比例，截取长度为(int)(序列长度 * ratio)
+     */
+    public OrderHistory(double ratio) {
+        this.ratio = ratio;
+    }
+
+    /**
+     * 当前快照（不可变，可跨线程长期持有）
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 追加历史订单：完整数据原样保存，参与相似度计算的数据按比例截取
+     * @return 新增或发生变化的订单ID
+     */
+    public List<String> append(Collection<OrderTimeSeries> orders) {
+        return publish(orders, true);
+    }
+
+    /**
+     * 追加目标订单：完整数据与参与相似度计算的数据为同一对象，不截取
+     * @return 新增或发生变化的订单ID
+     */
+    public List<String> appendTargets(Collection<OrderTimeSeries> orders) {
+        return publish(orders, false);
+    }
+
+    private synchronized List<String> publish(Collection<OrderTimeSeries> orders, boolean truncate) {
+        Snapshot current = snapshot;
+        List<String> changed = new ArrayList<>();
+        List<OrderTimeSeries> full = new ArrayList<>();
+        List<OrderTimeSeries> truncated = new ArrayList<>();
+        for (OrderTimeSeries order : orders) {
+            OrderTimeSeries existing = current.full.get(order.getOrderId());
+            // 同一对象重复推送时跳过；同ID的新对象视为延长后的订单，替换原数据
+            if (existing == order) {
+                continue;
+            }
+            changed.add(order.getOrderId());
+            full.add(order);
+            truncated.add(truncate ? truncate(order, ratio) : order);
+        }
+        if (changed.isEmpty()) {
+            return changed;
+        }
+
+        Map<String, OrderTimeSeries> nextFull = new HashMap<>(current.full);
+        Map<String, OrderTimeSeries> nextTruncated = new HashMap<>(current.truncated);
+        for (int i = 0; i < changed.size(); i++) {
+            nextFull.put(changed.get(i), full.get(i));
+            nextTruncated.put(changed.get(i), truncated.get(i));
+        }
+        snapshot = new Snapshot(nextFull, nextTruncated, current.version + 1);
+        return changed;
+    }
+
+    /**
+     * 按比例截取订单的各因子序列（前ratio部分）
+     */
+    public static OrderTimeSeries truncate(OrderTimeSeries order, double ratio) {
+        OrderTimeSeries lengthOrder = new OrderTimeSeries();
+        int endIndex = (int) (order.getValues().length * ratio);
+        lengthOrder.setValues(Arrays.copyOfRange(order.getValues(), 0, endIndex));
+        lengthOrder.setTimestamps(Arrays.copyOfRange(order.getTimestamps(), 0, endIndex));
+        lengthOrder.setOrderId(order.getOrderId());
+
+        lengthOrder.setClose(Arrays.copyOfRange(order.getClose(), 0, endIndex));//3.添加因子步骤 属性注入
+        lengthOrder.setOpen(Arrays.copyOfRange(order.getOpen(), 0, endIndex));
+        lengthOrder.setAtr(Arrays.copyOfRange(order.getAtr(), 0, endIndex));
+        lengthOrder.setTH(Arrays.copyOfRange(order.getTH(), 0, endIndex));
+        lengthOrder.setTL(Arrays.copyOfRange(order.getTL(), 0, endIndex));
+        lengthOrder.setValueTime(Arrays.copyOfRange(order.getValueTime(), 0, endIndex));
+        return lengthOrder;
+    }
+
+    /**
+     * 某一时刻的历史订单（不可变）
+     */
+    public static class Snapshot {
+        private final Map<String, OrderTimeSeries> full;
+        private final Map<String, OrderTimeSeries> truncated;
+        private final long version;
+
+        Snapshot(Map<String, OrderTimeSeries> full, Map<String, OrderTimeSeries> truncated, long version) {
+            this.full = Collections.unmodifiableMap(full);
+            this.truncated = Collections.unmodifiableMap(truncated);
+            this.version = version;
+        }
+
+        /**
+         * 完整订单数据（enhancedDict）
+         */
+        public Map<String, OrderTimeSeries> full() {
+            return full;
+        }
+
+        /**
+         * 截取后的订单数据（enhancedDictLength）
+         */
+        public Map<String, OrderTimeSeries> truncated() {
+            return truncated;
+        }
+
+        /**
+         * 快照版本号，每次发布加1
+         */
+        public long version() {
+            return version;
+        }
+
+        public int size() {
+            return full.size();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.demo.extract.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 对称两两距离矩阵（压缩上三角存储）
+ * 每对订单只计算一次，按 tile×tile 分块并行填充；单个目标的距离向量通过读取一行得到。
+ * 对角线（订单与自身）距离为0，不占存储。
+ */
+public class PairwiseDistanceMatrix {
+
+    /**
+     * 一对订单（下标）的距离函数，需满足 d(i, j) = d(j, i)
+     */
+    @FunctionalInterface
+    public interface PairDistance {
+        double apply(int i, int j);
+    }
+
+    private static final int DEFAULT_TILE = 64;
+    // 压缩数组的最大长度（部分JVM在数组头中保留若干个元素的空间）
+    private static final long MAX_PACKED_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int size;
+    private final double[] packed; // 按行存放 i < j 的元素
+
+    private PairwiseDistanceMatrix(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("订单数量不能为负数: " + size);
+        }
+        long length = (long) size * (size - 1) / 2;
+        if (length > MAX_PACKED_LENGTH) {
+            throw new IllegalArgumentException("订单数量过多: " + size + "个订单的上三角需要" + length
+                    + "个元素，超过数组上限" + MAX_PACKED_LENGTH + "（单个分组最多" + maxSize() + "个订单）");
+        }
+        this.size = size;
+        this.packed = new double[(int) length];
+    }
+
+    /**
+     * 可存放的最大订单数量（上三角元素个数不超过数组上限）
+     */
+    public static int maxSize() {
+        long n = (long) Math.sqrt(2.0 * MAX_PACKED_LENGTH) + 1;
+        while (n * (n - 1) / 2 > MAX_PACKED_LENGTH) {
+            n--;
+        }
+        return (int) n;
+    }
+
+    /**
+     * 分块并行计算上三角
+     * @param size 订单数量
+     * @param distance 距离函数
+     * @param executor 线程池
+     */
+    public static PairwiseDistanceMatrix compute(int size, PairDistance distance, ExecutorService executor) {
+        return compute(size, distance, DEFAULT_TILE, executor);
+    }
+
+    public static PairwiseDistanceMatrix compute(int size, PairDistance distance, int tile, ExecutorService executor) {
+        PairwiseDistanceMatrix matrix = new PairwiseDistanceMatrix(size);
+        int step = Math.max(1, tile);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int rowStart = 0; rowStart < size; rowStart += step) {
+            for (int colStart = rowStart; colStart < size; colStart += step) {
+                final int r0 = rowStart;
+                final int c0 = colStart;
+                final int r1 = Math.min(size, rowStart + step);
+                final int c1 = Math.min(size, colStart + step);
+                tasks.add(() -> {
+                    for (int i = r0; i < r1; i++) {
+                        int base = matrix.rowOffset(i);
+                        for (int j = Math.max(c0, i + 1); j < c1; j++) {
+                            matrix.packed[base + j] = distance.apply(i, j);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("两两距离计算中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("两两距离计算失败", e.getCause());
+        }
+        return matrix;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double get(int i, int j) {
+        if (i == j) {
+            return 0.0;
+        }
+        if (i > j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        return packed[rowOffset(i) + j];
+    }
+
+    /**
+     * 第i个订单到所有订单的距离
+     */
+    public double[] row(int i) {
+        double[] row = new double[size];
+        for (int j = 0; j < i; j++) {
+            row[j] = packed[rowOffset(j) + i];
+        }
+        int base = rowOffset(i);
+        for (int j = i + 1; j < size; j++) {
+            row[j] = packed[base + j];
+        }
+        return row;
+    }
+
+    /**
+     * 第i行在压缩数组中的偏移（再加列下标j即为元素位置）
+     */
+    private int rowOffset(int i) {
+        return (int) ((long) i * (2L * size - i - 1) / 2 - i - 1);
+    }
+}
@@ -0,0 +1,50 @@
+package com.demo.extract.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * 在工作窃取线程池中按下标并行处理输入，结果按输入顺序返回
+ * MarkovBatchAnalyzer与TargetBatchScheduler共用
+ */
+final class ParallelMap {
+
+    private ParallelMap() {
+    }
+
+    /**
+     * 并行处理全部输入
+     * @param pool 执行的线程池
+     * @param inputs 输入
+     * @param task 单个输入的处理函数，需线程安全
+     * @param onFailure 单个输入失败时的回调（异常、下标），对应位置的结果为null
+     * @param taskName 任务名称，用于中断或失败时的异常信息
+     * @return 处理结果，顺序与输入一致
+     */
+    static <T, R> List<R> map(ForkJoinPool pool, List<T> inputs, Function<T, R> task,
+                              ObjIntConsumer<Exception> onFailure, String taskName) {
+        int size = inputs.size();
+        List<R> results = new ArrayList<>(Collections.nCopies(size, null));
+        try {
+            pool.submit(() -> IntStream.range(0, size).parallel().forEach(i -> {
+                try {
+                    results.set(i, task.apply(inputs.get(i)));
+                } catch (Exception e) {
+                    onFailure.accept(e, i);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(taskName + "中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(taskName + "失败", e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,89 @@
+package com.demo.extract.services;
+
+import com.demo.extract.util.TopKSelector;
+
+/**
+ * 融合评分内核
+ * 在一块预分配的缓冲区上依次完成 距离→相似度(1/(1+d))、数值稳定的Softmax 和 TopK 选择，
+ * 替代每个因子各自分配combined数组、多次Arrays.stream遍历再排序的做法。
+ * 实例持有缓冲区，非线程安全，每次相似订单查找使用一个实例即可。
+ */
+public class SimilarityScorer {
+
+    /**
+     * 评分因子声明：新增因子只需在因子列表中追加一项
+     */
+    public static class Factor {
+        private final String name;
+        private final int source;   // 距离数组在输入中的下标
+        private final double weight; // 相似度系数
+
+        public Factor(String name, int source, double weight) {
+            this.name = name;
+            this.source = source;
+            this.weight = weight;
+        }
+
+        public String getName() { return name; }
+        public int getSource() { return source; }
+        public double getWeight() { return weight; }
+    }
+
+    private double[] weights;
+
+    public SimilarityScorer(int size) {
+        this.weights = new double[size];
+    }
+
+    /**
+     * 计算单个因子的Softmax权重并返回TopK下标
+     * 与原实现一致：目标订单自身的得分记为0并参与Softmax归一化，但不参与TopK
+     * @param distances 各候选订单的距离
+     * @param factorWeight 相似度系数
+     * @param targetIdx 目标订单下标
+     * @param topN 返回数量
+     * @return 按权重降序排列的候选下标，对应权重可通过 {@link #weightAt(int)} 获取
+     */
+    public int[] score(double[] distances, double factorWeight, int targetIdx, int topN) {
+        int n = distances.length;
+        if (weights.length < n) {
+            weights = new double[n];
+        }
+
+        // 相似度与最大值（防溢出）
+        double maxScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double s = i == targetIdx ? 0.0 : factorWeight * (1 / (1 + distances[i]));
+            weights[i] = s;
+            maxScore = Math.max(maxScore, s);
+        }
+        if (n == 0) {
+            return new int[0];
+        }
+
+        // 指数与补偿求和（与DoubleStream.sum同为Kahan求和）
+        double sumExp = 0.0;
+        double compensation = 0.0;
+        for (int i = 0; i < n; i++) {
+            double e = Math.exp(weights[i] - maxScore);
+            weights[i] = e;
+            double y = e - compensation;
+            double t = sumExp + y;
+            compensation = (t - sumExp) - y;
+            sumExp = t;
+        }
+        double denominator = sumExp + 1e-8; // 防止除零
+        for (int i = 0; i < n; i++) {
+            weights[i] /= denominator;
+        }
+
+        return TopKSelector.topK(weights, n, topN, targetIdx);
+    }
+
+    /**
+     * 最近一次score调用中第i个候选的Softmax权重
+     */
+    public double weightAt(int i) {
+        return weights[i];
+    }
+}
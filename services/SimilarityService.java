@@ -2,7 +2,6 @@ package com.demo.extract.services;
 
 import com.demo.extract.DTO.AnalysisResult;
 import com.demo.extract.DTO.FinancialDataPoint;
-import com.demo.extract.DTO.OrderFeatures;
 import com.demo.extract.DTO.OrderTimeSeries;
 import com.demo.extract.DTO.OverallEvaluation;
 import com.demo.extract.DTO.ProphetResponse;
@@ -14,26 +13,38 @@ import com.demo.extract.model.DecisionResult;
 import com.demo.extract.model.ThreeMarkovModel;
 import com.demo.extract.test.KlineDataTest;
 import com.demo.extract.util.StandardScaler;
-import com.demo.extract.zzq.ZZQDataLoader;
-import com.demo.extract.zzq.dto.zzqdto;
+import com.demo.extract.util.TopKSelector;
+import com.demo.extract.zzq.ZZQSignalStore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.Getter;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.DoubleSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 
 
 public class SimilarityService {
+    private static final int FACTOR_TYPES = 6; // 收益、收盘价、开盘价、ATR、通道上轨、通道下轨
+    private static final String ZZQ_GBPJPY_15MIN = "D:/data/章铮奇/gbpjpy_15min.csv";
     private final ExecutorService executor;
     private final FeatureService featureService;
     private final StandardScaler scaler;
     private final markovClient markovClient;
+    // 多因子共识排序：Borda融合，至少出现在两个因子的TopN中
+    private final ConsensusRanker consensusRanker = new ConsensusRanker(ConsensusRanker.Method.BORDA, 2);
+    // 近似最近邻候选预筛，[0]多单分组、[1]空单分组（为null时对全部订单计算精确距离）
+    private volatile OrderFeatureIndex[] featureIndexes;
+    // 持久化两两距离缓存（为null时不缓存）
+    private volatile DistanceCache distanceCache;
+    // 批量回测时目标级并行度，默认CPU核数
+    private int batchParallelism = Runtime.getRuntime().availableProcessors();
 
     // 实际Spring Boot应用中通过依赖注入
     RestTemplate restTemplate = new RestTemplate();
@@ -47,6 +58,124 @@ public class SimilarityService {
 
     }
 
+    /**
+     * 设置批量回测的目标级并行度
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = Math.max(1, batchParallelism);
+    }
+
+    /**
+     * 开启近似最近邻候选预筛：每个目标只对各因子特征近邻的并集计算DTW等精确距离，
+     * 其余订单距离记为无穷大（相似度为0）。多、空分组各建一个索引，在首次评估时建立，之后新增订单增量插入。
+     * 默认关闭，开启前应用EndToEndBenchmark对比精确结果确认召回率。
+     * @param candidatesPerFactor 每个因子保留的近邻数量（应不小于相似订单TopN）
+     * @param recallTarget 近邻查询相对暴力扫描的目标召回率，如0.95
+     */
+    public void enableAnnPrefilter(int candidatesPerFactor, double recallTarget) {
+        this.featureIndexes = new OrderFeatureIndex[]{
+                new OrderFeatureIndex(featureService, candidatesPerFactor, recallTarget),
+                new OrderFeatureIndex(featureService, candidatesPerFactor, recallTarget)};
+    }
+
+    public void disableAnnPrefilter() {
+        this.featureIndexes = null;
+    }
+
+    /**
+     * 近邻索引校准后的召回率（多、空分组中的较小值），未开启预筛或尚未建立索引时返回NaN
+     */
+    public double getAnnRecall() {
+        OrderFeatureIndex[] indexes = featureIndexes;
+        if (indexes == null) {
+            return Double.NaN;
+        }
+        double recall = Double.NaN;
+        for (OrderFeatureIndex index : indexes) {
+            if (index.isBuilt()) {
+                recall = Double.isNaN(recall) ? index.getCalibratedRecall() : Math.min(recall, index.getCalibratedRecall());
+            }
+        }
+        return recall;
+    }
+
+    /**
+     * 开启持久化距离缓存，重复回测时只计算内容或参数变化的订单对
+     * @param cacheFile 缓存文件路径（不存在时自动创建）
+     */
+    public void enableDistanceCache(Path cacheFile) throws IOException {
+        DistanceCache previous = distanceCache;
+        this.distanceCache = DistanceCache.open(cacheFile);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * 经缓存计算一对订单的距离，未开启缓存时直接计算
+     */
+    private double cachedDistance(DistanceCache cache, DistanceCache.Metric metric, long targetHash,
+                                  OrderTimeSeries candidate, Integer type, double testRatio, int window,
+                                  DoubleSupplier compute) {
+        if (cache == null) {
+            return compute.getAsDouble();
+        }
+        long candidateHash = DistanceCache.contentHash(featureService.selectValues(candidate, type));
+        return cache.computeIfAbsent(targetHash, candidateHash, metric, type, testRatio, window, compute);
+    }
+
+    /**
+     * 增量维护近邻索引（常驻决策引擎在发布新分组时调用），未开启预筛时忽略
+     * @param direction 分组方向（1多，-1空）
+     * @param groupIds 更新后的分组订单，索引尚未建立时用于建立索引
+     * @param removedIds 移出分组的订单（不在该分组中的忽略）
+     * @param upsertIds 新加入或数据已变化的订单，删除旧节点后按新数据插入
+     */
+    void updateFeatureIndex(int direction, List<String> groupIds, Collection<String> removedIds,
+                            List<String> upsertIds, Map<String, OrderTimeSeries> group) {
+        OrderFeatureIndex[] indexes = featureIndexes;
+        if (indexes == null) {
+            return;
+        }
+        OrderFeatureIndex index = indexes[direction > 0 ? 0 : 1];
+        synchronized (index) {
+            if (!index.isBuilt()) {
+                if (!groupIds.isEmpty()) {
+                    index.build(groupIds, group);
+                }
+            } else {
+                index.update(removedIds, upsertIds, group);
+            }
+        }
+    }
+
+    /**
+     * 计算候选掩码，未开启预筛时返回null
+     * @param orderIds 目标所在分组的订单（与目标方向一致）
+     * @param sync 是否先使索引与分组一致（批量回测）；为false时索引由调用方通过updateFeatureIndex维护，尚未建立时不预筛
+     */
+    private boolean[] prefilterCandidates(OrderTimeSeries target, List<String> orderIds,
+                                          Map<String, OrderTimeSeries> enhancedDictLength, boolean sync) {
+        OrderFeatureIndex[] indexes = featureIndexes;
+        int direction = directionOf(target);
+        if (indexes == null || direction == 0) {
+            return null;
+        }
+        OrderFeatureIndex index = indexes[direction > 0 ? 0 : 1];
+        if (sync) {
+            index.sync(orderIds, enhancedDictLength);
+        } else if (!index.isBuilt()) {
+            return null;
+        }
+
+        Set<String> candidateIds = index.candidates(target);
+        boolean[] mask = new boolean[orderIds.size()];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = candidateIds.contains(orderIds.get(i));
+        }
+        return mask;
+    }
+
     /*public List<DecisionResult> batchTestAllOrders(
             Map<String, OrderTimeSeries> enhancedDict,
             double testRatio,
@@ -71,109 +200,13 @@ public class SimilarityService {
             //throw new  RuntimeException("空值id=="+targetOrderId);
             return null;
         }
-        List<OrderFeatures> features = new ArrayList<>(); // 1. 提取特征(收益)
-        List<OrderFeatures> featuresClose = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresOpen = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresAtr = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTH = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTL = new ArrayList<>(); //1-1 提取特征(close)
-        for(String id : orderIds){
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(id);
-            OrderFeatures time = featureService.extractFeatures(orderTimeSeries, 1);
-            features.add(time);
-            OrderFeatures close = featureService.extractFeatures(orderTimeSeries, 2);
-            featuresClose.add(close);
-            OrderFeatures open = featureService.extractFeatures(orderTimeSeries, 3);
-            featuresOpen.add(open);
-            OrderFeatures atr = featureService.extractFeatures(orderTimeSeries, 4);
-            featuresAtr.add(atr);
-            OrderFeatures th = featureService.extractFeatures(orderTimeSeries, 5);
-            featuresTH.add(th);
-            OrderFeatures tl = featureService.extractFeatures(orderTimeSeries, 6);
-            featuresTL.add(tl);
-        }
-
-
-        // 2. 标准化特征（收益）
-        double[][] featureMatrix = features.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeatures = scaler.standardize(featureMatrix);
-
-        // 2-1. 标准化特征（收益） 5.添加因子步骤 标准化
-        double[][] featureMatrixClose = featuresClose.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesClose = scaler.preprocessClosePrices(featureMatrixClose);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixOpen = featuresOpen.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesOpen = scaler.preprocessClosePrices(featureMatrixOpen);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixAtr = featuresAtr.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesAtr = scaler.preprocessClosePrices(featureMatrixAtr);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTH = featuresTH.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTH = scaler.preprocessClosePrices(featureMatrixTH);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTL = featuresTL.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTL = scaler.preprocessClosePrices(featureMatrixTL);
-
-
-
-        // 3. 计算相似度(收益)
-        double[] dtwDistances = computeDtwDistances(target, enhancedDictLength, orderIds, testRatio,1);
-        // 3.1 计算相似度(close)6.添加因子步骤 计算相似度
-        double[] dtwDistancesClose = computeDtwDistances(target, enhancedDictLength, orderIds, testRatio,2);
-
-        double[] dtwDistancesOpen = computeDtwDistances(target, enhancedDictLength, orderIds, testRatio,3);
-
-        double[] dtwDistancesAtr = computeDtwDistances(target, enhancedDictLength, orderIds, testRatio,4);
-
-        double[] dtwDistancesTH = computeDtwDistances(target, enhancedDictLength, orderIds, testRatio,5);
-
-        double[] dtwDistancesTL = computeDtwDistances(target, enhancedDictLength, orderIds, testRatio,6);
-
-
-
-        double[][] cosineSim = new CosineSimilarity().compute(scaledFeatures);
-        double[][] cosineSimClose = new CosineSimilarity().compute(scaledFeaturesClose);
-        double[][] cosineSimOpen = new CosineSimilarity().compute(scaledFeaturesOpen);
-        double[][] cosineSimAtr = new CosineSimilarity().compute(scaledFeaturesAtr);
-        double[][] cosineSimTH = new CosineSimilarity().compute(scaledFeaturesTH);
-        double[][] cosineSimTL = new CosineSimilarity().compute(scaledFeaturesTL);
-
-
-
-        // 4. 查找相似订单
-        int targetIdx = orderIds.indexOf(targetOrderId);
-        List<SimilarOrder> similarOrders = findSimilarOrders(
-                targetIdx,
-                orderIds,
-                dtwDistances,
-                cosineSim[targetIdx],
-                11,dtwDistancesClose,
-                cosineSimClose[targetIdx],
-                dtwDistancesOpen,
-                cosineSimOpen[targetIdx],
-                dtwDistancesAtr,
-                cosineSimAtr[targetIdx],dtwDistancesTH,
-                cosineSimTH[targetIdx],dtwDistancesTL,cosineSimTL[targetIdx]
-                );
-
-        // 5. 评估决策
-        return evaluateDecision(targetOrderId, enhancedDict, similarOrders);
+        boolean[] candidates = prefilterCandidates(target, orderIds, enhancedDictLength, true);
+        // 按因子类型（收益、收盘价、开盘价、ATR、通道上轨、通道下轨）计算距离  6.添加因子步骤 计算相似度
+        double[][] distances = new double[FACTOR_TYPES][];
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            distances[type - 1] = computeDtwDistances(target, enhancedDictLength, orderIds, testRatio, type, candidates);
+        }
+        return evaluateWithDistances(targetOrderId, enhancedDict, enhancedDictLength, orderIds, distances);
     }
 
     private DecisionResult evaluateOrderMHT(
@@ -187,109 +220,13 @@ public class SimilarityService {
             //throw new  RuntimeException("空值id=="+targetOrderId);
             return null;
         }
-        List<OrderFeatures> features = new ArrayList<>(); // 1. 提取特征(收益)
-        List<OrderFeatures> featuresClose = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresOpen = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresAtr = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTH = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTL = new ArrayList<>(); //1-1 提取特征(close)
-        for(String id : orderIds){
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(id);
-            OrderFeatures time = featureService.extractFeatures(orderTimeSeries, 1);
-            features.add(time);
-            OrderFeatures close = featureService.extractFeatures(orderTimeSeries, 2);
-            featuresClose.add(close);
-            OrderFeatures open = featureService.extractFeatures(orderTimeSeries, 3);
-            featuresOpen.add(open);
-            OrderFeatures atr = featureService.extractFeatures(orderTimeSeries, 4);
-            featuresAtr.add(atr);
-            OrderFeatures th = featureService.extractFeatures(orderTimeSeries, 5);
-            featuresTH.add(th);
-            OrderFeatures tl = featureService.extractFeatures(orderTimeSeries, 6);
-            featuresTL.add(tl);
-        }
-
-
-        // 2. 标准化特征（收益）
-        double[][] featureMatrix = features.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeatures = scaler.standardize(featureMatrix);
-
-        // 2-1. 标准化特征（收益） 5.添加因子步骤 标准化
-        double[][] featureMatrixClose = featuresClose.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesClose = scaler.preprocessClosePrices(featureMatrixClose);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixOpen = featuresOpen.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesOpen = scaler.preprocessClosePrices(featureMatrixOpen);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixAtr = featuresAtr.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesAtr = scaler.preprocessClosePrices(featureMatrixAtr);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTH = featuresTH.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTH = scaler.preprocessClosePrices(featureMatrixTH);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTL = featuresTL.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTL = scaler.preprocessClosePrices(featureMatrixTL);
-
-
-
-        // 3. 计算相似度(收益)
-        double[] mhtDistances = computeMHTDistances(target, enhancedDictLength, orderIds, testRatio,1);
-        // 3.1 计算相似度(close)6.添加因子步骤 计算相似度
-        double[] mhtDistancesClose = computeMHTDistances(target, enhancedDictLength, orderIds, testRatio,2);
-
-        double[] mhtDistancesOpen = computeMHTDistances(target, enhancedDictLength, orderIds, testRatio,3);
-
-        double[] mhtDistancesAtr = computeMHTDistances(target, enhancedDictLength, orderIds, testRatio,4);
-
-        double[] mhtDistancesTH = computeMHTDistances(target, enhancedDictLength, orderIds, testRatio,5);
-
-        double[] mhtDistancesTL = computeMHTDistances(target, enhancedDictLength, orderIds, testRatio,6);
-
-
-
-        double[][] cosineSim = new CosineSimilarity().compute(scaledFeatures);
-        double[][] cosineSimClose = new CosineSimilarity().compute(scaledFeaturesClose);
-        double[][] cosineSimOpen = new CosineSimilarity().compute(scaledFeaturesOpen);
-        double[][] cosineSimAtr = new CosineSimilarity().compute(scaledFeaturesAtr);
-        double[][] cosineSimTH = new CosineSimilarity().compute(scaledFeaturesTH);
-        double[][] cosineSimTL = new CosineSimilarity().compute(scaledFeaturesTL);
-
-
-
-        // 4. 查找相似订单
-        int targetIdx = orderIds.indexOf(targetOrderId);
-        List<SimilarOrder> similarOrders = findSimilarOrders(
-                targetIdx,
-                orderIds,
-                mhtDistances,
-                cosineSim[targetIdx],
-                11,mhtDistancesClose,
-                cosineSimClose[targetIdx],
-                mhtDistancesOpen,
-                cosineSimOpen[targetIdx],
-                mhtDistancesAtr,
-                cosineSimAtr[targetIdx],mhtDistancesTH,
-                cosineSimTH[targetIdx],mhtDistancesTL,cosineSimTL[targetIdx]
-        );
-
-        // 5. 评估决策
-        return evaluateDecision(targetOrderId, enhancedDict, similarOrders);
+        boolean[] candidates = prefilterCandidates(target, orderIds, enhancedDictLength, true);
+        // 按因子类型（收益、收盘价、开盘价、ATR、通道上轨、通道下轨）计算距离  6.添加因子步骤 计算相似度
+        double[][] distances = new double[FACTOR_TYPES][];
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            distances[type - 1] = computeMHTDistances(target, enhancedDictLength, orderIds, testRatio, type, candidates);
+        }
+        return evaluateWithDistances(targetOrderId, enhancedDict, enhancedDictLength, orderIds, distances);
     }
     private DecisionResult evaluateOrderPC(
             String targetOrderId,
@@ -302,189 +239,50 @@ public class SimilarityService {
             //throw new  RuntimeException("空值id=="+targetOrderId);
             return null;
         }
-        List<OrderFeatures> features = new ArrayList<>(); // 1. 提取特征(收益)
-        List<OrderFeatures> featuresClose = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresOpen = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresAtr = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTH = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTL = new ArrayList<>(); //1-1 提取特征(close)
-        for(String id : orderIds){
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(id);
-            OrderFeatures time = featureService.extractFeatures(orderTimeSeries, 1);
-            features.add(time);
-            OrderFeatures close = featureService.extractFeatures(orderTimeSeries, 2);
-            featuresClose.add(close);
-            OrderFeatures open = featureService.extractFeatures(orderTimeSeries, 3);
-            featuresOpen.add(open);
-            OrderFeatures atr = featureService.extractFeatures(orderTimeSeries, 4);
-            featuresAtr.add(atr);
-            OrderFeatures th = featureService.extractFeatures(orderTimeSeries, 5);
-            featuresTH.add(th);
-            OrderFeatures tl = featureService.extractFeatures(orderTimeSeries, 6);
-            featuresTL.add(tl);
-        }
-
-
-        // 2. 标准化特征（收益）
-        double[][] featureMatrix = features.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeatures = scaler.standardize(featureMatrix);
-
-        // 2-1. 标准化特征（收益） 5.添加因子步骤 标准化
-        double[][] featureMatrixClose = featuresClose.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesClose = scaler.preprocessClosePrices(featureMatrixClose);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixOpen = featuresOpen.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesOpen = scaler.preprocessClosePrices(featureMatrixOpen);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixAtr = featuresAtr.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesAtr = scaler.preprocessClosePrices(featureMatrixAtr);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTH = featuresTH.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTH = scaler.preprocessClosePrices(featureMatrixTH);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTL = featuresTL.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTL = scaler.preprocessClosePrices(featureMatrixTL);
-
-
-
-        // 3. 计算相似度(收益)
-        double[] mhtDistances = computePCDistances(target, enhancedDictLength, orderIds, testRatio,1);
-        // 3.1 计算相似度(close)6.添加因子步骤 计算相似度
-        double[] mhtDistancesClose = computePCDistances(target, enhancedDictLength, orderIds, testRatio,2);
-
-        double[] mhtDistancesOpen = computePCDistances(target, enhancedDictLength, orderIds, testRatio,3);
-
-        double[] mhtDistancesAtr = computePCDistances(target, enhancedDictLength, orderIds, testRatio,4);
-
-        double[] mhtDistancesTH = computePCDistances(target, enhancedDictLength, orderIds, testRatio,5);
-
-        double[] mhtDistancesTL = computePCDistances(target, enhancedDictLength, orderIds, testRatio,6);
-
-
-
-        double[][] cosineSim = new CosineSimilarity().compute(scaledFeatures);
-        double[][] cosineSimClose = new CosineSimilarity().compute(scaledFeaturesClose);
-        double[][] cosineSimOpen = new CosineSimilarity().compute(scaledFeaturesOpen);
-        double[][] cosineSimAtr = new CosineSimilarity().compute(scaledFeaturesAtr);
-        double[][] cosineSimTH = new CosineSimilarity().compute(scaledFeaturesTH);
-        double[][] cosineSimTL = new CosineSimilarity().compute(scaledFeaturesTL);
-
-
-
-        // 4. 查找相似订单
-        int targetIdx = orderIds.indexOf(targetOrderId);
-        List<SimilarOrder> similarOrders = findSimilarOrders(
-                targetIdx,
-                orderIds,
-                mhtDistances,
-                cosineSim[targetIdx],
-                11,mhtDistancesClose,
-                cosineSimClose[targetIdx],
-                mhtDistancesOpen,
-                cosineSimOpen[targetIdx],
-                mhtDistancesAtr,
-                cosineSimAtr[targetIdx],mhtDistancesTH,
-                cosineSimTH[targetIdx],mhtDistancesTL,cosineSimTL[targetIdx]
-        );
-
-        // 5. 评估决策
-        return evaluateDecision(targetOrderId, enhancedDict, similarOrders);
+        boolean[] candidates = prefilterCandidates(target, orderIds, enhancedDictLength, true);
+        // 按因子类型（收益、收盘价、开盘价、ATR、通道上轨、通道下轨）计算距离  6.添加因子步骤 计算相似度
+        double[][] distances = new double[FACTOR_TYPES][];
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            distances[type - 1] = computePCDistances(target, enhancedDictLength, orderIds, testRatio, type, candidates);
+        }
+        return evaluateWithDistances(targetOrderId, enhancedDict, enhancedDictLength, orderIds, distances);
     }
 
 
 
     public void getExtract(List<String> orderIds, Map<String, OrderTimeSeries> enhancedDictLength,double testRatio,OrderTimeSeries target){
+        boolean[] candidates = null;
 
-        List<OrderFeatures> features = new ArrayList<>(); // 1. 提取特征(收益)
-        List<OrderFeatures> featuresClose = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresOpen = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresAtr = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTH = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTL = new ArrayList<>(); //1-1 提取特征(close)
-
-        for(String id : orderIds){
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(id);
-            OrderFeatures time = featureService.extractFeatures(orderTimeSeries, 1);
-            features.add(time);
-            OrderFeatures close = featureService.extractFeatures(orderTimeSeries, 2);
-            featuresClose.add(close);
-            OrderFeatures open = featureService.extractFeatures(orderTimeSeries, 3);
-            featuresOpen.add(open);
-            OrderFeatures atr = featureService.extractFeatures(orderTimeSeries, 4);
-            featuresAtr.add(atr);
-            OrderFeatures th = featureService.extractFeatures(orderTimeSeries, 5);
-            featuresTH.add(th);
-            OrderFeatures tl = featureService.extractFeatures(orderTimeSeries, 6);
-            featuresTL.add(tl);
-        }
-
-
-        // 2. 标准化特征（收益）
-        double[][] featureMatrix = features.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeatures = scaler.standardize(featureMatrix);
+        // 1. 提取特征，直接写入各因子的特征矩阵（收益、收盘价、开盘价、ATR、通道上轨、通道下轨）
+        double[][] featureMatrix = featureService.extractFeatureMatrix(orderIds, enhancedDictLength, 1);
+        double[][] featureMatrixClose = featureService.extractFeatureMatrix(orderIds, enhancedDictLength, 2);
+        double[][] featureMatrixOpen = featureService.extractFeatureMatrix(orderIds, enhancedDictLength, 3);
+        double[][] featureMatrixAtr = featureService.extractFeatureMatrix(orderIds, enhancedDictLength, 4);
+        double[][] featureMatrixTH = featureService.extractFeatureMatrix(orderIds, enhancedDictLength, 5);
+        double[][] featureMatrixTL = featureService.extractFeatureMatrix(orderIds, enhancedDictLength, 6);
 
-        // 2-1. 标准化特征（收益） 5.添加因子步骤 标准化
-        double[][] featureMatrixClose = featuresClose.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
+        // 2. 标准化特征（收益） 5.添加因子步骤 标准化
+        double[][] scaledFeatures = scaler.standardize(featureMatrix);
         double[][] scaledFeaturesClose = scaler.preprocessClosePrices(featureMatrixClose);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixOpen = featuresOpen.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
         double[][] scaledFeaturesOpen = scaler.preprocessClosePrices(featureMatrixOpen);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixAtr = featuresAtr.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
         double[][] scaledFeaturesAtr = scaler.preprocessClosePrices(featureMatrixAtr);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTH = featuresTH.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
         double[][] scaledFeaturesTH = scaler.preprocessClosePrices(featureMatrixTH);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTL = featuresTL.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
         double[][] scaledFeaturesTL = scaler.preprocessClosePrices(featureMatrixTL);
 
 
 
         // 3. 计算相似度(收益)
-        double[] mhtDistances = computePCDistances(target, enhancedDictLength, orderIds, testRatio,1);
+        double[] mhtDistances = computePCDistances(target, enhancedDictLength, orderIds, testRatio,1, candidates);
         // 3.1 计算相似度(close)6.添加因子步骤 计算相似度
-        double[] mhtDistancesClose = computePCDistances(target, enhancedDictLength, orderIds, testRatio,2);
+        double[] mhtDistancesClose = computePCDistances(target, enhancedDictLength, orderIds, testRatio,2, candidates);
 
-        double[] mhtDistancesOpen = computePCDistances(target, enhancedDictLength, orderIds, testRatio,3);
+        double[] mhtDistancesOpen = computePCDistances(target, enhancedDictLength, orderIds, testRatio,3, candidates);
 
-        double[] mhtDistancesAtr = computePCDistances(target, enhancedDictLength, orderIds, testRatio,4);
+        double[] mhtDistancesAtr = computePCDistances(target, enhancedDictLength, orderIds, testRatio,4, candidates);
 
-        double[] mhtDistancesTH = computePCDistances(target, enhancedDictLength, orderIds, testRatio,5);
+        double[] mhtDistancesTH = computePCDistances(target, enhancedDictLength, orderIds, testRatio,5, candidates);
 
-        double[] mhtDistancesTL = computePCDistances(target, enhancedDictLength, orderIds, testRatio,6);
+        double[] mhtDistancesTL = computePCDistances(target, enhancedDictLength, orderIds, testRatio,6, candidates);
 
 
 
@@ -510,142 +308,278 @@ public class SimilarityService {
             //throw new  RuntimeException("空值id=="+targetOrderId);
             return null;
         }
-        List<OrderFeatures> features = new ArrayList<>(); // 1. 提取特征(收益)
-        List<OrderFeatures> featuresClose = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresOpen = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresAtr = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTH = new ArrayList<>(); //1-1 提取特征(close)
-        List<OrderFeatures> featuresTL = new ArrayList<>(); //1-1 提取特征(close)
-        for(String id : orderIds){
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(id);
-            OrderFeatures time = featureService.extractFeatures(orderTimeSeries, 1);
-            features.add(time);
-            OrderFeatures close = featureService.extractFeatures(orderTimeSeries, 2);
-            featuresClose.add(close);
-            OrderFeatures open = featureService.extractFeatures(orderTimeSeries, 3);
-            featuresOpen.add(open);
-            OrderFeatures atr = featureService.extractFeatures(orderTimeSeries, 4);
-            featuresAtr.add(atr);
-            OrderFeatures th = featureService.extractFeatures(orderTimeSeries, 5);
-            featuresTH.add(th);
-            OrderFeatures tl = featureService.extractFeatures(orderTimeSeries, 6);
-            featuresTL.add(tl);
-        }
-
-
-        // 2. 标准化特征（收益）
-        double[][] featureMatrix = features.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeatures = scaler.standardize(featureMatrix);
-
-        // 2-1. 标准化特征（收益） 5.添加因子步骤 标准化
-        double[][] featureMatrixClose = featuresClose.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesClose = scaler.preprocessClosePrices(featureMatrixClose);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixOpen = featuresOpen.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesOpen = scaler.preprocessClosePrices(featureMatrixOpen);
-
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixAtr = featuresAtr.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesAtr = scaler.preprocessClosePrices(featureMatrixAtr);
+        boolean[] candidates = prefilterCandidates(target, orderIds, enhancedDictLength, true);
+        // 按因子类型（收益、收盘价、开盘价、ATR、通道上轨、通道下轨）计算距离  6.添加因子步骤 计算相似度
+        double[][] distances = new double[FACTOR_TYPES][];
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            distances[type - 1] = computeDistancesDTW(target, enhancedDictLength, orderIds, testRatio, type, candidates);
+        }
+        return evaluateWithDistances(targetOrderId, enhancedDict, enhancedDictLength, orderIds, distances);
+    }
 
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTH = featuresTH.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTH = scaler.preprocessClosePrices(featureMatrixTH);
+    /**
+     * 在指定分组内评估单个目标订单（常驻决策引擎使用），各因子的标准化参数由调用方随分组维护
+     * @param group 目标所在分组（多/空）
+     * @param groupIds 分组订单ID，与scaling的行顺序一致
+     * @param scaling 各因子在该分组上的标准化，下标0~5对应因子类型1~6
+     * @param metric 距离度量，与对应的batchTestAllOrders*一致
+     * @param timings 分阶段耗时（可为null）
+     */
+    DecisionResult evaluateInGroup(
+            String targetOrderId,
+            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> group,
+            List<String> groupIds,
+            FactorScaling[] scaling,
+            double testRatio,
+            DistanceCache.Metric metric,
+            StageTimings timings) throws IOException {
 
-        // 2-1. 标准化特征（收益）
-        double[][] featureMatrixTL = featuresTL.stream()
-                .map(this::convertToArray)
-                .toArray(double[][]::new);
-        double[][] scaledFeaturesTL = scaler.preprocessClosePrices(featureMatrixTL);
+        OrderTimeSeries target = group.get(targetOrderId);
+        if (target == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        boolean[] candidates = prefilterCandidates(target, groupIds, group, false);
+        double[][] distances = new double[FACTOR_TYPES][];
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            distances[type - 1] = computeDistances(metric, target, group, groupIds, testRatio, type, candidates);
+        }
+        record(timings, StageTimings.Stage.DISTANCES, start);
+        return evaluateWithFeatures(targetOrderId, enhancedDict, groupIds, distances, scaling, timings);
+    }
 
+    /**
+     * 只读查询（常驻决策引擎使用）：目标不加入分组，按分组已拟合的标准化参数转换目标行，
+     * 与分组内全部订单计算距离与相似度后评估；分组、索引与历史均不改变
+     * 分组中已有同ID订单时，该行由目标数据替代，不作为候选
+     * @param target 目标订单（同时作为完整数据与参与相似度计算的数据）
+     * @param enhancedDict 完整数据（相似订单的后续走势）
+     * @param group 与目标方向一致的分组
+     * @param groupIds 分组订单ID，与scaling的行顺序一致
+     * @param scaling 各因子在该分组上的标准化，下标0~5对应因子类型1~6
+     * @param timings 分阶段耗时（可为null）
+     */
+    DecisionResult evaluateTarget(
+            OrderTimeSeries target,
+            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> group,
+            List<String> groupIds,
+            FactorScaling[] scaling,
+            double testRatio,
+            DistanceCache.Metric metric,
+            StageTimings timings) throws IOException {
 
+        String targetOrderId = target.getOrderId();
+        if (groupIds.isEmpty()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        double[][] targetRows = new double[FACTOR_TYPES][];
+        double[][][] features = extractFactorFeatures(Collections.singletonList(targetOrderId),
+                Collections.singletonMap(targetOrderId, target));
+        for (int t = 0; t < FACTOR_TYPES; t++) {
+            targetRows[t] = FactorScaling.baseRow(t + 1, features[t][0]);
+        }
+        // 目标所在行：已有同ID订单时复用其行，否则追加在末尾（只在本次查询的副本中）
+        int targetIdx = groupIds.indexOf(targetOrderId);
+        List<String> orderIds = groupIds;
+        if (targetIdx < 0) {
+            orderIds = new ArrayList<>(groupIds.size() + 1);
+            orderIds.addAll(groupIds);
+            orderIds.add(targetOrderId);
+            targetIdx = groupIds.size();
+        }
+        start = record(timings, StageTimings.Stage.FEATURES, start);
 
-        // 3. 计算相似度(收益)
-        double[] mhtDistances = computeDistancesDTW(target, enhancedDictLength, orderIds, testRatio,1);
-        // 3.1 计算相似度(close)6.添加因子步骤 计算相似度
-        double[] mhtDistancesClose = computeDistancesDTW(target, enhancedDictLength, orderIds, testRatio,2);
+        boolean[] candidates = prefilterCandidates(target, orderIds, group, false);
+        double[][] distances = new double[FACTOR_TYPES][];
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            distances[type - 1] = computeDistances(metric, target, group, orderIds, testRatio, type, candidates);
+        }
+        start = record(timings, StageTimings.Stage.DISTANCES, start);
+
+        double[][] cosineSim = new double[FACTOR_TYPES][];
+        CosineSimilarity cosine = new CosineSimilarity();
+        for (int t = 0; t < FACTOR_TYPES; t++) {
+            double[] similarities = Arrays.copyOf(scaling[t].cosineTo(targetRows[t], cosine), orderIds.size());
+            similarities[targetIdx] = 1.0; // 目标自身，不参与排序
+            cosineSim[t] = similarities;
+        }
+        start = record(timings, StageTimings.Stage.SIMILARITY, start);
+        return evaluateWithSimilarities(targetOrderId, targetIdx, withTarget(enhancedDict, target), orderIds,
+                distances, cosineSim, timings, start);
+    }
 
-        double[] mhtDistancesOpen = computeDistancesDTW(target, enhancedDictLength, orderIds, testRatio,3);
+    /**
+     * 在完整数据上叠加目标订单（只读视图，不复制原Map）
+     */
+    private static Map<String, OrderTimeSeries> withTarget(Map<String, OrderTimeSeries> enhancedDict,
+                                                           OrderTimeSeries target) {
+        String targetOrderId = target.getOrderId();
+        return new AbstractMap<String, OrderTimeSeries>() {
+            @Override
+            public OrderTimeSeries get(Object key) {
+                return targetOrderId.equals(key) ? target : enhancedDict.get(key);
+            }
 
-        double[] mhtDistancesAtr = computeDistancesDTW(target, enhancedDictLength, orderIds, testRatio,4);
+            @Override
+            public boolean containsKey(Object key) {
+                return targetOrderId.equals(key) || enhancedDict.containsKey(key);
+            }
 
-        double[] mhtDistancesTH = computeDistancesDTW(target, enhancedDictLength, orderIds, testRatio,5);
+            @Override
+            public Set<Entry<String, OrderTimeSeries>> entrySet() {
+                Map<String, OrderTimeSeries> copy = new HashMap<>(enhancedDict);
+                copy.put(targetOrderId, target);
+                return Collections.unmodifiableMap(copy).entrySet();
+            }
+        };
+    }
 
-        double[] mhtDistancesTL = computeDistancesDTW(target, enhancedDictLength, orderIds, testRatio,6);
+    /**
+     * 按度量计算目标到各订单的距离
+     */
+    private double[] computeDistances(DistanceCache.Metric metric, OrderTimeSeries target,
+                                      Map<String, OrderTimeSeries> group, List<String> orderIds,
+                                      double testRatio, int type, boolean[] candidates) {
+        switch (metric) {
+            case DTW:
+                return computeDtwDistances(target, group, orderIds, testRatio, type, candidates);
+            case MANHATTAN:
+                return computeMHTDistances(target, group, orderIds, testRatio, type, candidates);
+            case PEARSON:
+                return computePCDistances(target, group, orderIds, testRatio, type, candidates);
+            case CONSTRAINED_DTW:
+                return computeDistancesDTW(target, group, orderIds, testRatio, type, candidates);
+            default:
+                throw new IllegalArgumentException("不支持的距离度量: " + metric);
+        }
+    }
 
+    /**
+     * 提取各因子的特征矩阵，下标0~5对应因子类型1~6
+     */
+    double[][][] extractFactorFeatures(List<String> orderIds, Map<String, OrderTimeSeries> enhancedDictLength) {
+        double[][][] features = new double[FACTOR_TYPES][][];
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            features[type - 1] = featureService.extractFeatureMatrix(orderIds, enhancedDictLength, type);
+        }
+        return features;
+    }
 
+    /**
+     * 由各因子距离给出决策：提取并标准化特征、计算目标与各订单的余弦相似度、查找相似订单并评估
+     * @param distances 各因子距离，下标0~5对应因子类型1~6
+     */
+    private DecisionResult evaluateWithDistances(
+            String targetOrderId,
+            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
+            List<String> orderIds,
+            double[][] distances) throws IOException {
+        // 1. 提取特征，直接写入各因子的特征矩阵
+        return evaluateWithFeatures(targetOrderId, enhancedDict, orderIds, distances,
+                FactorScaling.fitAll(extractFactorFeatures(orderIds, enhancedDictLength)), null);
+    }
 
-        double[][] cosineSim = new CosineSimilarity().compute(scaledFeatures);
-        double[][] cosineSimClose = new CosineSimilarity().compute(scaledFeaturesClose);
-        double[][] cosineSimOpen = new CosineSimilarity().compute(scaledFeaturesOpen);
-        double[][] cosineSimAtr = new CosineSimilarity().compute(scaledFeaturesAtr);
-        double[][] cosineSimTH = new CosineSimilarity().compute(scaledFeaturesTH);
-        double[][] cosineSimTL = new CosineSimilarity().compute(scaledFeaturesTL);
+    private DecisionResult evaluateWithFeatures(
+            String targetOrderId,
+            Map<String, OrderTimeSeries> enhancedDict,
+            List<String> orderIds,
+            double[][] distances,
+            FactorScaling[] scaling,
+            StageTimings timings) throws IOException {
 
+        long start = System.nanoTime();
+        int targetIdx = orderIds.indexOf(targetOrderId);
+        double[][] cosineSim = new double[FACTOR_TYPES][];
+        CosineSimilarity cosine = new CosineSimilarity();
+        for (int type = 1; type <= FACTOR_TYPES; type++) {
+            // 2~3. 标准化（收益直接标准化，价格类因子先转对数收益率）后目标订单一行的余弦相似度，
+            // 与完整相似度矩阵的该行一致；标准化参数已随分组拟合，只转换目标行  5.添加因子步骤 标准化
+            cosineSim[type - 1] = scaling[type - 1].cosineToRow(targetIdx, cosine);
+        }
+        start = record(timings, StageTimings.Stage.SIMILARITY, start);
+        return evaluateWithSimilarities(targetOrderId, targetIdx, enhancedDict, orderIds, distances, cosineSim,
+                timings, start);
+    }
 
+    /**
+     * 由各因子距离与余弦相似度查找相似订单并评估决策
+     * @param start 排序阶段的起始时间（纳秒）
+     */
+    private DecisionResult evaluateWithSimilarities(
+            String targetOrderId,
+            int targetIdx,
+            Map<String, OrderTimeSeries> enhancedDict,
+            List<String> orderIds,
+            double[][] distances,
+            double[][] cosineSim,
+            StageTimings timings,
+            long start) throws IOException {
 
         // 4. 查找相似订单
-        int targetIdx = orderIds.indexOf(targetOrderId);
         List<SimilarOrder> similarOrders = findSimilarOrders(
                 targetIdx,
                 orderIds,
-                mhtDistances,
-                cosineSim[targetIdx],
-                11,mhtDistancesClose,
-                cosineSimClose[targetIdx],
-                mhtDistancesOpen,
-                cosineSimOpen[targetIdx],
-                mhtDistancesAtr,
-                cosineSimAtr[targetIdx],mhtDistancesTH,
-                cosineSimTH[targetIdx],mhtDistancesTL,cosineSimTL[targetIdx]
+                distances[0],
+                cosineSim[0],
+                11, distances[1],
+                cosineSim[1],
+                distances[2],
+                cosineSim[2],
+                distances[3],
+                cosineSim[3], distances[4],
+                cosineSim[4], distances[5], cosineSim[5]
         );
+        start = record(timings, StageTimings.Stage.RANKING, start);
 
         // 5. 评估决策
-        return evaluateDecision(targetOrderId, enhancedDict, similarOrders);
+        DecisionResult result = evaluateDecision(targetOrderId, enhancedDict, similarOrders);
+        record(timings, StageTimings.Stage.DECISION, start);
+        return result;
+    }
+
+    /**
+     * 记录从start到现在的阶段耗时，返回当前时间作为下一阶段的起点
+     */
+    private static long record(StageTimings timings, StageTimings.Stage stage, long start) {
+        long now = System.nanoTime();
+        if (timings != null) {
+            timings.record(stage, now - start);
+        }
+        return now;
     }
 
     private double[] computeDtwDistances(
             OrderTimeSeries target,
             Map<String, OrderTimeSeries> enhancedDict,
             List<String> orderIds,
-            double testRatio,Integer type) {
+            double testRatio,Integer type, boolean[] candidates) {
 
         double[] distances = new double[orderIds.size()];
         List<Callable<Void>> tasks = new ArrayList<>();
+        DistanceCache cache = distanceCache;
+        long targetHash = cache == null ? 0 : DistanceCache.contentHash(featureService.selectValues(target, type));
 
         for (int i = 0; i < orderIds.size(); i++) {
             if (orderIds.get(i).equals(target.getOrderId())) {
                 continue;
             }
+            if (candidates != null && !candidates[i]) {
+                distances[i] = Double.POSITIVE_INFINITY; // 未通过近邻预筛，相似度记为0
+                continue;
+            }
 
             final int idx = i;
             tasks.add(() -> {
-                double s1 = DtwCalculator.computePartial(target, enhancedDict.get(orderIds.get(idx)), testRatio,type);
-                double s2 = ManhattanDistanceCalculator.computePartial(target, enhancedDict.get(orderIds.get(idx)), testRatio,type)*0.1;
-                double s3 = EuclideanDistanceCalculator.computePartial(target, enhancedDict.get(orderIds.get(idx)), testRatio,type);
-                double s4 = PearsonCorrelationCalculator.computePartial(target, enhancedDict.get(orderIds.get(idx)), testRatio,type);
+                OrderTimeSeries candidate = enhancedDict.get(orderIds.get(idx));
+                double s1 = cachedDistance(cache, DistanceCache.Metric.DTW, targetHash, candidate, type, testRatio, 0,
+                        () -> DtwCalculator.computePartial(target, candidate, testRatio,type));
                 distances[idx] = s1;  //  67  52
                 return null;
             });
         }
 
-        try {
-            executor.invokeAll(tasks);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("MHD计算中断", e);
-        }
+        runDistanceTasks(tasks, "MHD计算中断");
         return distances;
     }
 
@@ -653,32 +587,34 @@ public class SimilarityService {
             OrderTimeSeries target,
             Map<String, OrderTimeSeries> enhancedDict,
             List<String> orderIds,
-            double testRatio,Integer type) {
+            double testRatio,Integer type, boolean[] candidates) {
 
         double[] distances = new double[orderIds.size()];
         List<Callable<Void>> tasks = new ArrayList<>();
+        DistanceCache cache = distanceCache;
+        long targetHash = cache == null ? 0 : DistanceCache.contentHash(featureService.selectValues(target, type));
 
         for (int i = 0; i < orderIds.size(); i++) {
             if (orderIds.get(i).equals(target.getOrderId())) {
                 continue;
             }
+            if (candidates != null && !candidates[i]) {
+                distances[i] = Double.POSITIVE_INFINITY; // 未通过近邻预筛，相似度记为0
+                continue;
+            }
 
             final int idx = i;
             tasks.add(() -> {
-
-                double s2 = ManhattanDistanceCalculator.computePartial(target, enhancedDict.get(orderIds.get(idx)), testRatio,type)*0.1;
+                OrderTimeSeries candidate = enhancedDict.get(orderIds.get(idx));
+                double s2 = cachedDistance(cache, DistanceCache.Metric.MANHATTAN, targetHash, candidate, type, testRatio, 0,
+                        () -> ManhattanDistanceCalculator.computePartial(target, candidate, testRatio,type)*0.1);
 
                 distances[idx] = s2;  //  67  52
                 return null;
             });
         }
 
-        try {
-            executor.invokeAll(tasks);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("DTW计算中断", e);
-        }
+        runDistanceTasks(tasks, "DTW计算中断");
         System.out.println(distances);
         return distances;
     }
@@ -687,32 +623,34 @@ public class SimilarityService {
             OrderTimeSeries target,
             Map<String, OrderTimeSeries> enhancedDict,
             List<String> orderIds,
-            double testRatio,Integer type) {
+            double testRatio,Integer type, boolean[] candidates) {
 
         double[] distances = new double[orderIds.size()];
         List<Callable<Void>> tasks = new ArrayList<>();
+        DistanceCache cache = distanceCache;
+        long targetHash = cache == null ? 0 : DistanceCache.contentHash(featureService.selectValues(target, type));
 
         for (int i = 0; i < orderIds.size(); i++) {
             if (orderIds.get(i).equals(target.getOrderId())) {
                 continue;
             }
+            if (candidates != null && !candidates[i]) {
+                distances[i] = Double.POSITIVE_INFINITY; // 未通过近邻预筛，相似度记为0
+                continue;
+            }
 
             final int idx = i;
             tasks.add(() -> {
-
-                double s2 = PearsonCorrelationCalculator.computePartial(target, enhancedDict.get(orderIds.get(idx)), testRatio,type)*0.1;
+                OrderTimeSeries candidate = enhancedDict.get(orderIds.get(idx));
+                double s2 = cachedDistance(cache, DistanceCache.Metric.PEARSON, targetHash, candidate, type, testRatio, 0,
+                        () -> PearsonCorrelationCalculator.computePartial(target, candidate, testRatio,type)*0.1);
 
                 distances[idx] = s2;  //  67  52
                 return null;
             });
         }
 
-        try {
-            executor.invokeAll(tasks);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("DTW计算中断", e);
-        }
+        runDistanceTasks(tasks, "DTW计算中断");
         System.out.println(distances);
         return distances;
     }
@@ -720,36 +658,55 @@ public class SimilarityService {
             OrderTimeSeries target,
             Map<String, OrderTimeSeries> enhancedDict,
             List<String> orderIds,
-            double testRatio,Integer type) {
+            double testRatio,Integer type, boolean[] candidates) {
 
         double[] distances = new double[orderIds.size()];
         List<Callable<Void>> tasks = new ArrayList<>();
+        DistanceCache cache = distanceCache;
+        long targetHash = cache == null ? 0 : DistanceCache.contentHash(featureService.selectValues(target, type));
 
         for (int i = 0; i < orderIds.size(); i++) {
             if (orderIds.get(i).equals(target.getOrderId())) {
                 continue;
             }
+            if (candidates != null && !candidates[i]) {
+                distances[i] = Double.POSITIVE_INFINITY; // 未通过近邻预筛，相似度记为0
+                continue;
+            }
 
             final int idx = i;
             tasks.add(() -> {
-
-                double s2 = ConstrainedDtwCalculator.computePartial(target, enhancedDict.get(orderIds.get(idx)), testRatio,15,type);
+                OrderTimeSeries candidate = enhancedDict.get(orderIds.get(idx));
+                double s2 = cachedDistance(cache, DistanceCache.Metric.CONSTRAINED_DTW, targetHash, candidate, type, testRatio, 15,
+                        () -> ConstrainedDtwCalculator.computePartial(target, candidate, testRatio,15,type));
 
                 distances[idx] = s2;  //  67  52
                 return null;
             });
         }
 
-        try {
-            executor.invokeAll(tasks);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("DTW WINDOWS 计算中断", e);
-        }
+        runDistanceTasks(tasks, "DTW WINDOWS 计算中断");
         return distances;
     }
 
 
+    /**
+     * 参与相似订单投票的因子（source为findSimilarOrders中距离数组的下标）
+     * 时间DTW(0)、时间余弦(1)、收盘价余弦(3)、唐安琪通道低价余弦(11) 当前不参与投票
+     */
+    private static final List<SimilarityScorer.Factor> SIMILARITY_FACTORS = Arrays.asList(
+            new SimilarityScorer.Factor("收盘价DTW", 2, 1.0),
+            new SimilarityScorer.Factor("开盘价DTW", 4, 1.0),
+            new SimilarityScorer.Factor("开盘价余弦", 5, 1.0),
+            new SimilarityScorer.Factor("ATR DTW", 6, 1.0),
+            new SimilarityScorer.Factor("ATR余弦", 7, 1.0),
+            new SimilarityScorer.Factor("唐安琪通道高价DTW", 8, 1.0),
+            new SimilarityScorer.Factor("唐安琪通道高价余弦", 9, 1.0),
+            new SimilarityScorer.Factor("唐安琪通道低价DTW", 10, 1.0)
+    );
+
+    private static final int CONSENSUS_SIZE = 6;
+
     private List<SimilarOrder> findSimilarOrders(
             int targetIdx,
             List<String> orderIds,
@@ -765,103 +722,37 @@ public class SimilarityService {
             double[]cosineSimTH, double[]dtwDistancesTL,
             double[]cosineSimTL) {
 
-        // 计算综合评分  7.添加因子寻找相似订单
-        double[] combined1 = new double[dtwDistances.length];
-        double[] combined2= new double[dtwDistances.length];
-        double[] combined3 = new double[dtwDistances.length];
-        double[] combined4 = new double[dtwDistances.length];
-        double[] combined5 = new double[dtwDistances.length];
-        double[] combined6 = new double[dtwDistances.length];
-        double[] combined7 = new double[dtwDistances.length];
-        double[] combined8 = new double[dtwDistances.length];
-        double[] combined9 = new double[dtwDistances.length];
-        double[] combined10 = new double[dtwDistances.length];
-        double[] combined11 = new double[dtwDistances.length];
-        double[] combined12 = new double[dtwDistances.length];
-
-        for (int i = 0; i < combined1.length; i++) {
-            if (i == targetIdx) {
-                continue;
-            }
-            double dtwSim = 1 / (1 + dtwDistances[i]);
-            double cosineSimA = 1 / (1 + cosineSim[i]);
-
-            double dtwSimClose = 1 / (1 + dtwDistancesClose[i]);
-            double cosineSimB = 1 / (1 + cosineSimClose[i]);
-
-            double dtwSimOpen = 1 / (1 + dtwDistancesOpen[i]);
-            double cosineSimC = 1 / (1 + cosineSimOpen[i]);
-
-            double dtwSimAtr = 1 / (1 + dtwDistancesAtr[i]);
-            double cosineSimD = 1 / (1 + cosineSimAtr[i]);
-
-            double dtwSimTH = 1 / (1 + dtwDistancesTH[i]);
-            double cosineSimE = 1 / (1 + cosineSimTH[i]);
-
-            double dtwSimTL= 1 / (1 + dtwDistancesTL[i]);
-            double cosineSimF = 1 / (1 + cosineSimTL[i]);
-
-            combined1[i] = 1.0 * dtwSim;//时间
-            combined3[i] = 1.0 * cosineSimA;//
-
-            combined2[i] = 1.0 * dtwSimClose;//收盘价
-            combined4[i] = 1.0 * cosineSimB;//
-
-            combined5[i] = 1.0 * dtwSimOpen;//开盘价
-            combined6[i] = 1.0 * cosineSimC;//
-
-            combined7[i] = 1.0 * dtwSimAtr;//atr
-            combined8[i] = 1.0 * cosineSimD;//
-
-            combined9[i] = 1.0 * dtwSimTH;//唐安琪通道高价格
-            combined10[i] = 1.0 * cosineSimE;//
+        // 距离数组，下标与SIMILARITY_FACTORS中的source对应
+        double[][] distances = {
+                dtwDistances, cosineSim,
+                dtwDistancesClose, cosineSimClose,
+                dtwDistancesOpen, cosineSimOpen,
+                dtwDistancesAtr, cosineSimAtr,
+                dtwDistancesTH, cosineSimTH,
+                dtwDistancesTL, cosineSimTL
+        };
 
-            combined11[i] = 1.0 * dtwSimTL;//唐安琪通道低价格
-            combined12[i] = 1.0 * cosineSimF;//
+        // 逐因子计算相似度、Softmax权重并选出TopN  7.添加因子寻找相似订单
+        SimilarityScorer scorer = new SimilarityScorer(dtwDistances.length);
+        int[][] tops = new int[SIMILARITY_FACTORS.size()][];
+        double[][] topWeights = new double[SIMILARITY_FACTORS.size()][];
+        for (int f = 0; f < tops.length; f++) {
+            SimilarityScorer.Factor factor = SIMILARITY_FACTORS.get(f);
+            tops[f] = scorer.score(distances[factor.getSource()], factor.getWeight(), targetIdx, topN);
+            topWeights[f] = new double[tops[f].length];
+            for (int r = 0; r < tops[f].length; r++) {
+                topWeights[f][r] = scorer.weightAt(tops[f][r]);
+            }
         }
 
-
-
-        // 2. 计算Softmax权重
-        double[] softmaxWeights1 = calculateSoftmax(combined1);
-        double[] softmaxWeights2 = calculateSoftmax(combined2);
-        double[] softmaxWeights3 = calculateSoftmax(combined3);
-        double[] softmaxWeights4 = calculateSoftmax(combined4);
-        double[] softmaxWeights5 = calculateSoftmax(combined5);
-        double[] softmaxWeights6 = calculateSoftmax(combined6);
-        double[] softmaxWeights7 = calculateSoftmax(combined7);
-        double[] softmaxWeights8 = calculateSoftmax(combined8);
-        double[] softmaxWeights9 = calculateSoftmax(combined9);
-        double[] softmaxWeights10 = calculateSoftmax(combined10);
-        double[] softmaxWeights11 = calculateSoftmax(combined11);
-        double[] softmaxWeights12 = calculateSoftmax(combined12);
-        //double[] rbf = calculateRBFWeights(combined);
-
-        List<SimilarOrder> collect1 = collect(softmaxWeights1, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect2 = collect(softmaxWeights2, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect3 = collect(softmaxWeights3, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect4 = collect(softmaxWeights4, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect5 = collect(softmaxWeights5, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect6 = collect(softmaxWeights6, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect7 = collect(softmaxWeights7, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect8 = collect(softmaxWeights8, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect9 = collect(softmaxWeights9, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect10 = collect(softmaxWeights10, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect11 = collect(softmaxWeights11, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-        List<SimilarOrder> collect12 = collect(softmaxWeights12, targetIdx, topN, orderIds, dtwDistances, cosineSim);
-
-
-
-
-
+        // 多因子共识：取出现在至少两个因子TopN中的订单，按共识名次保留前6个
+        // 每个订单取其首次出现的因子中的权重
         List<SimilarOrder> r1 = new ArrayList<>();
-        Map<String, List<SimilarOrder>> andRankDuplicateOrders = findAndRankDuplicateOrders( collect2, collect5, collect6,collect7,collect8,collect9,collect10,collect11);
-        for (String key:andRankDuplicateOrders.keySet()){
-            List<SimilarOrder> similarOrders = andRankDuplicateOrders.get(key);
-            if(r1.size() < 6){
-                r1.add(similarOrders.get(0));
-            }
-
+        ConsensusRanker.Result consensus = consensusRanker.rank(tops, orderIds.size());
+        for (int c = 0; c < consensus.size() && r1.size() < CONSENSUS_SIZE; c++) {
+            int i = consensus.getId(c);
+            double weight = topWeights[consensus.getFirstFactor(c)][consensus.getFirstRank(c)];
+            r1.add(new SimilarOrder(orderIds.get(i), dtwDistances[i], cosineSim[i], weight));
         }
 
 
@@ -923,19 +814,9 @@ public class SimilarityService {
         // .map(s -> (s - min) / (max - min ))
         // .toArray();
 
-        // 获取TopN
-        return IntStream.range(0, softmaxWeights.length)
-                .filter(i -> i != targetIdx)
-                .boxed()
-                .sorted(Comparator.comparingDouble(i -> -softmaxWeights[i]))
-                .limit(softmaxWeights.length)
-                .map(i -> new SimilarOrder(
-                        orderIds.get(i),
-                        dtwDistances[i],
-                        cosineSim[i],
-                        softmaxWeights[i]
-                ) )
-                .collect(Collectors.toList());
+        // 获取TopN（全部候选按权重降序）
+        return toSimilarOrders(TopKSelector.topK(softmaxWeights, softmaxWeights.length, targetIdx),
+                orderIds, dtwDistances, cosineSim, softmaxWeights);
     }
 
     // Softmax计算工具方法（算样本距离）
@@ -1025,23 +906,6 @@ public class SimilarityService {
         return decisionResult;
     }
 
-    private double[] convertToArray(OrderFeatures feature) {
-        return new double[]{
-                feature.getMean(), feature.getStd(),
-                feature.getMin(), feature.getMax(),
-                feature.getMedian(), feature.getQ25(),
-                feature.getQ75(), feature.getSkewness(),
-                feature.getKurtosis(), feature.getRange(),
-                feature.getFirstValue(), feature.getLastValue(),
-                feature.getAbsMax(), feature.getAbsMean(),
-                feature.getPosCount(), feature.getNegCount(),
-                feature.getZeroCount(),
-                Optional.ofNullable(feature.getTrendSlope()).orElse(0.0),
-                Optional.ofNullable(feature.getTrendIntercept()).orElse(0.0),
-                Optional.ofNullable(feature.getTrendRValue()).orElse(0.0)
-        };
-    }
-
     @Getter
     private static class SimilarOrder {
         final String orderId;
@@ -1059,211 +923,271 @@ public class SimilarityService {
 
     public void shutdown() {
         executor.shutdown();
+        DistanceCache cache = distanceCache;
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                System.err.println("关闭距离缓存失败: " + e.getMessage());
+            }
+            distanceCache = null;
+        }
     }
 
     public List<DecisionResult> batchTestAllOrders(
             Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
             double testRatio,
             int limit) {
+        return runBatch(enhancedDict, enhancedDictLength, testRatio, limit, this::evaluateOrder);
+    }
 
-        List<String> orderIds = new ArrayList<>(enhancedDictLength.keySet());
-        Map<String, OrderTimeSeries> upMap = new HashMap<>();
-        Map<String, OrderTimeSeries> downMap = new HashMap<>();
-        for(String key:enhancedDictLength.keySet()){
-
-
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(key);
-            double[] values = orderTimeSeries.getValues();
-                if(values.length>1){
-                    if( values[values.length-1] >=0.00){
-                        upMap.put(key,orderTimeSeries);
-                    }else {
-                        downMap.put(key,orderTimeSeries);
-                    }
-
-                }
-
-
-
-        }
+    public List<DecisionResult> batchTestAllOrdersMHT(
+            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
+            double testRatio,
+            int limit) {
+        return runBatch(enhancedDict, enhancedDictLength, testRatio, limit, this::evaluateOrderMHT);
+    }
 
-        return orderIds.stream()
-                .limit(limit)
-                .map(orderId -> {
-                    int a = -1;
-                    if(upMap.containsKey(orderId)){a=1;}
-                    List<String> upIds = new ArrayList<>(upMap.keySet());
-                    List<String> downIds = new ArrayList<>(downMap.keySet());
-                    DecisionResult result = null;
-                    DecisionResult result1 = null;
-                    try {
-                        result = evaluateOrder(orderId,enhancedDict,a==1?upMap:downMap /*a==1?upMap:downMap*/, a==1?upIds:downIds/*a==1?upIds:downIds*/, testRatio);
-
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    if (result != null) {
-                        // 打印每笔订单明细
-                        printOrderEvaluationDetails(orderId, enhancedDict, result, testRatio);
-                        result.printDetailedReport();
-                    }
-                    return result;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    public List<DecisionResult> batchTestAllOrdersPC(
+            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
+            double testRatio,
+            int limit) {
+        return runBatch(enhancedDict, enhancedDictLength, testRatio, limit, this::evaluateOrderPC);
     }
-    public List<DecisionResult> batchTestAllOrdersMHT(
+
+    public List<DecisionResult> batchTestAllOrdersDTW(
             Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
             double testRatio,
             int limit) {
+        return runBatch(enhancedDict, enhancedDictLength, testRatio, limit, this::evaluateOrderDTW);
+    }
 
-        List<String> orderIds = new ArrayList<>(enhancedDictLength.keySet());
+    /**
+     * 对称全量模式：每个分组（多/空）内按因子一次性分块并行计算两两距离的上三角，
+     * 每个目标订单的距离向量直接读取矩阵的一行，每对订单只计算一次
+     * @param metric 距离度量（DTW、曼哈顿、皮尔逊或带窗口约束的DTW，与对应的batchTestAllOrders*一致）
+     */
+    public List<DecisionResult> batchTestAllOrdersAllPairs(
+            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
+            double testRatio,
+            int limit,
+            DistanceCache.Metric metric) {
 
         Map<String, OrderTimeSeries> upMap = new HashMap<>();
         Map<String, OrderTimeSeries> downMap = new HashMap<>();
-        for(String key:enhancedDictLength.keySet()){
-
-
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(key);
-            double[] values = orderTimeSeries.getValues();
-            if(values.length>1){
-                if( values[values.length-1] >=0.00){
-                    upMap.put(key,orderTimeSeries);
-                }else {
-                    downMap.put(key,orderTimeSeries);
-                }
-
+        splitByDirection(enhancedDictLength, upMap, downMap);
+        List<String> upIds = new ArrayList<>(upMap.keySet());
+        List<String> downIds = new ArrayList<>(downMap.keySet());
+
+        // 只为包含目标订单的分组计算距离矩阵（矩阵内部已分块并行）
+        Map<Map<String, OrderTimeSeries>, PairwiseDistanceMatrix[]> matrices = new IdentityHashMap<>();
+        enhancedDictLength.keySet().stream().limit(limit).forEach(orderId -> {
+            if (upMap.containsKey(orderId)) {
+                matrices.computeIfAbsent(upMap, g -> computePairwiseMatrices(upIds, g, testRatio, metric));
+            } else if (downMap.containsKey(orderId)) {
+                matrices.computeIfAbsent(downMap, g -> computePairwiseMatrices(downIds, g, testRatio, metric));
             }
+        });
 
-
-
-        }
-
-        return orderIds.stream()
-                .limit(limit)
-                .map(orderId -> {
-                    int a = -1;
-                    if(upMap.containsKey(orderId)){a=1;}
-                    List<String> upIds = new ArrayList<>(upMap.keySet());
-                    List<String> downIds = new ArrayList<>(downMap.keySet());
-                    DecisionResult result = null;
-                    DecisionResult result1 = null;
-                    try {
-                        result = evaluateOrderMHT(orderId,enhancedDict,a==1?upMap:downMap /*a==1?upMap:downMap*/, a==1?upIds:downIds/*a==1?upIds:downIds*/, testRatio);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+        return runBatch(enhancedDict, enhancedDictLength, upMap, downMap, testRatio, limit,
+                (orderId, dict, group, groupIds, ratio) -> {
+                    int targetIdx = groupIds.indexOf(orderId);
+                    if (targetIdx < 0) {
+                        return null;
                     }
-                    if (result != null) {
-                        // 打印每笔订单明细
-                        printOrderEvaluationDetails(orderId, enhancedDict, result, testRatio);
-                        result.printDetailedReport();
+                    PairwiseDistanceMatrix[] factorMatrices = matrices.get(group);
+                    double[][] distances = new double[FACTOR_TYPES][];
+                    for (int t = 0; t < FACTOR_TYPES; t++) {
+                        distances[t] = factorMatrices[t].row(targetIdx);
                     }
-                    return result;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+                    return evaluateWithDistances(orderId, dict, group, groupIds, distances);
+                });
     }
-    public List<DecisionResult> batchTestAllOrdersPC(
+
+    /**
+     * 单个目标订单的评估函数（evaluateOrder / evaluateOrderMHT / evaluateOrderPC / evaluateOrderDTW）
+     */
+    @FunctionalInterface
+    private interface TargetEvaluator {
+        DecisionResult evaluate(String targetOrderId, Map<String, OrderTimeSeries> enhancedDict,
+                                Map<String, OrderTimeSeries> group, List<String> groupIds,
+                                double testRatio) throws IOException;
+    }
+
+    /**
+     * 批量回测：按收益方向分组后，以目标订单为粒度在工作窃取线程池中并行评估，
+     * 单个目标内部的距离计算在工作线程上串行执行；结果与明细按输入顺序输出
+     */
+    private List<DecisionResult> runBatch(
             Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
             double testRatio,
-            int limit) {
-
-        List<String> orderIds = new ArrayList<>(enhancedDictLength.keySet());
+            int limit,
+            TargetEvaluator evaluator) {
 
         Map<String, OrderTimeSeries> upMap = new HashMap<>();
         Map<String, OrderTimeSeries> downMap = new HashMap<>();
-        for(String key:enhancedDictLength.keySet()){
-
-
-            OrderTimeSeries orderTimeSeries = enhancedDictLength.get(key);
-            double[] values = orderTimeSeries.getValues();
-            if(values.length>1){
-                if( values[values.length-1] >=0.00){
-                    upMap.put(key,orderTimeSeries);
-                }else {
-                    downMap.put(key,orderTimeSeries);
-                }
+        splitByDirection(enhancedDictLength, upMap, downMap);
+        return runBatch(enhancedDict, enhancedDictLength, upMap, downMap, testRatio, limit, evaluator);
+    }
 
-            }
+    private List<DecisionResult> runBatch(
+            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
+            Map<String, OrderTimeSeries> upMap, Map<String, OrderTimeSeries> downMap,
+            double testRatio,
+            int limit,
+            TargetEvaluator evaluator) {
 
+        List<String> upIds = new ArrayList<>(upMap.keySet());
+        List<String> downIds = new ArrayList<>(downMap.keySet());
 
+        List<String> targets = enhancedDictLength.keySet().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
 
+        List<DecisionResult> results = new TargetBatchScheduler(batchParallelism).map(targets, orderId -> {
+            boolean up = upMap.containsKey(orderId);
+            try {
+                return evaluator.evaluate(orderId, enhancedDict, up ? upMap : downMap, up ? upIds : downIds, testRatio);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        });
+
+        for (int i = 0; i < targets.size(); i++) {
+            DecisionResult result = results.get(i);
+            if (result != null) {
+                // 打印每笔订单明细
+                printOrderEvaluationDetails(targets.get(i), enhancedDict, result, testRatio);
+                result.printDetailedReport();
+            }
         }
-
-        return orderIds.stream()
-                .limit(limit)
-                .map(orderId -> {
-                    int a = -1;
-                    if(upMap.containsKey(orderId)){a=1;}
-                    List<String> upIds = new ArrayList<>(upMap.keySet());
-                    List<String> downIds = new ArrayList<>(downMap.keySet());
-                    DecisionResult result = null;
-                    DecisionResult result1 = null;
-                    try {
-                        result = evaluateOrderPC(orderId,enhancedDict,a==1?upMap:downMap /*a==1?upMap:downMap*/, a==1?upIds:downIds/*a==1?upIds:downIds*/, testRatio);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    if (result != null) {
-                        // 打印每笔订单明细
-                        printOrderEvaluationDetails(orderId, enhancedDict, result, testRatio);
-                        result.printDetailedReport();
-                    }
-                    return result;
-                })
+        return results.stream()
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
-    public List<DecisionResult> batchTestAllOrdersDTW(
-            Map<String, OrderTimeSeries> enhancedDict, Map<String, OrderTimeSeries> enhancedDictLength,
-            double testRatio,
-            int limit) {
-
-        List<String> orderIds = new ArrayList<>(enhancedDictLength.keySet());
-
-        Map<String, OrderTimeSeries> upMap = new HashMap<>();
-        Map<String, OrderTimeSeries> downMap = new HashMap<>();
-        for(String key:enhancedDictLength.keySet()){
-
 
+    /**
+     * 按收益序列最后一个值的正负把订单分为多、空两组（少于两个点的订单不参与）
+     */
+    private static void splitByDirection(Map<String, OrderTimeSeries> enhancedDictLength,
+                                         Map<String, OrderTimeSeries> upMap,
+                                         Map<String, OrderTimeSeries> downMap) {
+        for (String key : enhancedDictLength.keySet()) {
             OrderTimeSeries orderTimeSeries = enhancedDictLength.get(key);
-            double[] values = orderTimeSeries.getValues();
-            if(values.length>1){
-                if( values[values.length-1] >=0.00){
-                    upMap.put(key,orderTimeSeries);
-                }else {
-                    downMap.put(key,orderTimeSeries);
-                }
-
+            int direction = directionOf(orderTimeSeries);
+            if (direction > 0) {
+                upMap.put(key, orderTimeSeries);
+            } else if (direction < 0) {
+                downMap.put(key, orderTimeSeries);
             }
+        }
+    }
 
+    /**
+     * 订单所属分组：1 多（最后收益>=0），-1 空，0 不参与（少于两个点）
+     */
+    static int directionOf(OrderTimeSeries orderTimeSeries) {
+        double[] values = orderTimeSeries.getValues();
+        if (values.length <= 1) {
+            return 0;
+        }
+        return values[values.length - 1] >= 0.00 ? 1 : -1;
+    }
 
+    /**
+     * 执行一个目标的逐候选距离任务：在批量调度的工作线程上直接串行执行，
+     * 否则按CPU核数分成若干块投递到计算线程池（避免每个候选一个Future的调度开销）
+     */
+    private void runDistanceTasks(List<Callable<Void>> tasks, String interruptedMessage) {
+        if (TargetBatchScheduler.inBatchWorker()) {
+            runInline(tasks);
+            return;
+        }
+        int chunkCount = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors() * 4);
+        if (chunkCount <= 1) {
+            runInline(tasks);
+            return;
+        }
+        int chunkSize = (tasks.size() + chunkCount - 1) / chunkCount;
+        List<Callable<Void>> chunks = new ArrayList<>(chunkCount);
+        for (int from = 0; from < tasks.size(); from += chunkSize) {
+            List<Callable<Void>> chunk = tasks.subList(from, Math.min(tasks.size(), from + chunkSize));
+            chunks.add(() -> {
+                runInline(chunk);
+                return null;
+            });
+        }
+        try {
+            executor.invokeAll(chunks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(interruptedMessage, e);
+        }
+    }
 
+    private static void runInline(List<Callable<Void>> tasks) {
+        for (Callable<Void> task : tasks) {
+            try {
+                task.call();
+            } catch (Exception e) {
+                System.err.println("距离计算失败: " + e.getMessage());
+            }
         }
+    }
 
-        return orderIds.stream()
-                .limit(limit)
-                .map(orderId -> {
-                    int a = -1;
-                    if(upMap.containsKey(orderId)){a=1;}
-                    List<String> upIds = new ArrayList<>(upMap.keySet());
-                    List<String> downIds = new ArrayList<>(downMap.keySet());
-                    DecisionResult result = null;
-                    DecisionResult result1 = null;
-                    try {
-                        result = evaluateOrderDTW(orderId,enhancedDict,a==1?upMap:downMap /*a==1?upMap:downMap*/, a==1?upIds:downIds/*a==1?upIds:downIds*/, testRatio);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    if (result != null) {
-                        // 打印每笔订单明细
-                        printOrderEvaluationDetails(orderId, enhancedDict, result, testRatio);
-                        result.printDetailedReport();
-                    }
-                    return result;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    /**
+     * 计算一个分组内各因子的两两距离矩阵（开启距离缓存时经缓存读取）
+     */
+    private PairwiseDistanceMatrix[] computePairwiseMatrices(List<String> ids, Map<String, OrderTimeSeries> group,
+                                                             double testRatio, DistanceCache.Metric metric) {
+        int n = ids.size();
+        OrderTimeSeries[] series = new OrderTimeSeries[n];
+        for (int i = 0; i < n; i++) {
+            series[i] = group.get(ids.get(i));
+        }
+        DistanceCache cache = distanceCache;
+        int window = metric == DistanceCache.Metric.CONSTRAINED_DTW ? 15 : 0;
+
+        PairwiseDistanceMatrix[] result = new PairwiseDistanceMatrix[FACTOR_TYPES];
+        for (int t = 0; t < FACTOR_TYPES; t++) {
+            final int type = t + 1;
+            long[] hashes = new long[n];
+            if (cache != null) {
+                for (int i = 0; i < n; i++) {
+                    hashes[i] = DistanceCache.contentHash(featureService.selectValues(series[i], type));
+                }
+            }
+            long start = System.currentTimeMillis();
+            result[t] = PairwiseDistanceMatrix.compute(n, (i, j) -> {
+                if (cache == null) {
+                    return pairDistance(metric, series[i], series[j], testRatio, type);
+                }
+                return cache.computeIfAbsent(hashes[i], hashes[j], metric, type, testRatio, window,
+                        () -> pairDistance(metric, series[i], series[j], testRatio, type));
+            }, executor);
+            System.out.println("因子" + type + " 两两距离计算完成: " + n + "个订单, 耗时" + (System.currentTimeMillis() - start) + "ms");
+        }
+        return result;
+    }
+
+    /**
+     * 一对订单的距离，与computeDtwDistances / computeMHTDistances / computePCDistances / computeDistancesDTW 的计算一致
+     */
+    private static double pairDistance(DistanceCache.Metric metric, OrderTimeSeries a, OrderTimeSeries b,
+                                       double testRatio, int type) {
+        switch (metric) {
+            case DTW:
+                return DtwCalculator.computePartial(a, b, testRatio, type);
+            case MANHATTAN:
+                return ManhattanDistanceCalculator.computePartial(a, b, testRatio, type) * 0.1;
+            case PEARSON:
+                return PearsonCorrelationCalculator.computePartial(a, b, testRatio, type) * 0.1;
+            case CONSTRAINED_DTW:
+                return ConstrainedDtwCalculator.computePartial(a, b, testRatio, 15, type);
+            default:
+                throw new IllegalArgumentException("不支持的距离度量: " + metric);
+        }
     }
 
     private void printOrderEvaluationDetails(
@@ -1418,18 +1342,20 @@ public class SimilarityService {
 
     public List<SimilarOrder> collect(double[] softmaxWeights1,int targetIdx,int topN,List<String> orderIds,
                                       double[] dtwDistances,double[] cosineSim){
-        return IntStream.range(0, softmaxWeights1.length)
-                .filter(i -> i != targetIdx)
-                .boxed()
-                .sorted(Comparator.comparingDouble(i -> -softmaxWeights1[i]))
-                .limit(topN)
-                .map(i -> new SimilarOrder(
-                        orderIds.get(i),
-                        dtwDistances[i],
-                        cosineSim[i],
-                        softmaxWeights1[i]
-                ))
-                .collect(Collectors.toList());
+        return toSimilarOrders(TopKSelector.topK(softmaxWeights1, topN, targetIdx),
+                orderIds, dtwDistances, cosineSim, softmaxWeights1);
+    }
+
+    /**
+     * 按选出的下标顺序构造相似订单列表
+     */
+    private List<SimilarOrder> toSimilarOrders(int[] indices, List<String> orderIds,
+                                               double[] dtwDistances, double[] cosineSim, double[] weights) {
+        List<SimilarOrder> result = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            result.add(new SimilarOrder(orderIds.get(i), dtwDistances[i], cosineSim[i], weights[i]));
+        }
+        return result;
     }
 
     public static List<SimilarOrder> findCommonOrderIds(List<List<SimilarOrder>> orderLists) {
@@ -1459,17 +1385,20 @@ public class SimilarityService {
         allOrders.addAll(collect5);
         allOrders.addAll(collect6);
 
-        // 2. 按orderId分组，每组保留normalizedScore最高的订单
-        Map<String, SimilarOrder> mergedOrders = allOrders.stream()
-                .collect(Collectors.toMap(
-                        SimilarOrder::getOrderId,
-                        order -> order,
-                        (order1, order2) ->
-                                order1.getNormalizedScore() >= order2.getNormalizedScore() ? order1 : order2
-                ));
-
-        // 3. 转换为List并按分数降序排序
-        List<SimilarOrder> result = new ArrayList<>(mergedOrders.values());
+        // 2. 按orderId分组，每组保留normalizedScore最高的订单（分数相同保留先出现的）
+        Map<String, Integer> interned = new HashMap<>();
+        List<SimilarOrder> result = new ArrayList<>();
+        for (SimilarOrder order : allOrders) {
+            Integer index = interned.get(order.getOrderId());
+            if (index == null) {
+                interned.put(order.getOrderId(), result.size());
+                result.add(order);
+            } else if (order.getNormalizedScore() > result.get(index).getNormalizedScore()) {
+                result.set(index, order);
+            }
+        }
+
+        // 3. 按分数降序排序（稳定排序，同分按首次出现顺序）
         result.sort(Comparator.comparingDouble(SimilarOrder::getNormalizedScore).reversed());
 
         // 5. 最终截取前minSize个
@@ -1478,31 +1407,32 @@ public class SimilarityService {
 
 
     public static Map<String, List<SimilarOrder>> findAndRankDuplicateOrders(List<SimilarOrder>... lists) {
-        // 合并所有 List
-        List<SimilarOrder> allOrders = new ArrayList<>();
-        for (List<SimilarOrder> list : lists) {
-            allOrders.addAll(list);
+        // 订单ID映射为int，同一订单在各因子中的记录按因子顺序归组
+        Map<String, Integer> interned = new HashMap<>();
+        List<List<SimilarOrder>> groups = new ArrayList<>();
+        int[][] rankings = new int[lists.length][];
+        for (int f = 0; f < lists.length; f++) {
+            rankings[f] = new int[lists[f].size()];
+            for (int r = 0; r < rankings[f].length; r++) {
+                SimilarOrder order = lists[f].get(r);
+                Integer index = interned.get(order.getOrderId());
+                if (index == null) {
+                    index = groups.size();
+                    interned.put(order.getOrderId(), index);
+                    groups.add(new ArrayList<>());
+                }
+                groups.get(index).add(order);
+                rankings[f][r] = index;
+            }
         }
 
-        // 按 orderId 分组
-        Map<String, List<SimilarOrder>> orderIdMap = allOrders.stream()
-                .collect(Collectors.groupingBy(SimilarOrder::getOrderId));
-
-        // 过滤出重复的 orderId（出现次数 ≥ 2）
-        Map<String, List<SimilarOrder>> duplicateOrders = orderIdMap.entrySet().stream()
-                .filter(entry -> entry.getValue().size() >= 2)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-        // 按出现次数降序排序
-        Map<String, List<SimilarOrder>> sortedByCount = duplicateOrders.entrySet().stream()
-                .sorted((e1, e2) -> Integer.compare(e2.getValue().size(), e1.getValue().size())) // 降序
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (oldValue, newValue) -> oldValue,
-                        LinkedHashMap::new  // 保持排序顺序
-                ));
-
+        // 出现次数 ≥ 2 的订单，按出现次数降序（同次数按Borda得分、首次出现顺序）
+        ConsensusRanker.Result consensus = new ConsensusRanker(ConsensusRanker.Method.BORDA, 2).rank(rankings, groups.size());
+        Map<String, List<SimilarOrder>> sortedByCount = new LinkedHashMap<>();
+        for (int c = 0; c < consensus.size(); c++) {
+            List<SimilarOrder> group = groups.get(consensus.getId(c));
+            sortedByCount.put(group.get(0).getOrderId(), group);
+        }
         return sortedByCount;
     }
 
@@ -1617,23 +1547,26 @@ public class SimilarityService {
     }
 
     public Boolean getZZQ(String date,String action) throws IOException {
-        ZZQDataLoader loaderNew = new ZZQDataLoader();
-        List<zzqdto> zzqdtos = loaderNew.loadFromCsv("D:/data/章铮奇/gbpjpy_15min.csv");
-        for (int i = 0; i < zzqdtos.size(); i++) {
-            if(date.equals(zzqdtos.get(i).getDate())){
-                String fluctuation = "";
-                Double value = zzqdtos.get(i).getTrueValue();
-                Double value1 = zzqdtos.get(i+11).getTrueValue();
-
-                if(value > value1){fluctuation = "涨";}else {fluctuation = "跌";}
-
-                if(action.equals("多") && fluctuation.equals("涨")){
-                    return Boolean.TRUE;
-                }
-                if(action.equals("空") && fluctuation.equals("跌")){
-                    return Boolean.TRUE;
-                }
-            }
+        ZZQSignalStore.Snapshot zzqdtos = ZZQSignalStore.shared(ZZQ_GBPJPY_15MIN).snapshot();
+        int i = zzqdtos.indexOf(date);
+        // 需要往后第11个点的实际值，越界时视为无信号
+        if (i < 0 || i + 11 >= zzqdtos.size()) {
+            return Boolean.FALSE;
+        }
+        String fluctuation = "";
+        Double value = zzqdtos.get(i).getTrueValue();
+        Double value1 = zzqdtos.get(i+11).getTrueValue();
+        if (value == null || value1 == null) {
+            return Boolean.FALSE;
+        }
+
+        if(value > value1){fluctuation = "涨";}else {fluctuation = "跌";}
+
+        if(action.equals("多") && fluctuation.equals("涨")){
+            return Boolean.TRUE;
+        }
+        if(action.equals("空") && fluctuation.equals("跌")){
+            return Boolean.TRUE;
         }
         return Boolean.FALSE;
     }
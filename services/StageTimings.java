@@ -0,0 +1,56 @@
+package com.demo.extract.services;
+
+/**
+ * 单目标评估的分阶段耗时（纳秒）
+ */
+public class StageTimings {
+
+    public enum Stage {
+        FEATURES("特征提取"),
+        DISTANCES("距离计算"),
+        SIMILARITY("余弦相似度"),
+        RANKING("相似订单排序"),
+        DECISION("决策评估");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final long[] nanos = new long[Stage.values().length];
+
+    /**
+     * 累加一个阶段的耗时
+     */
+    public void record(Stage stage, long elapsedNanos) {
+        nanos[stage.ordinal()] += elapsedNanos;
+    }
+
+    public long getNanos(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            sb.append(stage.getLabel()).append('=')
+                    .append(String.format("%.2f", nanos[stage.ordinal()] / 1e6)).append("ms, ");
+        }
+        return sb.append("合计=").append(String.format("%.2f", getTotalNanos() / 1e6)).append("ms").toString();
+    }
+}
@@ -0,0 +1,355 @@
+package com.demo.extract.services;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 增量读取持续追加的MT4导出CSV（与DataLoaderNew的格式和解析结果一致）
+ * 记住已读取到的字节位置和每个订单已有的各列数据，每次refresh()只解析新追加的完整行并追加到对应订单；
+ * 最后一行未写完时留到下一次读取。文件变短（被截断）、文件被替换或表头变化时从头重新读取。
+ */
+public class TailingDataLoader {
+    private static final int BLOCK_SIZE = 8 * 1024 * 1024;
+
+    private final Path path;
+
+    private Charset charset;
+    private String[] headers;
+    private byte[] headerBytes;   // 表头行原始字节，用于识别文件被替换
+    private Object fileKey;       // 文件标识（部分文件系统不支持，为null）
+    private long offset;          // 已解析到的字节位置（总在行尾之后）
+    private final Map<String, OrderBuffer> orders = new LinkedHashMap<>();
+
+    public TailingDataLoader(String filePath) {
+        this.path = Paths.get(filePath);
+    }
+
+    /**
+     * 读取自上次以来追加的数据
+     * @return 新出现或有新数据的订单（每个订单为包含全部已读数据的新对象）；从头重新读取时返回全部订单
+     */
+    public synchronized List<OrderTimeSeries> refresh() throws IOException {
+        if (!Files.exists(path)) {
+            throw new IOException("文件不存在: " + path);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (isReplaced(channel)) {
+                System.out.println("文件被截断或替换，从头读取: " + path);
+                reset();
+            }
+            if (headers == null && !readHeader(channel)) {
+                return new ArrayList<>();
+            }
+            readAppended(channel);
+        }
+
+        List<OrderTimeSeries> changed = new ArrayList<>();
+        for (OrderBuffer buffer : orders.values()) {
+            if (buffer.changed) {
+                buffer.changed = false;
+                changed.add(buffer.toSeries());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 当前已读取的全部订单
+     */
+    public synchronized List<OrderTimeSeries> orders() {
+        List<OrderTimeSeries> result = new ArrayList<>(orders.size());
+        for (OrderBuffer buffer : orders.values()) {
+            result.add(buffer.toSeries());
+        }
+        return result;
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    private void reset() {
+        charset = null;
+        headers = null;
+        headerBytes = null;
+        fileKey = null;
+        offset = 0;
+        orders.clear();
+    }
+
+    /**
+     * 文件比已读位置短、文件标识变化或表头字节变化时视为被截断或替换
+     */
+    private boolean isReplaced(FileChannel channel) throws IOException {
+        if (headers == null) {
+            return false;
+        }
+        if (channel.size() < offset) {
+            return true;
+        }
+        Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        if (!Objects.equals(key, fileKey)) {
+            return true;
+        }
+        ByteBuffer current = ByteBuffer.allocate(headerBytes.length);
+        while (current.hasRemaining() && channel.read(current, current.position()) > 0) {
+            // 读满表头长度
+        }
+        return !Arrays.equals(current.array(), headerBytes);
+    }
+
+    /**
+     * 读取表头并确定编码（UTF-8优先，失败时使用GBK），表头未写完时返回false
+     */
+    private boolean readHeader(FileChannel channel) throws IOException {
+        byte[] block = read(channel, 0, (int) Math.min(channel.size(), 64 * 1024));
+        int end = indexOf(block, block.length, (byte) '\n');
+        if (end < 0) {
+            return false;
+        }
+        byte[] line = Arrays.copyOf(block, end + 1);
+        Charset detected = StandardCharsets.UTF_8;
+        String text;
+        try {
+            text = decode(line, line.length, detected);
+        } catch (CharacterCodingException e) {
+            detected = Charset.forName("GBK");
+            text = decode(line, line.length, detected);
+        }
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+
+        String[] parsed;
+        try (CSVParser parser = new CSVParser(new StringReader(text), CSVFormat.DEFAULT.builder().setTrim(true).build())) {
+            CSVRecord record = parser.iterator().next();
+            parsed = new String[record.size()];
+            for (int i = 0; i < parsed.length; i++) {
+                parsed[i] = record.get(i).trim();
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        for (String expected : DataLoaderNew.EXPECTED_HEADERS) {
+            if (!Arrays.asList(parsed).contains(expected.trim())) {
+                missing.add(expected);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "CSV缺少必要列！缺失: " + missing + " (实际表头: " + Arrays.toString(parsed) + ")");
+        }
+
+        charset = detected;
+        headers = parsed;
+        headerBytes = line;
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        offset = line.length;
+        return true;
+    }
+
+    /**
+     * 从offset起按块读取新追加的完整行并解析，未以换行结尾的最后一行留到下一次
+     */
+    private void readAppended(FileChannel channel) throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+                .setHeader(headers)
+                .setIgnoreHeaderCase(true)
+                .setTrim(true)
+                .setIgnoreEmptyLines(true)
+                .build();
+        int blockSize = BLOCK_SIZE;
+        long size = channel.size();
+        while (offset < size) {
+            int length = (int) Math.min(blockSize, size - offset);
+            byte[] block = read(channel, offset, length);
+            int end = lastIndexOf(block, length, (byte) '\n');
+            if (end < 0) {
+                if (offset + length >= size) {
+                    return; // 最后一行尚未写完
+                }
+                blockSize *= 2; // 单行超过块大小
+                continue;
+            }
+            String text;
+            try {
+                text = decode(block, end + 1, charset);
+            } catch (CharacterCodingException e) {
+                throw new IOException("无法用" + charset + "编码解析新增数据: " + path, e);
+            }
+            try (CSVParser parser = new CSVParser(new StringReader(text), format)) {
+                for (CSVRecord record : parser) {
+                    String orderId = record.get("订单号");
+                    if (!StringUtils.hasLength(orderId)) {
+                        continue;
+                    }
+                    orders.computeIfAbsent(orderId, OrderBuffer::new).add(record);
+                }
+            }
+            offset += end + 1;
+        }
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+
+    private static String decode(byte[] bytes, int length, Charset charset) throws CharacterCodingException {
+        CharBuffer chars = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(bytes, 0, length));
+        return chars.toString();
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte b) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] bytes, int length, byte b) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 单个订单已读取的各列数据（容量倍增），按持仓时间保持有序
+     */
+    private static class OrderBuffer {
+        final String orderId;
+        int size;
+        boolean changed;
+        double[] holdTimes = new double[64]; // 排序键
+        double[] timestamps = new double[64];
+        double[] values = new double[64];
+        double[] close = new double[64];
+        double[] open = new double[64];
+        double[] atr = new double[64];
+        double[] TH = new double[64];
+        double[] TL = new double[64];
+        double[] inPrice = new double[64];
+        String[] orderTime = new String[64];
+
+        OrderBuffer(String orderId) {
+            this.orderId = orderId;
+        }
+
+        void add(CSVRecord record) {
+            double holdTime = Double.parseDouble(record.get("holdtime"));
+            if (size == holdTimes.length) {
+                grow();
+            }
+            // 新行通常在末尾；持仓时间更小时插入到对应位置（相同持仓时间保持文件顺序，与稳定排序一致）
+            int row = size;
+            while (row > 0 && holdTimes[row - 1] > holdTime) {
+                row--;
+            }
+            if (row < size) {
+                shift(row);
+            }
+            size++;
+            changed = true;
+
+            holdTimes[row] = holdTime;
+            if (StringUtils.hasLength(record.get("holdtime")) && StringUtils.hasLength(record.get("atr"))
+                    && StringUtils.hasLength(record.get("DonchianHigh"))) {
+                timestamps[row] = holdTime;
+                values[row] = Double.parseDouble(record.get("profit"));
+                close[row] = Double.parseDouble(record.get("close"));
+                open[row] = Double.parseDouble(record.get("open"));
+                atr[row] = Double.parseDouble(record.get("atr"));
+                TH[row] = Double.parseDouble(record.get("DonchianHigh"));
+                TL[row] = Double.parseDouble(record.get("DonchianLow"));
+                inPrice[row] = Double.parseDouble(record.get("进场价格"));
+                orderTime[row] = record.get("日期");
+            } else {
+                timestamps[row] = 0;
+                values[row] = 0;
+                close[row] = 0;
+                open[row] = 0;
+                atr[row] = 0;
+                TH[row] = 0;
+                TL[row] = 0;
+                inPrice[row] = 0;
+                orderTime[row] = null;
+            }
+        }
+
+        private void grow() {
+            int capacity = holdTimes.length * 2;
+            holdTimes = Arrays.copyOf(holdTimes, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            values = Arrays.copyOf(values, capacity);
+            close = Arrays.copyOf(close, capacity);
+            open = Arrays.copyOf(open, capacity);
+            atr = Arrays.copyOf(atr, capacity);
+            TH = Arrays.copyOf(TH, capacity);
+            TL = Arrays.copyOf(TL, capacity);
+            inPrice = Arrays.copyOf(inPrice, capacity);
+            orderTime = Arrays.copyOf(orderTime, capacity);
+        }
+
+        private void shift(int row) {
+            int count = size - row;
+            System.arraycopy(holdTimes, row, holdTimes, row + 1, count);
+            System.arraycopy(timestamps, row, timestamps, row + 1, count);
+            System.arraycopy(values, row, values, row + 1, count);
+            System.arraycopy(close, row, close, row + 1, count);
+            System.arraycopy(open, row, open, row + 1, count);
+            System.arraycopy(atr, row, atr, row + 1, count);
+            System.arraycopy(TH, row, TH, row + 1, count);
+            System.arraycopy(TL, row, TL, row + 1, count);
+            System.arraycopy(inPrice, row, inPrice, row + 1, count);
+            System.arraycopy(orderTime, row, orderTime, row + 1, count);
+        }
+
+        /**
+         * 复制当前数据生成订单（之后的追加不影响已返回的对象）
+         */
+        OrderTimeSeries toSeries() {
+            return new OrderTimeSeries(orderId,
+                    Arrays.copyOf(timestamps, size), Arrays.copyOf(values, size),
+                    Arrays.copyOf(close, size), Arrays.copyOf(open, size), Arrays.copyOf(atr, size),
+                    Arrays.copyOf(TH, size), Arrays.copyOf(TL, size),
+                    Arrays.copyOf(orderTime, size), Arrays.copyOf(inPrice, size));
+        }
+    }
+}
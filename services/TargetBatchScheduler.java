@@ -0,0 +1,58 @@
+package com.demo.extract.services;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+
+/**
+ * 目标级批量调度器
+ * 以目标订单为粒度在工作窃取线程池中分块并行执行，结果按输入顺序返回。
+ * 调度器的工作线程上，单个目标内部的距离计算应直接串行执行（见 {@link #inBatchWorker()}），
+ * 避免再把每个候选拆成小任务投递到另一个线程池。
+ */
+public class TargetBatchScheduler {
+
+    private final int parallelism;
+
+    /**
+     * 构造函数
+     * @param parallelism 并行度（目标级线程数）
+     */
+    public TargetBatchScheduler(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 当前线程是否为调度器的工作线程
+     */
+    public static boolean inBatchWorker() {
+        return Thread.currentThread() instanceof BatchWorkerThread;
+    }
+
+    /**
+     * 并行处理全部输入
+     * @param inputs 输入（如目标订单ID）
+     * @param task 单个输入的处理函数，需线程安全
+     * @return 处理结果，顺序与输入一致（单个失败时对应位置为null）
+     */
+    public <T, R> List<R> map(List<T> inputs, Function<T, R> task) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism, BatchWorkerThread::new, null, false);
+        try {
+            return ParallelMap.map(pool, inputs, task,
+                    (e, i) -> System.err.println("目标" + inputs.get(i) + "处理失败: " + e.getMessage()), "批量处理");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class BatchWorkerThread extends ForkJoinWorkerThread {
+        BatchWorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.demo.extract.services;
+
+import com.demo.extract.DTO.TradeRecord;
+import com.demo.extract.util.IntIntHashMap;
+import com.demo.extract.util.TradeJournalExcel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 交割单存储
+ * 交割单在内存中按行保存，并按订单号建立原始类型索引（订单号 → 行号），按订单查找和批量修改获利为O(1)/O(修改数)。
+ * Excel只用于导入导出：首次加载时解析Excel并写出紧凑的二进制缓存（文件名加.bin），
+ * 之后Excel未修改（大小和修改时间一致）时直接读取缓存；save()写回Excel并刷新缓存。
+ */
+public class TradeJournalStore {
+    private static final int CACHE_MAGIC = 0x544A4E4C; // "TJNL"
+    private static final int CACHE_VERSION = 1;
+    private static final int NULL_ORDER_ID = Integer.MIN_VALUE;
+
+    private final Path excelFile;
+    private final List<TradeRecord> records;
+
+    private final IntIntHashMap lastRow;       // 订单号 → 最后一条记录的行号
+    private final IntIntHashMap lastCloseRow;  // 订单号 → 最后一条平仓记录的行号
+    private final IntIntHashMap profitRow;     // 订单号 → 按updateProfitForOrder规则可修改获利的行号
+
+    private TradeJournalStore(Path excelFile, List<TradeRecord> records) {
+        this.excelFile = excelFile;
+        this.records = records;
+        this.lastRow = new IntIntHashMap(records.size());
+        this.lastCloseRow = new IntIntHashMap(records.size());
+        this.profitRow = new IntIntHashMap(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            TradeRecord record = records.get(i);
+            if (record.getOrderId() == null) {
+                continue;
+            }
+            int orderId = record.getOrderId();
+            lastRow.put(orderId, i);
+            if ("close".equals(record.getType())) {
+                lastCloseRow.put(orderId, i);
+                if (i > 1 && records.get(i - 1).getLots() == record.getLots()) {
+                    profitRow.putIfAbsent(orderId, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * 加载交割单：二进制缓存有效时读取缓存，否则解析Excel并写出缓存
+     */
+    public static TradeJournalStore load(String excelPath) throws IOException {
+        Path excelFile = Paths.get(excelPath).toAbsolutePath();
+        if (!Files.exists(excelFile)) {
+            throw new IOException("文件不存在: " + excelFile);
+        }
+        Path cacheFile = cacheFileOf(excelFile);
+        long size = Files.size(excelFile);
+        long modified = Files.getLastModifiedTime(excelFile).toMillis();
+
+        List<TradeRecord> records = null;
+        if (Files.exists(cacheFile)) {
+            try {
+                records = readCache(cacheFile, size, modified);
+            } catch (IOException e) {
+                System.err.println("交割单缓存读取失败，重新解析Excel: " + e.getMessage());
+            }
+        }
+        if (records == null) {
+            records = TradeJournalExcel.read(excelFile.toString());
+            writeCache(cacheFile, records, size, modified);
+        }
+        return new TradeJournalStore(excelFile, records);
+    }
+
+    /**
+     * 全部记录（只读视图，按Excel行顺序）
+     */
+    public List<TradeRecord> records() {
+        return Collections.unmodifiableList(records);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * 订单号对应的最后一条记录，不存在时返回null
+     */
+    public TradeRecord findLast(int orderId) {
+        int row = lastRow.get(orderId);
+        return row < 0 ? null : records.get(row);
+    }
+
+    /**
+     * 订单号对应的最后一条平仓（close）记录，不存在时返回null
+     */
+    public TradeRecord findLastClose(int orderId) {
+        int row = lastCloseRow.get(orderId);
+        return row < 0 ? null : records.get(row);
+    }
+
+    /**
+     * 批量修改获利金额，规则与updateProfitForOrder相同：修改第一条与上一行手数相同的平仓记录
+     * @param newProfits 订单号 → 新获利金额
+     * @return 实际修改的记录数
+     */
+    public int updateProfits(Map<Integer, Double> newProfits) {
+        int updated = 0;
+        for (Map.Entry<Integer, Double> entry : newProfits.entrySet()) {
+            int row = profitRow.get(entry.getKey());
+            if (row < 0) {
+                System.out.println("未找到订单号为 " + entry.getKey() + " 的平仓记录");
+                continue;
+            }
+            records.get(row).setProfit(entry.getValue());
+            updated++;
+        }
+        return updated;
+    }
+
+    /**
+     * 写回Excel并刷新二进制缓存
+     */
+    public void save() throws IOException {
+        TradeJournalExcel.write(records, excelFile.toString());
+        writeCache(cacheFileOf(excelFile), records,
+                Files.size(excelFile), Files.getLastModifiedTime(excelFile).toMillis());
+    }
+
+    private static Path cacheFileOf(Path excelFile) {
+        return excelFile.resolveSibling(excelFile.getFileName() + ".bin");
+    }
+
+    /**
+     * 读取缓存，缓存与Excel的大小或修改时间不一致时返回null
+     */
+    private static List<TradeRecord> readCache(Path cacheFile, long size, long modified) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile), 1 << 16))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+                return null;
+            }
+            if (in.readLong() != size || in.readLong() != modified) {
+                return null;
+            }
+            int count = in.readInt();
+            List<TradeRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                String time = readString(in);
+                String type = readString(in);
+                int orderId = in.readInt();
+                double lots = in.readDouble();
+                double price = in.readDouble();
+                double profit = in.readDouble();
+                records.add(new TradeRecord(id, time, type, orderId == NULL_ORDER_ID ? null : orderId,
+                        lots, price, profit));
+            }
+            return records;
+        }
+    }
+
+    private static void writeCache(Path cacheFile, List<TradeRecord> records, long size, long modified) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(cacheFile.getParent(), ".journal", ".bin");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeInt(records.size());
+                for (TradeRecord record : records) {
+                    out.writeInt(record.getId());
+                    writeString(out, record.getTime());
+                    writeString(out, record.getType());
+                    out.writeInt(record.getOrderId() == null ? NULL_ORDER_ID : record.getOrderId());
+                    out.writeDouble(record.getLots());
+                    out.writeDouble(record.getPrice());
+                    out.writeDouble(record.getProfit());
+                }
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // 缓存只影响下次加载速度，写入失败不影响本次结果
+            System.err.println("交割单缓存写入失败: " + e.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 临时文件清理失败可忽略
+                }
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.demo.extract.test;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.benchmark.SyntheticOrderGenerator;
+import com.demo.extract.services.FeatureService;
+import com.demo.extract.services.HnswIndex;
+import com.demo.extract.util.StandardScaler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * HnswIndex测试类
+ * 用合成订单按OrderFeatureIndex的方式为每个因子建索引并校准efSearch，
+ * 在校准后的ef下比较search与exactSearch的召回率：建索引后、标记删除部分节点后、重新插入这些订单后各测一次
+ */
+public class HnswIndexTest {
+    private static final int HISTORY_SIZE = 2000;
+    private static final int QUERY_COUNT = 200;
+    private static final int K = 20;
+    private static final double RECALL_TARGET = 0.95;
+    private static final double RECALL_TOLERANCE = 0.05; // 校准只抽样50个查询，允许的偏差
+    private static final double DELETE_RATIO = 0.2;
+
+    public static void main(String[] args) {
+        System.out.println("=== HnswIndex测试开始 ===");
+        SyntheticOrderGenerator generator = new SyntheticOrderGenerator(11L);
+        Map<String, OrderTimeSeries> history = generator.history(0, HISTORY_SIZE);
+        List<String> orderIds = new ArrayList<>(history.keySet());
+        Map<String, OrderTimeSeries> queries = generator.history(HISTORY_SIZE, QUERY_COUNT);
+        List<String> queryIds = new ArrayList<>(queries.keySet());
+        FeatureService featureService = new FeatureService();
+
+        for (int type = 1; type <= 6; type++) {
+            StandardScaler scaler = new StandardScaler();
+            double[][] features = featureService.extractFeatureMatrix(orderIds, history, type);
+            double[][] vectors = type == 1 ? scaler.standardize(features) : scaler.fitClosePrices(features);
+            double[][] queryVectors = new double[queryIds.size()][];
+            double[][] queryFeatures = featureService.extractFeatureMatrix(queryIds, queries, type);
+            for (int q = 0; q < queryVectors.length; q++) {
+                queryVectors[q] = type == 1 ? scaler.transform(queryFeatures[q]) : scaler.transformClosePrices(queryFeatures[q]);
+            }
+
+            HnswIndex index = new HnswIndex(vectors[0].length, 16, 100, type);
+            for (double[] vector : vectors) {
+                index.add(vector);
+            }
+            int ef = index.calibrate(RECALL_TARGET, K, 50);
+            System.out.printf("因子%d: 校准ef=%d, 校准召回率=%.3f%n", type, ef, index.getCalibratedRecall());
+            checkRecall(index, queryVectors, "因子" + type + "建索引后");
+
+            // 标记删除部分节点（订单更新时先删除旧节点）
+            Random random = new Random(type);
+            List<Integer> removed = new ArrayList<>();
+            for (int node = 0; node < vectors.length; node++) {
+                if (random.nextDouble() < DELETE_RATIO) {
+                    index.markDeleted(node);
+                    removed.add(node);
+                }
+            }
+            check(index.liveSize() == vectors.length - removed.size(), "因子" + type + "删除后节点数不一致");
+            checkRecall(index, queryVectors, "因子" + type + "删除" + removed.size() + "个节点后");
+
+            // 重新插入被删除的订单（更新=删除旧节点+插入新节点）
+            for (int node : removed) {
+                index.add(vectors[node]);
+            }
+            check(index.liveSize() == vectors.length, "因子" + type + "重新插入后节点数不一致");
+            checkRecall(index, queryVectors, "因子" + type + "重新插入后");
+        }
+        System.out.println("=== HnswIndex测试通过 ===");
+    }
+
+    /**
+     * 在校准后的ef下逐个查询：结果不含已删除节点，平均召回率不低于目标
+     */
+    private static void checkRecall(HnswIndex index, double[][] queryVectors, String step) {
+        double recall = 0.0;
+        for (double[] query : queryVectors) {
+            int[] approx = index.search(query, K);
+            int[] exact = index.exactSearch(query, K);
+            for (int node : approx) {
+                check(!index.isDeleted(node), step + ": 查询返回了已删除的节点" + node);
+            }
+            int hit = 0;
+            for (int a : approx) {
+                for (int e : exact) {
+                    if (a == e) {
+                        hit++;
+                        break;
+                    }
+                }
+            }
+            recall += exact.length == 0 ? 1.0 : hit / (double) exact.length;
+        }
+        recall /= queryVectors.length;
+        System.out.printf("  %s: ef=%d, 召回率=%.3f%n", step, index.getEfSearch(), recall);
+        check(recall >= RECALL_TARGET - RECALL_TOLERANCE,
+                step + ": 召回率" + String.format("%.3f", recall) + "低于目标" + RECALL_TARGET);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException("测试失败 - " + message);
+        }
+    }
+}
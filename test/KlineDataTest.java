@@ -8,6 +8,7 @@ import com.demo.extract.model.MarkovAnalysisResult;
 import com.demo.extract.DTO.OverallEvaluation;
 import com.demo.extract.model.ImprovedAdvancedMarkovModel.SegmentReport;
 import com.demo.extract.services.KlineDataLoader;
+import com.demo.extract.services.MarkovBatchAnalyzer;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -41,20 +42,27 @@ public class KlineDataTest {
             System.out.println(loader.getKlineStatistics(klines));
             
             // 按天分组K线数据
-            Map<LocalDate, List<KlineData>> klinesByDay = groupKlinesByDay(klines);
+            Map<LocalDate, List<KlineData>> klinesByDay = new TreeMap<>(groupKlinesByDay(klines));
             System.out.println("\n按天分组统计：共" + klinesByDay.size() + "天数据");
             
-            // 为每一天的数据进行马尔可夫模型分析
+            // 并行分析每一天的数据，结果按日期顺序返回
+            MarkovBatchAnalyzer batchAnalyzer = new MarkovBatchAnalyzer();
+            MarkovBatchAnalyzer.BatchResult<MarkovAnalysisResult> batchResult = batchAnalyzer.analyzeDailyKlines(klinesByDay);
+            batchAnalyzer.shutdown();
+            
+            int dayIndex = 0;
             for (Map.Entry<LocalDate, List<KlineData>> entry : klinesByDay.entrySet()) {
-                LocalDate date = entry.getKey();
-                List<KlineData> dailyKlines = entry.getValue();
-                
-                System.out.println("\n========== 分析日期：" + date.format(DATE_FORMATTER) + " (" + dailyKlines.size() + "条数据) ==========");
-                
-                // 使用收盘价进行马尔可夫模型分析
-                analyzeDailyDataWithMarkov(dailyKlines, date.format(DATE_FORMATTER));
+                MarkovAnalysisResult result = batchResult.getResults().get(dayIndex++);
+                System.out.println("\n========== 分析日期：" + entry.getKey().format(DATE_FORMATTER) + " (" + entry.getValue().size() + "条数据) ==========");
+                if (result == null) {
+                    // 批量分析只在单日分析抛出异常时留空，异常信息已由MarkovBatchAnalyzer输出
+                    System.out.println("该日分析失败，跳过");
+                    continue;
+                }
+                printMarkovAnalysisResult(result);
             }
             
+            System.out.println("\n" + batchResult.getSummary());
             System.out.println("\n测试完成");
             
         } catch (IOException e) {
@@ -73,39 +81,6 @@ public class KlineDataTest {
                 .collect(Collectors.groupingBy(kline -> kline.getTimestamp().toLocalDate()));
     }
     
-    /**
-     * 使用ImprovedAdvancedMarkovModel分析每日K线数据
-     * @param dailyKlines 每日K线数据
-     * @param dateStr 日期字符串
-     */
-    private static void analyzeDailyDataWithMarkov(List<KlineData> dailyKlines, String dateStr) {
-        if (dailyKlines.isEmpty()) {
-            System.out.println("没有可用的K线数据进行分析");
-            return;
-        }
-        
-        // 准备ImprovedAdvancedMarkovModel所需的数据格式
-        int dataSize = dailyKlines.size();
-        double[] closeValues = new double[dataSize];
-        String[] timeStrings = new String[dataSize];
-        
-        // 填充数据
-        for (int i = 0; i < dataSize; i++) {
-            KlineData kline = dailyKlines.get(i);
-            closeValues[i] = kline.getClose();
-            // 格式化为适合ImprovedAdvancedMarkovModel的时间格式
-            timeStrings[i] = kline.getTimestamp().format(DATE_FORMATTER) + " " + 
-                            kline.getTimestamp().format(DateTimeFormatter.ofPattern("HH:mm"));
-        }
-        
-        // 创建ImprovedAdvancedMarkovModel并进行分析
-        ImprovedAdvancedMarkovModel model = new ImprovedAdvancedMarkovModel(closeValues, timeStrings, "KLINE_" + dateStr);
-        MarkovAnalysisResult result = model.getMarkovResult();
-        
-        // 打印分析结果
-        printMarkovAnalysisResult(result);
-    }
-    
     /**
      * 打印马尔可夫模型分析结果
      * @param result 分析结果
@@ -0,0 +1,184 @@
+package com.demo.extract.test;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+import com.demo.extract.benchmark.SyntheticOrderGenerator;
+import com.demo.extract.services.DataLoaderNew;
+import com.demo.extract.services.TailingDataLoader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * TailingDataLoader测试类
+ * 把合成订单的CSV分多次追加到临时文件（含超过读取块大小的一次追加、写到一半的行、持仓时间乱序的行），
+ * 再截断、替换文件，每一步都要求refresh()后的结果与DataLoaderNew对文件中完整行的解析结果逐个数组一致
+ */
+public class TailingDataLoaderTest {
+    private static final int ORDER_COUNT = 400;       // 约15MB，第一次读取跨越8MB的读取块
+    private static final int FIRST_CHUNK_BYTES = 9 * 1024 * 1024;
+    private static final int TAIL_CHUNKS = 7;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== TailingDataLoader测试开始 ===");
+        Path dir = Files.createTempDirectory("tailing");
+        Path file = dir.resolve("orders.csv");
+        try {
+            Random random = new Random(42);
+            List<String> lines = csvLines(dir);
+            String header = lines.get(0);
+            List<String> rows = shuffleNeighbours(lines.subList(1, lines.size()), random);
+            byte[] content = join(header, rows);
+            System.out.println("测试数据: " + rows.size() + "行, " + content.length + "字节");
+
+            TailingDataLoader loader = new TailingDataLoader(file.toString());
+
+            // 1. 分块追加：第一次超过读取块大小，之后在随机位置切断（行写到一半）
+            List<Integer> cuts = new ArrayList<>();
+            cuts.add(FIRST_CHUNK_BYTES);
+            for (int i = 0; i < TAIL_CHUNKS - 1; i++) {
+                cuts.add(FIRST_CHUNK_BYTES + random.nextInt(content.length - FIRST_CHUNK_BYTES));
+            }
+            cuts.add(content.length);
+            Collections.sort(cuts);
+            int written = 0;
+            for (int cut : cuts) {
+                append(file, Arrays.copyOfRange(content, written, cut));
+                written = cut;
+                boolean partial = content[written - 1] != '\n';
+                verify(loader, dir, Arrays.copyOf(content, written),
+                        "追加到" + written + "字节" + (partial ? "（最后一行未写完）" : ""));
+            }
+
+            // 2. 截断：同一文件写入更短的内容
+            byte[] truncated = join(header, rows.subList(0, rows.size() / 10));
+            Files.write(file, truncated, StandardOpenOption.TRUNCATE_EXISTING);
+            verify(loader, dir, truncated, "截断");
+
+            // 3. 替换（日志轮转）：原文件改名，新建同名文件
+            Files.move(file, dir.resolve("orders.csv.1"));
+            List<String> rotatedRows = rows.subList(rows.size() / 10, rows.size() / 5);
+            byte[] rotated = join(header, rotatedRows);
+            int half = rotated.length / 2;
+            append(file, Arrays.copyOf(rotated, half));
+            verify(loader, dir, Arrays.copyOf(rotated, half), "替换后写入一半");
+            append(file, Arrays.copyOfRange(rotated, half, rotated.length));
+            verify(loader, dir, rotated, "替换后写完");
+
+            System.out.println("=== TailingDataLoader测试通过 ===");
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * refresh()后检查：已读取的全部订单与DataLoaderNew对完整行的解析一致，返回的变化订单为最新数据
+     */
+    private static void verify(TailingDataLoader loader, Path dir, byte[] written, String step) throws IOException {
+        List<OrderTimeSeries> changed = loader.refresh();
+
+        int complete = written.length;
+        while (complete > 0 && written[complete - 1] != '\n') {
+            complete--;
+        }
+        Path reference = dir.resolve("reference.csv");
+        Files.write(reference, Arrays.copyOf(written, complete));
+        Map<String, OrderTimeSeries> expected = byId(new DataLoaderNew().loadFromCsv(reference.toString()));
+        Map<String, OrderTimeSeries> actual = byId(loader.orders());
+
+        check(new ArrayList<>(actual.keySet()).equals(new ArrayList<>(expected.keySet())),
+                step + ": 订单列表不一致 " + actual.size() + " vs " + expected.size());
+        for (OrderTimeSeries series : actual.values()) {
+            assertSame(series, expected.get(series.getOrderId()), step);
+        }
+        for (OrderTimeSeries series : changed) {
+            assertSame(series, expected.get(series.getOrderId()), step + "（refresh返回值）");
+        }
+        check(loader.getOffset() == complete, step + ": 已读位置" + loader.getOffset() + "，应为" + complete);
+        System.out.println(step + ": " + actual.size() + "个订单一致，本次变化" + changed.size() + "个");
+    }
+
+    private static void assertSame(OrderTimeSeries actual, OrderTimeSeries expected, String step) {
+        String prefix = step + ": 订单" + actual.getOrderId();
+        check(expected != null, prefix + "不应存在");
+        check(Arrays.equals(actual.getTimestamps(), expected.getTimestamps()), prefix + " timestamps不一致");
+        check(Arrays.equals(actual.getValues(), expected.getValues()), prefix + " values不一致");
+        check(Arrays.equals(actual.getClose(), expected.getClose()), prefix + " close不一致");
+        check(Arrays.equals(actual.getOpen(), expected.getOpen()), prefix + " open不一致");
+        check(Arrays.equals(actual.getAtr(), expected.getAtr()), prefix + " atr不一致");
+        check(Arrays.equals(actual.getTH(), expected.getTH()), prefix + " DonchianHigh不一致");
+        check(Arrays.equals(actual.getTL(), expected.getTL()), prefix + " DonchianLow不一致");
+        check(Arrays.equals(actual.getValueTime(), expected.getValueTime()), prefix + " 日期不一致");
+        check(Arrays.equals(actual.getInPrice(), expected.getInPrice()), prefix + " 进场价格不一致");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException("测试失败 - " + message);
+        }
+    }
+
+    /**
+     * 合成订单的CSV行（第一行为表头）
+     */
+    private static List<String> csvLines(Path dir) throws IOException {
+        Path source = dir.resolve("source.csv");
+        new SyntheticOrderGenerator(7L).writeCsv(source.toString(), ORDER_COUNT);
+        List<String> lines = Files.readAllLines(source, StandardCharsets.UTF_8);
+        Files.delete(source);
+        return lines;
+    }
+
+    /**
+     * 随机交换相邻行：订单交错出现，同一订单的持仓时间乱序到达
+     */
+    private static List<String> shuffleNeighbours(List<String> rows, Random random) {
+        List<String> shuffled = new ArrayList<>(rows);
+        for (int i = 1; i < shuffled.size(); i++) {
+            if (random.nextInt(4) == 0) {
+                Collections.swap(shuffled, i - 1, i);
+            }
+        }
+        return shuffled;
+    }
+
+    private static byte[] join(String header, List<String> rows) {
+        StringBuilder text = new StringBuilder(header).append('\n');
+        for (String row : rows) {
+            text.append(row).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void append(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static Map<String, OrderTimeSeries> byId(List<OrderTimeSeries> orders) {
+        Map<String, OrderTimeSeries> map = new LinkedHashMap<>();
+        for (OrderTimeSeries order : orders) {
+            map.put(order.getOrderId(), order);
+        }
+        return map;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (java.util.stream.Stream<Path> stream = Files.list(dir)) {
+            stream.forEach(files::add);
+        }
+        for (Path path : files) {
+            Files.deleteIfExists(path);
+        }
+        Files.deleteIfExists(dir);
+    }
+}
@@ -5,22 +5,20 @@ import com.demo.extract.DTO.updateOrderDTO;
 import com.demo.extract.WriteOrder;
 import com.demo.extract.model.DecisionResult;
 import com.demo.extract.services.DataLoaderNew;
-import com.demo.extract.zzq.ZZQDataLoader;
-import com.demo.extract.zzq.dto.zzqdto;
+import com.demo.extract.zzq.ZZQEntryOptimizer;
+import com.demo.extract.zzq.ZZQSignalStore;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class thirtyMinEURUSD {
+    private static final String ZZQ_FILE = "D:/data/章铮奇/eurusd_30min.csv";
 
     public static void main(String[] args) throws IOException {
         loadStartData();
@@ -36,51 +34,12 @@ public class thirtyMinEURUSD {
         // 加载数据
         DataLoaderNew loaderNew = new DataLoaderNew();
         List<OrderTimeSeries> allSeries = loaderNew.loadFromCsv("D:/data/高胜率/欧美收益分仓69胜率明细.csv");
-        List<zzqdto> zzqData = getZZQData();
+        ZZQSignalStore.Snapshot signals = ZZQSignalStore.shared(ZZQ_FILE).snapshot();
 
-        // 预处理zzq数据，转换为Map以提高查询效率
-        Map<String, zzqdto> zzqMap = new HashMap<>();
-        for (zzqdto dto : zzqData) {
-            zzqMap.put(dto.getDate(), dto);
-        }
-
-        // 预处理：创建从LocalDateTime到索引的映射，提高findIntervalIndex的查找效率
-        Map<LocalDateTime, Integer> timeToIndexMap = preprocessTimeIndexMap(zzqData);
-
-        Map<String, OrderTimeSeries> orderMap = new HashMap<>();
-
-        for (OrderTimeSeries orderTimeSeries : allSeries) {
-            if (orderTimeSeries.getValues().length >= 70) {
-                String action = detectOrderDirection(orderTimeSeries);
-                orderTimeSeries.setAction(action);
-                String[] valueTime = orderTimeSeries.getValueTime();
-
-                // 遍历时间序列，找到匹配的开仓点
-                for (int i = 0; i < valueTime.length; i=i+5) {
-                    // 使用优化后的方法判断
-                    LocalDateTime indexTime = findIntervalIndex(valueTime[i], timeToIndexMap);
-                    Integer index= timeToIndexMap.get(indexTime);
-                    // 确保索引有效
-                    if (index >= 0 && index < zzqData.size()) {
-                        String nextAction = getZZQOptimized(zzqData.get(index).getDate(), action, zzqMap);
-                        if (nextAction.equals("1")) {
-                            if(i != 0){
-
-                                int timeIndex = findTimeIndex(valueTime, indexTime);
-                                if(timeIndex != -1){
-                                    orderTimeSeries.setStep(timeIndex);
-                                    break;
-                                }
-
-                            }
-                            break;
-                        }
-                    }
-                }
+        // 按订单并行查找最佳开仓点
+        Map<String, OrderTimeSeries> orderMap = ZZQEntryOptimizer.floor(signals, 5)
+                .optimize(allSeries, 70, thirtyMinEURUSD::detectOrderDirection);
 
-                orderMap.put(orderTimeSeries.getOrderId(), orderTimeSeries);
-            }
-        }
         List<updateOrderDTO> list = new ArrayList<>();
         // 处理结果
         for (String key : orderMap.keySet()) {
@@ -146,27 +105,6 @@ public class thirtyMinEURUSD {
 
 
 
-    public static List<zzqdto> getZZQData() throws IOException {
-        ZZQDataLoader loaderNew = new ZZQDataLoader();
-        return loaderNew.loadFromCsv("D:/data/章铮奇/eurusd_30min.csv");
-    }
-
-    /**
-     * 预处理zzqData列表，创建从LocalDateTime到索引的映射
-     */
-    private static Map<LocalDateTime, Integer> preprocessTimeIndexMap(List<zzqdto> zzqData) {
-        Map<LocalDateTime, Integer> timeToIndexMap = new LinkedHashMap<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
-
-        for (int i = 0; i < zzqData.size(); i++) {
-            zzqdto dto = zzqData.get(i);
-            LocalDateTime dateTime = LocalDateTime.parse(dto.getDate(), formatter);
-            timeToIndexMap.put(dateTime, i);
-        }
-
-        return timeToIndexMap;
-    }
-
     /**
      * 判断订单是多单还是空单（简化版，只比较特定索引点的值）
      * @param orderTimeSeries 订单时间序列数据
@@ -222,70 +160,6 @@ public class thirtyMinEURUSD {
 
 
 
-    public static LocalDateTime findIntervalIndex(String inputTime, Map<LocalDateTime, Integer> timePoints) {
-        // 1. 解析输入时间
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
-        LocalDateTime dateTime = LocalDateTime.parse(inputTime, formatter);
-
-        // 检查时间是否在第一个时间点之前
-        LocalDateTime firstKey = timePoints.keySet().iterator().next();
-        if (dateTime.isBefore(firstKey)) {
-            throw new RuntimeException("不在范围时间周期内"+inputTime);
-        }
-
-        // 遍历时间点Map，找到合适的区间
-        LocalDateTime previousKey = null;
-        for (LocalDateTime key : timePoints.keySet()) {
-            if (dateTime.isBefore(key)) {
-                return previousKey; // 返回前一个key（区间起点）
-            }
-            previousKey = key;
-        }
-
-        // 如果时间在所有时间点之后，返回最后一个key
-        return previousKey;
-    }
-
-
-    /**
-     * 优化版的ZZQ判断方法，使用HashMap提高查找效率
-     */
-    public static String getZZQOptimized(String date, String action, Map<String, zzqdto> zzqMap) {
-        // 使用HashMap快速查找date对应的zzqdto
-        zzqdto currentDto = zzqMap.get(date);
-        if (currentDto == null) {
-            return "0";
-        }
-
-        if(action.equals("多")){
-            if(currentDto.getFluctuation().equals("涨")){
-                return "1";
-            }else {
-                return "2";
-            }
-        }
-
-        if(action.equals("空")){
-            if(currentDto.getFluctuation().equals("跌")){
-                return "1";
-            }else {
-                return "2";
-            }
-        }
-
-        return "0";
-    }
-
-
-    /**
-     * 计算输入时间所属的15分钟区间的起始时间
-     */
-    private static LocalDateTime calculate15MinInterval(LocalDateTime dateTime) {
-        int minute = dateTime.getMinute();
-        int intervalMinute = (minute / 15) * 15; // 取最近的15分钟整点
-        return dateTime.withMinute(intervalMinute).withSecond(0).withNano(0);
-    }
-
     public static void mergeList(List<DecisionResult> results , Map<String, OrderTimeSeries> enhancedDict) throws IOException {
         Map<String,Double> updateData = new HashMap<>();
         List<updateOrderDTO> list = new ArrayList<>();
@@ -339,20 +213,4 @@ public class thirtyMinEURUSD {
     }
 
 
-    public static int findTimeIndex(String[] valueTime, LocalDateTime indexTime) {
-        // 定义日期时间格式（必须与valueTime中的格式一致）
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
-
-        for (int i = 0; i < valueTime.length; i++) {
-            // 将字符串解析为LocalDateTime
-            LocalDateTime dateTime = LocalDateTime.parse(valueTime[i], formatter);
-
-            // 比较时间是否相同
-            if (dateTime.equals(indexTime)) {
-                return i; // 返回匹配的索引
-            }
-        }
-
-        return -1; // 未找到返回-1
-    }
 }
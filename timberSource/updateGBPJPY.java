@@ -6,12 +6,10 @@ import com.demo.extract.Main;
 import com.demo.extract.WriteOrder;
 import com.demo.extract.model.DecisionResult;
 import com.demo.extract.services.DataLoaderNew;
-import com.demo.extract.zzq.ZZQDataLoader;
-import com.demo.extract.zzq.dto.zzqdto;
+import com.demo.extract.zzq.ZZQEntryOptimizer;
+import com.demo.extract.zzq.ZZQSignalStore;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -20,6 +18,8 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class updateGBPJPY {
+    private static final String ZZQ_FILE = "D:/data/章铮奇/gbpjpy_15min.csv";
+
     public static void main(String[] args) throws IOException {
         loadStartData();
     }
@@ -31,46 +31,12 @@ public class updateGBPJPY {
         // 加载数据
         DataLoaderNew loaderNew = new DataLoaderNew();
         List<OrderTimeSeries> allSeries = loaderNew.loadFromCsv("D:/data/高胜率/镑日分仓收益.csv");
-        List<zzqdto> zzqData = getZZQData();
-
-        // 预处理zzq数据，转换为Map以提高查询效率
-        Map<String, zzqdto> zzqMap = new HashMap<>();
-        for (zzqdto dto : zzqData) {
-            zzqMap.put(dto.getDate(), dto);
-        }
+        ZZQSignalStore.Snapshot signals = ZZQSignalStore.shared(ZZQ_FILE).snapshot();
 
-        // 预处理：创建从LocalDateTime到索引的映射，提高findIntervalIndex的查找效率
-        Map<LocalDateTime, Integer> timeToIndexMap = preprocessTimeIndexMap(zzqData);
+        // 按订单并行查找最佳开仓点
+        Map<String, OrderTimeSeries> orderMap = ZZQEntryOptimizer.bucket(signals, 15, 2)
+                .optimize(allSeries, 70, updateGBPJPY::detectOrderDirection);
 
-        Map<String, OrderTimeSeries> orderMap = new HashMap<>();
-
-        for (OrderTimeSeries orderTimeSeries : allSeries) {
-            if (orderTimeSeries.getValues().length >= 70) {
-                String action = detectOrderDirection(orderTimeSeries);
-                orderTimeSeries.setAction(action);
-                String[] valueTime = orderTimeSeries.getValueTime();
-
-                // 遍历时间序列，找到匹配的开仓点
-                for (int i = 0; i < valueTime.length; i = i+2) {
-                    // 使用优化后的方法判断
-                    int index = findIntervalIndex(valueTime[i], timeToIndexMap);
-
-                    // 确保索引有效
-                    if (index >= 0 && index < zzqData.size()) {
-                        String nextAction = getZZQOptimized(zzqData.get(index).getDate(), action, zzqMap);
-                        if (nextAction.equals("1")) {
-                            if(i != 0){
-                                orderTimeSeries.setStep(i);
-                                break;
-                            }
-                            break;
-                        }
-                    }
-                }
-
-                orderMap.put(orderTimeSeries.getOrderId(), orderTimeSeries);
-            }
-        }
         List<updateOrderDTO> list = new ArrayList<>();
         // 处理结果
         for (String key : orderMap.keySet()) {
@@ -107,27 +73,6 @@ public class updateGBPJPY {
 
 
 
-    public static List<zzqdto> getZZQData() throws IOException {
-        ZZQDataLoader loaderNew = new ZZQDataLoader();
-        return loaderNew.loadFromCsv("D:/data/章铮奇/gbpjpy_15min.csv");
-    }
-
-    /**
-     * 预处理zzqData列表，创建从LocalDateTime到索引的映射
-     */
-    private static Map<LocalDateTime, Integer> preprocessTimeIndexMap(List<zzqdto> zzqData) {
-        Map<LocalDateTime, Integer> timeToIndexMap = new HashMap<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
-
-        for (int i = 0; i < zzqData.size(); i++) {
-            zzqdto dto = zzqData.get(i);
-            LocalDateTime dateTime = LocalDateTime.parse(dto.getDate(), formatter);
-            timeToIndexMap.put(dateTime, i);
-        }
-
-        return timeToIndexMap;
-    }
-
     /**
      * 判断订单是多单还是空单（简化版，只比较特定索引点的值）
      * @param orderTimeSeries 订单时间序列数据
@@ -181,61 +126,6 @@ public class updateGBPJPY {
         return "未知";
     }
 
-    /**
-     * 优化版的findIntervalIndex方法，使用预处理的Map进行O(1)时间复杂度的查找
-     */
-    public static int findIntervalIndex(String inputTime, Map<LocalDateTime, Integer> timeToIndexMap) {
-        // 1. 解析输入时间
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
-        LocalDateTime inputDateTime = LocalDateTime.parse(inputTime, formatter);
-
-        // 2. 计算所属的15分钟区间
-        LocalDateTime intervalStartTime = calculate15MinInterval(inputDateTime);
-
-        // 3. 使用预处理的Map直接查找，时间复杂度O(1)
-        return timeToIndexMap.getOrDefault(intervalStartTime, -1);
-    }
-
-
-    /**
-     * 优化版的ZZQ判断方法，使用HashMap提高查找效率
-     */
-    public static String getZZQOptimized(String date, String action, Map<String, zzqdto> zzqMap) {
-        // 使用HashMap快速查找date对应的zzqdto
-        zzqdto currentDto = zzqMap.get(date);
-        if (currentDto == null) {
-            return "0";
-        }
-
-        if(action.equals("多")){
-            if(currentDto.getFluctuation().equals("涨")){
-                return "1";
-            }else {
-                return "2";
-            }
-        }
-
-        if(action.equals("空")){
-            if(currentDto.getFluctuation().equals("跌")){
-                return "1";
-            }else {
-                return "2";
-            }
-        }
-
-        return "0";
-    }
-
-
-    /**
-     * 计算输入时间所属的15分钟区间的起始时间
-     */
-    private static LocalDateTime calculate15MinInterval(LocalDateTime dateTime) {
-        int minute = dateTime.getMinute();
-        int intervalMinute = (minute / 15) * 15; // 取最近的15分钟整点
-        return dateTime.withMinute(intervalMinute).withSecond(0).withNano(0);
-    }
-
     public static void mergeList(List<DecisionResult> results ,Map<String, OrderTimeSeries> enhancedDict) throws IOException {
         Map<String,Double> updateData = new HashMap<>();
         List<updateOrderDTO> list = new ArrayList<>();
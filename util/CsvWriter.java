@@ -2,19 +2,9 @@ package com.demo.extract.util;
 
 import com.demo.extract.DTO.OrderTimeSeries;
 import com.demo.extract.DTO.TradeRecord;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -48,18 +38,16 @@ public class CsvWriter {
             throw new IllegalArgumentException("参数列表长度不一致");
         }
 
-        try (FileWriter writer = new FileWriter(filePath)) {
+        try (ResultSink sink = ResultSink.open(filePath)) {
             // 1. 写入标题行
-            writer.append("时间,操作,ID\n");
+            sink.row("时间,操作,ID");
 
             // 2. 写入数据行
             for (int i = 0; i < currencyPairs.size(); i++) {
-                writer.append(currencyPairs.get(i))
-                        .append(",")
-                        .append(operations.get(i))
-                        .append(",")
-                        .append(ids.get(i))
-                        .append("\n");
+                sink.field(currencyPairs.get(i))
+                        .field(operations.get(i))
+                        .field(ids.get(i))
+                        .endRow();
             }
         }
     }
@@ -71,124 +59,61 @@ public class CsvWriter {
 
     public static void MNNWrier( String filePath,Map<String, OrderTimeSeries> dtMap)throws IOException{
 
-
-
-        try (FileWriter writer = new FileWriter(filePath)) {
+        try (ResultSink sink = ResultSink.open(filePath)) {
             // 1. 写入标题行
-            writer.append("目标订单id,对比订单id,距离,目标订单t1,目标订单t2,对比订单t1,对比订单t2\n");
-            for (String key:dataMap.keySet()){
-                Map<String, Double> stringDoubleMap = dataMap.get(key);
-                for (String key1:stringDoubleMap.keySet()){
-                    String targetOrderT1 ="";
-                    String targetOrderT2 ="";
-                    String simOrderT1 ="";
-                    String simOrderT2 ="";
-                    double[] targrtValues = dtMap.get(key).getValues();
-                    double[] simtValues = dtMap.get(key1).getValues();
-                    if(targrtValues.length>57){
-                        targetOrderT1 = targrtValues[56]+"";
-                    }else {
-                        targetOrderT1 = "0";
-                    }
-                    if(targrtValues.length>70){
-                        targetOrderT2 = targrtValues[targrtValues.length-1]+"";
-                    }else {
-                        targetOrderT2 = "0";
-                    }
-                    if(simtValues.length>57){
-                        simOrderT1 = simtValues[56]+"";
-                    }else {
-                        simOrderT1 = "0";
-                    }
-                    if(simtValues.length>70){
-                        simOrderT2 = simtValues[simtValues.length-1]+"";
-                    }else {
-                        simOrderT2 = "0";
-                    }
-                    if(!targetOrderT1.equals("0")){
-                        writer.append(key).append(",")
-                                .append(key1).append(",")
-                                .append(stringDoubleMap.get(key1).toString()).append(",")
-                                .append(targetOrderT1).append(",")
-                                .append(targetOrderT2).append(",")
-                                .append(simOrderT1).append(",")
-                                .append(simOrderT2).append(",")
-                                .append("\n");
-                    }
-
+            sink.row("目标订单id,对比订单id,距离,目标订单t1,目标订单t2,对比订单t1,对比订单t2");
+            for (Map.Entry<String, Map<String, Double>> entry : dataMap.entrySet()) {
+                String key = entry.getKey();
+                // 目标订单每个目标只取一次，按下标读取，不复制整个序列
+                OrderTimeSeries target = dtMap.get(key);
+                if (target.getLength() <= 57) {
+                    continue; // 目标订单t1为0时不输出
+                }
+                for (Map.Entry<String, Double> similar : entry.getValue().entrySet()) {
+                    OrderTimeSeries sim = dtMap.get(similar.getKey());
+                    sink.field(key)
+                            .field(similar.getKey())
+                            .field(similar.getValue());
+                    pointT1(sink, target);
+                    pointT2(sink, target);
+                    pointT1(sink, sim);
+                    pointT2(sink, sim);
+                    sink.field("").endRow();
                 }
-
-
             }
-
         }
     }
 
+    /**
+     * t1：第57个点的收益，序列长度不超过57时为0
+     */
+    private static void pointT1(ResultSink sink, OrderTimeSeries series) {
+        if (series.getLength() > 57) {
+            sink.field(series.getValue(56));
+        } else {
+            sink.field("0");
+        }
+    }
 
-    // 从Excel文件读取交易记录
-    public static List<TradeRecord> readRecordsFromExcel(String filePath) throws IOException {
-        List<TradeRecord> records = new ArrayList<>();
-
-        try (FileInputStream fis = new FileInputStream(filePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            Sheet sheet = workbook.getSheetAt(0); // 获取第一个工作表
-
-            // 从第二行开始读取(跳过表头)
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) {
-                    continue;
-                }
-                if (row.getCell(6) != null && row.getCell(6).getCellType() != CellType.BLANK) {
-                    int id = (int) row.getCell(0).getNumericCellValue();
-                    String time = row.getCell(1).getStringCellValue();
-                    String type = row.getCell(2).getStringCellValue();
-                    int orderId = (int) row.getCell(3).getNumericCellValue();
-                    double lots = row.getCell(4).getNumericCellValue();
-                    double price = row.getCell(5).getNumericCellValue();
-                    double profit = row.getCell(6).getNumericCellValue();
-                    records.add(new TradeRecord(id, time, type, orderId, lots, price, profit));
-                }
-
-
-
-            }
+    /**
+     * t2：最后一个点的收益，序列长度不超过70时为0
+     */
+    private static void pointT2(ResultSink sink, OrderTimeSeries series) {
+        if (series.getLength() > 70) {
+            sink.field(series.getValue(series.getLength() - 1));
+        } else {
+            sink.field("0");
         }
-        return records;
     }
 
-    // 将记录写入Excel文件
-    public static void writeRecordsToExcel(List<TradeRecord> records, String filePath) throws IOException {
-        try (Workbook workbook = new XSSFWorkbook()) {
-            Sheet sheet = workbook.createSheet("交易记录");
-
-            // 创建表头行
-            Row headerRow = sheet.createRow(0);
-            String[] headers = {"序号", "时间", "类型", "订单", "手数", "价格", "获利"};
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-            }
 
-            // 写入数据行
-            for (int i = 0; i < records.size(); i++) {
-                Row row = sheet.createRow(i + 1);
-                TradeRecord record = records.get(i);
-
-                row.createCell(0).setCellValue(record.getId());
-                row.createCell(1).setCellValue(record.getTime());
-                row.createCell(2).setCellValue(record.getType());
-                row.createCell(3).setCellValue(record.getOrderId());
-                row.createCell(4).setCellValue(record.getLots());
-                row.createCell(5).setCellValue(record.getPrice());
-                row.createCell(6).setCellValue(record.getProfit());
-            }
+    // 从Excel文件读取交易记录（流式读取）
+    public static List<TradeRecord> readRecordsFromExcel(String filePath) throws IOException {
+        return TradeJournalExcel.read(filePath);
+    }
 
-            // 写入文件
-            try (FileOutputStream fos = new FileOutputStream(filePath)) {
-                workbook.write(fos);
-            }
-        }
+    // 将记录写入Excel文件（流式写入）
+    public static void writeRecordsToExcel(List<TradeRecord> records, String filePath) throws IOException {
+        TradeJournalExcel.write(records, filePath);
     }
 }
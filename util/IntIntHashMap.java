@@ -0,0 +1,99 @@
+package com.demo.extract.util;
+
+import java.util.Arrays;
+
+/**
+ * int → int 的开放寻址哈希表（线性探测），值必须非负
+ * 键和值都存放在原始类型数组中，不装箱；查找不到时返回-1。
+ */
+public class IntIntHashMap {
+    private static final int MISSING = -1;
+
+    private int[] keys;
+    private int[] values; // MISSING 表示空槽
+    private int size;
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    /**
+     * 键对应的值，不存在时返回-1
+     */
+    public int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == MISSING) {
+                return MISSING;
+            }
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * 写入（覆盖已有值）
+     * @param value 非负值
+     */
+    public void put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("值必须非负: " + value);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == MISSING) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            }
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 仅在键不存在时写入
+     */
+    public void putIfAbsent(int key, int value) {
+        if (!containsKey(key)) {
+            put(key, value);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, MISSING);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != MISSING) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -55,6 +55,25 @@ public class StandardScaler {
         return new StandardScaler().standardize(returns);
     }
 
+    /**
+     * 与preprocessClosePrices相同的处理，但在当前实例上拟合均值和标准差，
+     * 之后可用transformClosePrices对新样本做一致的转换
+     */
+    public double[][] fitClosePrices(double[][] prices) {
+        double[][] returns = new double[prices.length][];
+        for (int i = 0; i < prices.length; i++) {
+            returns[i] = calculateLogReturns(prices[i]);
+        }
+        return standardize(returns);
+    }
+
+    /**
+     * 使用fitClosePrices拟合的参数转换单个样本
+     */
+    public double[] transformClosePrices(double[] prices) {
+        return transform(calculateLogReturns(prices));
+    }
+
     private double[] calculateLogReturns(double[] prices) {
         double[] returns = new double[prices.length - 1];
         for (int i = 1; i < prices.length; i++) {
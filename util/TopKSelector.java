@@ -0,0 +1,100 @@
+package com.demo.extract.util;
+
+/**
+ * 基于有界最小堆的TopK选择器
+ * 在double[]分数上直接选出分数最高的K个下标，复杂度O(N log K)，除结果数组外不产生额外分配
+ * 排序规则与 sorted(Comparator.comparingDouble(i -> -score[i])) 一致：分数降序，分数相同时下标小者在前
+ */
+public class TopKSelector {
+
+    private TopKSelector() {
+    }
+
+    /**
+     * 选出分数最高的K个下标
+     * @param scores 分数数组
+     * @param k 需要的数量
+     * @param excludeIdx 需要排除的下标（如目标订单自身），不排除时传-1
+     * @return 按分数降序排列的下标
+     */
+    public static int[] topK(double[] scores, int k, int excludeIdx) {
+        return topK(scores, scores.length, k, excludeIdx);
+    }
+
+    /**
+     * 在scores的前length个元素中选出分数最高的K个下标（用于复用的缓冲区）
+     */
+    public static int[] topK(double[] scores, int length, int k, int excludeIdx) {
+        int candidates = length - (excludeIdx >= 0 && excludeIdx < length ? 1 : 0);
+        int size = Math.max(0, Math.min(k, candidates));
+        int[] heap = new int[size];
+        if (size == 0) {
+            return heap;
+        }
+
+        // 堆顶为当前K个中最差的元素
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == excludeIdx) {
+                continue;
+            }
+            if (count < size) {
+                heap[count] = i;
+                siftUp(heap, count, scores);
+                count++;
+            } else if (ranksBefore(i, heap[0], scores)) {
+                heap[0] = i;
+                siftDown(heap, size, scores);
+            }
+        }
+
+        // 原地堆排序：依次把最差元素换到末尾，得到降序结果
+        for (int end = size - 1; end > 0; end--) {
+            int tmp = heap[0];
+            heap[0] = heap[end];
+            heap[end] = tmp;
+            siftDown(heap, end, scores);
+        }
+        return heap;
+    }
+
+    /**
+     * i是否应排在j之前
+     */
+    private static boolean ranksBefore(int i, int j, double[] scores) {
+        int c = Double.compare(-scores[i], -scores[j]);
+        return c != 0 ? c < 0 : i < j;
+    }
+
+    private static void siftUp(int[] heap, int pos, double[] scores) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!ranksBefore(heap[parent], item, scores)) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        int pos = 0;
+        int item = heap[0];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && ranksBefore(heap[child], heap[right], scores)) {
+                child = right;
+            }
+            if (!ranksBefore(item, heap[child], scores)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+}
@@ -0,0 +1,210 @@
+package com.demo.extract.util;
+
+import com.demo.extract.DTO.TradeRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 交割单Excel的流式读写
+ * 读取：基于SAX逐行解析第一个工作表的XML，不在内存中构建整个工作簿；
+ * 写入：SXSSF流式写出（内存中只保留最近的若干行），先写临时文件再替换原文件。
+ * 列顺序：序号、时间、类型、订单、手数、价格、获利，第一行为表头。
+ */
+public class TradeJournalExcel {
+    private static final String SHEET_NAME = "交易记录";
+    private static final String[] HEADERS = {"序号", "时间", "类型", "订单", "手数", "价格", "获利"};
+    private static final int COLUMNS = HEADERS.length;
+    private static final int WINDOW_ROWS = 200;
+
+    /**
+     * 读取交易记录（跳过表头，获利列为空的行忽略）
+     */
+    public static List<TradeRecord> read(String filePath) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(new File(filePath), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return new ArrayList<>();
+            }
+            RowHandler handler = new RowHandler(strings);
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(handler);
+                parser.parse(new InputSource(sheet));
+            }
+            return handler.records;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("无法解析Excel文件: " + filePath, e);
+        }
+    }
+
+    /**
+     * 写入交易记录（覆盖原文件）
+     */
+    public static void write(List<TradeRecord> records, String filePath) throws IOException {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), ".journal", ".xlsx");
+        SXSSFWorkbook workbook = new SXSSFWorkbook(WINDOW_ROWS);
+        try {
+            Sheet sheet = workbook.createSheet(SHEET_NAME);
+
+            // 创建表头行
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < HEADERS.length; i++) {
+                headerRow.createCell(i).setCellValue(HEADERS[i]);
+            }
+
+            // 写入数据行
+            for (int i = 0; i < records.size(); i++) {
+                Row row = sheet.createRow(i + 1);
+                TradeRecord record = records.get(i);
+
+                row.createCell(0).setCellValue(record.getId());
+                row.createCell(1).setCellValue(record.getTime());
+                row.createCell(2).setCellValue(record.getType());
+                row.createCell(3).setCellValue(record.getOrderId());
+                row.createCell(4).setCellValue(record.getLots());
+                row.createCell(5).setCellValue(record.getPrice());
+                row.createCell(6).setCellValue(record.getProfit());
+            }
+
+            try (OutputStream out = new FileOutputStream(temp.toFile())) {
+                workbook.write(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 工作表XML的SAX处理：按单元格引用（如C12）定位列，行结束时生成交易记录
+     */
+    private static class RowHandler extends DefaultHandler {
+        final List<TradeRecord> records = new ArrayList<>();
+        private final ReadOnlySharedStringsTable strings;
+
+        private final String[] cells = new String[COLUMNS];
+        private final StringBuilder text = new StringBuilder();
+        private int rowIndex = -1;
+        private int column = -1;
+        private String cellType;
+        private boolean inValue;
+
+        RowHandler(ReadOnlySharedStringsTable strings) {
+            this.strings = strings;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName(localName, qName)) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowIndex = r != null ? Integer.parseInt(r) - 1 : rowIndex + 1;
+                    column = -1;
+                    Arrays.fill(cells, null);
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    column = ref != null ? columnOf(ref) : column + 1;
+                    cellType = attributes.getValue("t");
+                    text.setLength(0);
+                    break;
+                case "v":
+                case "t": // 内联字符串 <is><t>，富文本时有多段
+                    inValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName(localName, qName)) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "c":
+                    if (column >= 0 && column < COLUMNS && text.length() > 0) {
+                        cells[column] = "s".equals(cellType)
+                                ? strings.getItemAt(Integer.parseInt(text.toString())).getString()
+                                : text.toString();
+                    }
+                    break;
+                case "row":
+                    // 从第二行开始读取(跳过表头)
+                    if (rowIndex >= 1 && cells[6] != null && !cells[6].isEmpty()) {
+                        records.add(new TradeRecord(
+                                (int) Double.parseDouble(cells[0]),
+                                cells[1],
+                                cells[2],
+                                (int) Double.parseDouble(cells[3]),
+                                Double.parseDouble(cells[4]),
+                                Double.parseDouble(cells[5]),
+                                Double.parseDouble(cells[6])));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private static String localName(String localName, String qName) {
+            return localName != null && !localName.isEmpty() ? localName : qName;
+        }
+
+        /**
+         * 单元格引用的列号（A→0，B→1 …）
+         */
+        private static int columnOf(String ref) {
+            int column = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.demo.extract.zzq;
+
+import com.demo.extract.DTO.OrderTimeSeries;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 基于ZZQ预测信号的开仓点优化
+ * 沿订单时间序列按步长前进，找到第一个预测涨跌与开仓方向一致的时间点，记为订单的最佳开仓步数（step）。
+ * 时间点到预测行的定位有两种方式：
+ * BUCKET —— 固定周期（如15分钟）K线，按周期向下取整后精确查找，开仓步数为序列下标；
+ * FLOOR —— 任意周期（如30分钟、4小时），取不晚于该时刻的最后一个预测时间点，开仓步数为该时间点在序列中的下标。
+ * 各订单相互独立，按订单并行处理。
+ */
+public class ZZQEntryOptimizer {
+
+    public enum Lookup {
+        BUCKET, FLOOR
+    }
+
+    private final ZZQSignalStore.Snapshot signals;
+    private final Lookup lookup;
+    private final long intervalSeconds;
+    private final int stride;
+
+    private ZZQEntryOptimizer(ZZQSignalStore.Snapshot signals, Lookup lookup, long intervalSeconds, int stride) {
+        this.signals = signals;
+        this.lookup = lookup;
+        this.intervalSeconds = intervalSeconds;
+        this.stride = stride;
+    }
+
+    /**
+     * 固定周期定位
+     * @param signals 预测信号
+     * @param intervalMinutes K线周期（分钟）
+     * @param stride 序列遍历步长
+     */
+    public static ZZQEntryOptimizer bucket(ZZQSignalStore.Snapshot signals, int intervalMinutes, int stride) {
+        return new ZZQEntryOptimizer(signals, Lookup.BUCKET, intervalMinutes * 60L, stride);
+    }
+
+    /**
+     * 区间起点定位
+     * @param signals 预测信号
+     * @param stride 序列遍历步长
+     */
+    public static ZZQEntryOptimizer floor(ZZQSignalStore.Snapshot signals, int stride) {
+        return new ZZQEntryOptimizer(signals, Lookup.FLOOR, 0, stride);
+    }
+
+    /**
+     * 并行计算全部订单（长度不少于minLength）的开仓方向与最佳开仓步数
+     * @param allSeries 订单列表
+     * @param minLength 最小序列长度
+     * @param direction 开仓方向判断
+     * @return 订单ID → 订单（已设置action与step）
+     */
+    public Map<String, OrderTimeSeries> optimize(List<OrderTimeSeries> allSeries, int minLength,
+                                                 Function<OrderTimeSeries, String> direction) {
+        List<OrderTimeSeries> selected = allSeries.parallelStream()
+                .filter(series -> series.getValues().length >= minLength)
+                .map(series -> {
+                    String action = direction.apply(series);
+                    series.setAction(action);
+                    Integer step = findStep(series.getValueTime(), action);
+                    if (step != null) {
+                        series.setStep(step);
+                    }
+                    return series;
+                })
+                .collect(Collectors.toList());
+
+        Map<String, OrderTimeSeries> orderMap = new HashMap<>();
+        for (OrderTimeSeries series : selected) {
+            orderMap.put(series.getOrderId(), series);
+        }
+        return orderMap;
+    }
+
+    /**
+     * 单个订单的最佳开仓步数，第一个时间点即一致或未找到时返回null
+     */
+    public Integer findStep(String[] valueTime, String action) {
+        long[] epochs = new long[valueTime.length];
+        for (int i = 0; i < valueTime.length; i++) {
+            epochs[i] = ZZQSignalStore.toEpochSecond(valueTime[i]);
+        }
+
+        for (int i = 0; i < valueTime.length; i = i + stride) {
+            if (epochs[i] == Long.MIN_VALUE) {
+                continue;
+            }
+            int index;
+            if (lookup == Lookup.BUCKET) {
+                index = signals.bucketIndex(epochs[i], intervalSeconds);
+            } else {
+                index = signals.floorIndex(epochs[i]);
+                if (index < 0) {
+                    throw new RuntimeException("不在范围时间周期内" + valueTime[i]);
+                }
+            }
+            if (index < 0 || !"1".equals(signals.signal(index, action))) {
+                continue;
+            }
+            if (i == 0) {
+                return null;
+            }
+            if (lookup == Lookup.BUCKET) {
+                return i;
+            }
+            long intervalStart = ZZQSignalStore.toEpochSecond(signals.get(index).getDate());
+            for (int k = 0; k < epochs.length; k++) {
+                if (epochs[k] == intervalStart) {
+                    return k;
+                }
+            }
+            return null;
+        }
+        return null;
+    }
+}
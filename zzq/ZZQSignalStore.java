@@ -0,0 +1,223 @@
+package com.demo.extract.zzq;
+
+import com.demo.extract.zzq.dto.zzqdto;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ZZQ预测信号存储
+ * 按文件路径共享，首次访问时解析CSV，之后文件修改时间变化时自动重新加载。
+ * 每次加载生成一个不可变快照：日期 → 行号的哈希索引，以及按时间升序排列的纪元秒数组，
+ * 用于O(1)的日期查找和二分查找的区间查询。
+ */
+public class ZZQSignalStore {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
+    private static final Map<Path, ZZQSignalStore> STORES = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private volatile Snapshot snapshot;
+
+    private ZZQSignalStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 获取文件对应的共享存储（同一路径在进程内只解析一次）
+     * @param filePath CSV文件路径
+     */
+    public static ZZQSignalStore shared(String filePath) {
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        return STORES.computeIfAbsent(path, ZZQSignalStore::new);
+    }
+
+    /**
+     * 当前快照，文件修改时间变化时重新加载
+     */
+    public Snapshot snapshot() throws IOException {
+        FileTime modified = lastModified();
+        Snapshot current = snapshot;
+        if (current != null && current.modified.equals(modified)) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || !current.modified.equals(modified)) {
+                current = load(modified);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private FileTime lastModified() throws IOException {
+        if (!Files.exists(file)) {
+            throw new IOException("文件不存在: " + file);
+        }
+        return Files.getLastModifiedTime(file);
+    }
+
+    private Snapshot load(FileTime modified) throws IOException {
+        List<zzqdto> rows = new ZZQDataLoader().loadFromCsv(file.toString());
+        return new Snapshot(rows, modified);
+    }
+
+    /**
+     * 日期字符串转纪元秒（按UTC计算，仅用于排序和区间运算），无法解析时返回Long.MIN_VALUE
+     */
+    public static long toEpochSecond(String date) {
+        try {
+            return LocalDateTime.parse(date, DATE_FORMATTER).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException | NullPointerException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 一次加载的不可变数据
+     */
+    public static class Snapshot {
+        private final List<zzqdto> rows;
+        private final FileTime modified;
+        private final Map<String, Integer> dateIndex;
+        private final long[] sortedEpochs; // 升序纪元秒（不含无法解析的日期）
+        private final int[] sortedRows;    // sortedEpochs[k] 对应的行号
+
+        Snapshot(List<zzqdto> rows, FileTime modified) {
+            this.rows = Collections.unmodifiableList(rows);
+            this.modified = modified;
+            this.dateIndex = new HashMap<>(rows.size() * 2);
+
+            long[] epochs = new long[rows.size()];
+            int[] order = new int[rows.size()];
+            int valid = 0;
+            boolean sorted = true;
+            for (int i = 0; i < rows.size(); i++) {
+                String date = rows.get(i).getDate();
+                dateIndex.put(date, i); // 重复日期以最后一行为准
+                long epoch = toEpochSecond(date);
+                if (epoch == Long.MIN_VALUE) {
+                    continue;
+                }
+                if (valid > 0 && epoch < epochs[valid - 1]) {
+                    sorted = false;
+                }
+                epochs[valid] = epoch;
+                order[valid] = i;
+                valid++;
+            }
+            this.sortedEpochs = new long[valid];
+            this.sortedRows = new int[valid];
+            if (sorted) {
+                System.arraycopy(epochs, 0, sortedEpochs, 0, valid);
+                System.arraycopy(order, 0, sortedRows, 0, valid);
+            } else {
+                // 文件未按时间排序时按时间稳定排序
+                Integer[] positions = new Integer[valid];
+                for (int k = 0; k < valid; k++) {
+                    positions[k] = k;
+                }
+                Arrays.sort(positions, (a, b) -> Long.compare(epochs[a], epochs[b]));
+                for (int k = 0; k < valid; k++) {
+                    sortedEpochs[k] = epochs[positions[k]];
+                    sortedRows[k] = order[positions[k]];
+                }
+            }
+        }
+
+        public int size() {
+            return rows.size();
+        }
+
+        public zzqdto get(int index) {
+            return rows.get(index);
+        }
+
+        public List<zzqdto> rows() {
+            return rows;
+        }
+
+        /**
+         * 日期对应的行号，不存在时返回-1
+         */
+        public int indexOf(String date) {
+            Integer index = dateIndex.get(date);
+            return index == null ? -1 : index;
+        }
+
+        /**
+         * 纪元秒恰好等于epochSecond的行号，不存在时返回-1
+         */
+        public int exactIndex(long epochSecond) {
+            int k = lastAtOrBefore(epochSecond);
+            return k >= 0 && sortedEpochs[k] == epochSecond ? sortedRows[k] : -1;
+        }
+
+        /**
+         * 包含该时刻的区间起点（不晚于epochSecond的最后一个时间点）的行号，早于第一个时间点时返回-1
+         */
+        public int floorIndex(long epochSecond) {
+            int k = lastAtOrBefore(epochSecond);
+            return k >= 0 ? sortedRows[k] : -1;
+        }
+
+        /**
+         * 固定周期K线（如15分钟）中包含该时刻的那根K线的行号：按周期向下取整后精确查找，不存在时返回-1
+         * @param intervalSeconds 周期（秒）
+         */
+        public int bucketIndex(long epochSecond, long intervalSeconds) {
+            return exactIndex(epochSecond - Math.floorMod(epochSecond, intervalSeconds));
+        }
+
+        /**
+         * 开仓方向与该行预测涨跌是否一致
+         * @param index 行号
+         * @param action 开仓方向（多/空）
+         * @return "1" 一致，"2" 不一致，"0" 无数据或方向未知
+         */
+        public String signal(int index, String action) {
+            if (index < 0 || index >= rows.size()) {
+                return "0";
+            }
+            String fluctuation = rows.get(index).getFluctuation();
+            if ("多".equals(action)) {
+                return "涨".equals(fluctuation) ? "1" : "2";
+            }
+            if ("空".equals(action)) {
+                return "跌".equals(fluctuation) ? "1" : "2";
+            }
+            return "0";
+        }
+
+        /**
+         * 二分查找不晚于epochSecond的最后一个位置（重复时间点取最后一个）
+         */
+        private int lastAtOrBefore(long epochSecond) {
+            int low = 0;
+            int high = sortedEpochs.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (sortedEpochs[mid] <= epochSecond) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+    }
+}